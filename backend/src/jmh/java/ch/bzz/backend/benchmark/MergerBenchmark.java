@@ -0,0 +1,52 @@
+package ch.bzz.backend.benchmark;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.parser.ESLParser;
+import ch.bzz.backend.parser.MeasurementMerger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the absolute meter readings of one sensor from its relative values and the ESL start values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergerBenchmark {
+
+    @Param({"2976", "35040", "105120"})
+    public int observations;
+
+    private List<Measurement> sdatValues;
+    private Map<String, Double> eslValues;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sdatValues = SyntheticData.measurements(SyntheticData.START, observations, 42);
+        String esl = SyntheticData.eslXml(SyntheticData.START, 1, 42);
+        eslValues = ESLParser.parseESLStream(new ByteArrayInputStream(esl.getBytes(StandardCharsets.UTF_8)), "synthetic");
+    }
+
+    @Benchmark
+    public List<Measurement> mergeWithEsl() {
+        return MeasurementMerger.mergeWithESL(sdatValues, eslValues, "1-1:1.8.1", "1-1:1.8.2");
+    }
+}
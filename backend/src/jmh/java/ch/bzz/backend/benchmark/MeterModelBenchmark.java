@@ -0,0 +1,78 @@
+package ch.bzz.backend.benchmark;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.MeterModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a {@link MeterModel} from merged measurements, once in timestamp order (the common case
+ * when files arrive chronologically) and once with the files of each sensor in reverse order, which
+ * forces inserts in front of already stored data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MeterModelBenchmark {
+
+    @Param({"1", "8"})
+    public int sensors;
+
+    @Param({"2976", "35040"})
+    public int observations;
+
+    private String[] sensorIds;
+    private List<Measurement>[] measurements;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        sensorIds = new String[sensors];
+        measurements = new List[sensors];
+        for (int sensor = 0; sensor < sensors; sensor++) {
+            sensorIds[sensor] = SyntheticData.documentId(sensor);
+            measurements[sensor] = SyntheticData.measurements(SyntheticData.START, observations, sensor);
+        }
+    }
+
+    @Benchmark
+    public MeterModel addInOrder() {
+        MeterModel model = new MeterModel();
+        for (int sensor = 0; sensor < sensors; sensor++) {
+            for (Measurement m : measurements[sensor]) {
+                model.addMeasurement(sensorIds[sensor], m);
+            }
+        }
+        return model;
+    }
+
+    @Benchmark
+    public MeterModel addDaysInReverse() {
+        int perDay = 96;
+        MeterModel model = new MeterModel();
+        for (int sensor = 0; sensor < sensors; sensor++) {
+            List<Measurement> values = measurements[sensor];
+            for (int dayStart = (values.size() - 1) / perDay * perDay; dayStart >= 0; dayStart -= perDay) {
+                for (int i = dayStart; i < Math.min(dayStart + perDay, values.size()); i++) {
+                    model.addMeasurement(sensorIds[sensor], values.get(i));
+                }
+            }
+        }
+        return model;
+    }
+}
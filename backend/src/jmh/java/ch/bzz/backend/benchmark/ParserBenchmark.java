@@ -0,0 +1,86 @@
+package ch.bzz.backend.benchmark;
+
+import ch.bzz.backend.io.FileInputs;
+import ch.bzz.backend.parser.ESLParser;
+import ch.bzz.backend.parser.SDATParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Parses a single synthetic SDAT/ESL file from disk, the way the ingestion service does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    // one day, one month, one year and ten years of 15 minute values; the last one is parsed in chunks
+    @Param({"96", "2976", "35040", "350400"})
+    public int observations;
+
+    private Path directory;
+    private File sdatFile;
+    private File eslFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("wattwise-parser-bench");
+        Path sdat = directory.resolve("sdat.xml");
+        Files.writeString(sdat, SyntheticData.sdatXml(SyntheticData.documentId(0), SyntheticData.START, observations, 42), StandardCharsets.UTF_8);
+        sdatFile = sdat.toFile();
+        // ESL exports grow by one TimePeriod per month
+        Path esl = directory.resolve("esl.xml");
+        Files.writeString(esl, SyntheticData.eslXml(SyntheticData.START, Math.max(1, observations / 2976), 42), StandardCharsets.UTF_8);
+        eslFile = esl.toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public SDATParser.ParsedSDAT parseSdat() {
+        return SDATParser.parseSDATFile(sdatFile);
+    }
+
+    // Baseline for the chunked parsing of large files
+    @Benchmark
+    public SDATParser.ParsedSDAT parseSdatSinglePass() throws IOException {
+        try (InputStream in = FileInputs.open(sdatFile.toPath())) {
+            return SDATParser.parseSDATStream(in, sdatFile.getName());
+        }
+    }
+
+    @Benchmark
+    public Map<String, Double> parseEsl() {
+        return ESLParser.parseESLFile(eslFile);
+    }
+}
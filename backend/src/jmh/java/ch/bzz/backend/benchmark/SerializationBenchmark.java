@@ -0,0 +1,73 @@
+package ch.bzz.backend.benchmark;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.MeterModel;
+import ch.bzz.backend.query.MeterDataJsonWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes a whole {@link MeterModel} to JSON, once through Jackson data binding as the
+ * /api/files endpoints do and once with the streaming {@link MeterDataJsonWriter}. The output is
+ * discarded so only the serialization itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"1", "8"})
+    public int sensors;
+
+    @Param({"2976", "35040"})
+    public int observations;
+
+    private MeterModel model;
+    // configured like the mapper Spring Boot provides
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        model = new MeterModel();
+        for (int sensor = 0; sensor < sensors; sensor++) {
+            String sensorId = SyntheticData.documentId(sensor);
+            double total = 10000.0 * (sensor + 1);
+            for (Measurement m : SyntheticData.measurements(SyntheticData.START, observations, sensor)) {
+                total += m.getRelative();
+                model.addMeasurement(sensorId, new Measurement(m.getTimestamp(), m.getRelative(), total));
+            }
+        }
+    }
+
+    @Benchmark
+    public void jacksonDataBinding() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), model);
+    }
+
+    @Benchmark
+    public void streamingWriter() throws IOException {
+        MeterDataJsonWriter.writeModel(model, objectMapper.getFactory(), OutputStream.nullOutputStream());
+    }
+}
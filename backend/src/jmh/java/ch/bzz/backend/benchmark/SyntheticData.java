@@ -0,0 +1,104 @@
+package ch.bzz.backend.benchmark;
+
+import ch.bzz.backend.model.Measurement;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Generates SDAT and ESL documents in the layout of the files in testdata, with a configurable
+ * number of observations and sensors. The output only depends on the arguments and the seed, so
+ * every benchmark run works on identical input.
+ */
+public final class SyntheticData {
+
+    public static final LocalDateTime START = LocalDateTime.of(2022, 1, 1, 0, 0);
+    public static final int RESOLUTION_MINUTES = 15;
+
+    private static final DateTimeFormatter SDAT_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    private static final DateTimeFormatter ESL_TIME = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Sensor ids in the DocumentID format of real SDAT files. Even sensors are consumption (ID742),
+     * odd sensors feed-in (ID735) meters.
+     */
+    public static String documentId(int sensor) {
+        return "eslevu" + (100000 + sensor) + "_BR2294_" + (sensor % 2 == 0 ? "ID742" : "ID735");
+    }
+
+    public static String sdatXml(String documentId, LocalDateTime start, int observations, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        LocalDateTime end = start.plusMinutes((long) observations * RESOLUTION_MINUTES);
+        StringBuilder xml = new StringBuilder(512 + observations * 140);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<rsm:ValidatedMeteredData_14 xmlns:rsm=\"http://www.strom.ch\">")
+                .append("<rsm:ValidatedMeteredData_HeaderInformation><rsm:InstanceDocument>")
+                .append("<rsm:DocumentID>").append(documentId).append("</rsm:DocumentID>")
+                .append("</rsm:InstanceDocument></rsm:ValidatedMeteredData_HeaderInformation>\n")
+                .append("<rsm:MeteringData><rsm:DocumentID>").append(documentId).append("_D</rsm:DocumentID>\n")
+                .append("<rsm:Interval><rsm:StartDateTime>").append(SDAT_TIME.format(start))
+                .append("</rsm:StartDateTime><rsm:EndDateTime>").append(SDAT_TIME.format(end))
+                .append("</rsm:EndDateTime></rsm:Interval>\n")
+                .append("<rsm:Resolution><rsm:Resolution>").append(RESOLUTION_MINUTES)
+                .append("</rsm:Resolution><rsm:Unit>MIN</rsm:Unit></rsm:Resolution>\n");
+        for (int i = 1; i <= observations; i++) {
+            xml.append("<rsm:Observation><rsm:Position><rsm:Sequence>").append(i)
+                    .append("</rsm:Sequence></rsm:Position><rsm:Volume>")
+                    .append(String.format(Locale.ROOT, "%.3f", volume(random, i)))
+                    .append("</rsm:Volume></rsm:Observation>");
+        }
+        xml.append("</rsm:MeteringData></rsm:ValidatedMeteredData_14>");
+        return xml.toString();
+    }
+
+    /**
+     * ESL export with one Meter and {@code periods} monthly TimePeriods going back from {@code end},
+     * each containing the four register values the merger looks at.
+     */
+    public static String eslXml(LocalDateTime end, int periods, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder xml = new StringBuilder(256 + periods * 400);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<ESLBillingData>\n")
+                .append("<Header version=\"1.0\" created=\"").append(ESL_TIME.format(end)).append("\"/>\n")
+                .append("<Meter factoryNo=\"38157930\" internalNo=\"38157930\">\n");
+        double[] registers = {24000, 43000, 16000, 9000};
+        String[] obis = {"1-1:1.8.1", "1-1:1.8.2", "1-1:2.8.1", "1-1:2.8.2"};
+        for (int p = 0; p < periods; p++) {
+            xml.append("<TimePeriod end=\"").append(ESL_TIME.format(end.minusMonths(p))).append("\">\n");
+            for (int r = 0; r < obis.length; r++) {
+                xml.append("<ValueRow obis=\"").append(obis[r]).append("\" value=\"")
+                        .append(String.format(Locale.ROOT, "%.4f", registers[r])).append("\" status=\"V\"/>\n");
+                registers[r] -= random.nextDouble(100, 500);
+            }
+            xml.append("</TimePeriod>\n");
+        }
+        xml.append("</Meter>\n</ESLBillingData>\n");
+        return xml.toString();
+    }
+
+    /**
+     * Relative measurements as {@link ch.bzz.backend.parser.SDATParser} would return them.
+     */
+    public static List<Measurement> measurements(LocalDateTime start, int observations, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Measurement> measurements = new ArrayList<>(observations);
+        for (int i = 1; i <= observations; i++) {
+            measurements.add(new Measurement(start.plusMinutes((long) (i - 1) * RESOLUTION_MINUTES), volume(random, i), null));
+        }
+        return measurements;
+    }
+
+    // Daily profile: nothing at night, a bump around noon, plus noise
+    private static double volume(SplittableRandom random, int sequence) {
+        int slot = (sequence - 1) % 96;
+        double daylight = Math.max(0.0, Math.sin(Math.PI * (slot - 24) / 48.0));
+        return Math.round((daylight * 1.5 + random.nextDouble() * 0.2) * 1000.0) / 1000.0;
+    }
+}
@@ -0,0 +1,384 @@
+package ch.bzz.backend.cache;
+
+import ch.bzz.backend.metrics.IngestionMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized response bodies, keyed by the request (endpoint and normalized parameters) and stamped
+ * with the version of the data they were written from. An entry is only returned while the caller
+ * still sees the same version, so new files in the model invalidate exactly the responses that
+ * depend on the changed meters.
+ * <p>
+ * Bodies are stored gzip compressed unless they are small, which is what browsers ask for anyway.
+ * They are compressed while they are written, into a buffer that is bounded by {@code maxBytes}:
+ * a body that does not fit is abandoned as soon as it reaches the limit, and the caller streams it
+ * uncached until the data version changes. Entries are evicted in least recently used order once
+ * the cache holds more than {@code maxBytes} or {@code maxEntries}, and dropped after
+ * {@code ttlSeconds}. Concurrent requests for the same missing entry write the body once and share
+ * the result.
+ */
+@Component
+public class ResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    private static final int MIN_GZIP_BYTES = 1024;
+    private static final int ENTRY_OVERHEAD_BYTES = 128; // key, entry object and map node
+
+    /* Schreibt den Inhalt einer Antwort */
+    @FunctionalInterface
+    public interface BodyWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /* Wird geworfen, sobald eine Antwort nicht mehr in den Cache passt */
+    private static final class TooLargeException extends IOException {
+        TooLargeException() {
+            super("Response is larger than the cache");
+        }
+    }
+
+    /* Puffer mit Obergrenze, der beim Überschreiten abbricht statt weiter zu wachsen */
+    private static final class BoundedBuffer extends OutputStream {
+        private final long limit;
+        private byte[] bytes = new byte[8192];
+        private int count;
+
+        BoundedBuffer(long limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureRoom(1);
+            bytes[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureRoom(len);
+            System.arraycopy(b, off, bytes, count, len);
+            count += len;
+        }
+
+        private void ensureRoom(int len) throws TooLargeException {
+            long needed = (long) count + len;
+            if (needed > limit) {
+                throw new TooLargeException();
+            }
+            if (needed > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(limit, Math.max(needed, 2L * bytes.length)));
+            }
+        }
+
+        int size() {
+            return count;
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, count);
+        }
+    }
+
+    /*
+     * Schreibt die ersten MIN_GZIP_BYTES unkomprimiert; erst wenn die Antwort grösser wird, wird
+     * alles Weitere direkt komprimiert in den Puffer geschrieben
+     */
+    private static final class CompressingBuffer extends OutputStream {
+        private final BoundedBuffer buffer;
+        private final boolean gzip;
+        private Compressor compressor;
+
+        /* GZIP mit schneller Kompression, dessen Deflater auch nach einem Abbruch freigegeben wird */
+        private static final class Compressor extends GZIPOutputStream {
+            Compressor(OutputStream out) throws IOException {
+                super(out, 8192);
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+
+            void discard() {
+                def.end();
+            }
+        }
+
+        CompressingBuffer(long limit, boolean gzip) {
+            this.buffer = new BoundedBuffer(limit);
+            this.gzip = gzip;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (compressor != null) {
+                compressor.write(b, off, len);
+                return;
+            }
+            if (gzip && buffer.size() + len >= MIN_GZIP_BYTES) {
+                byte[] head = buffer.toByteArray();
+                buffer.reset();
+                compressor = new Compressor(buffer);
+                compressor.write(head);
+                compressor.write(b, off, len);
+                return;
+            }
+            buffer.write(b, off, len);
+        }
+
+        boolean isGzipped() {
+            return compressor != null;
+        }
+
+        byte[] finish() throws IOException {
+            if (compressor != null) {
+                compressor.close();
+            }
+            return buffer.toByteArray();
+        }
+
+        void discard() {
+            if (compressor != null) {
+                compressor.discard();
+            }
+        }
+    }
+
+    /* Gespeicherte Antwort */
+    public static final class Entry {
+        private final long version;
+        private final byte[] body;
+        private final boolean gzipped;
+        private final long createdNanos;
+        private final long bytes;
+
+        Entry(long version, byte[] body, boolean gzipped, long createdNanos, String key) {
+            this.version = version;
+            this.body = body;
+            this.gzipped = gzipped;
+            this.createdNanos = createdNanos;
+            this.bytes = body.length + 2L * key.length() + ENTRY_OVERHEAD_BYTES;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the body, gzip compressed if {@link #isGzipped()}
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        public boolean isGzipped() {
+            return gzipped;
+        }
+    }
+
+    private final long maxBytes;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final boolean gzip;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // guarded by this
+    private long totalBytes; // guarded by this
+    private final Map<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    // Data version per key whose body did not fit, it is streamed uncached until the version changes
+    private final Map<String, Long> tooLarge = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes   upper bound of the memory held by the cached bodies
+     * @param maxEntries upper bound of the number of cached bodies
+     * @param ttlSeconds time after which an entry is written again even if the data did not change,
+     *                   0 keeps entries until they are evicted or invalidated
+     * @param gzip       whether bodies are stored gzip compressed
+     * @param metrics    registers the cache gauges, may be {@code null}
+     */
+    public ResponseCache(@Value("${wattwise.cache.max-bytes:67108864}") long maxBytes,
+                         @Value("${wattwise.cache.max-entries:512}") int maxEntries,
+                         @Value("${wattwise.cache.ttl-seconds:300}") long ttlSeconds,
+                         @Value("${wattwise.cache.gzip:true}") boolean gzip,
+                         IngestionMetrics metrics) {
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlSeconds > 0 ? ttlSeconds * 1_000_000_000L : Long.MAX_VALUE;
+        this.gzip = gzip;
+        if (metrics != null) {
+            metrics.bindCache(this);
+        }
+    }
+
+    /**
+     * Returns the cached body for {@code key} if it was written from {@code version}, otherwise
+     * writes it with {@code writer} and caches it.
+     *
+     * @return the entry, or {@code null} if the body is larger than the cache; the caller then
+     * writes it straight to the response
+     */
+    public Entry get(String key, long version, BodyWriter writer) throws IOException {
+        Entry cached = lookup(key, version);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        Long tooLargeVersion = tooLarge.get(key);
+        if (tooLargeVersion != null && tooLargeVersion == version) {
+            misses.incrementAndGet();
+            return null;
+        }
+        String loadKey = version + "|" + key;
+        CompletableFuture<Entry> load = new CompletableFuture<>();
+        CompletableFuture<Entry> running = loading.putIfAbsent(loadKey, load);
+        if (running != null) {
+            hits.incrementAndGet();
+            return await(running);
+        }
+        misses.incrementAndGet();
+        try {
+            Entry entry = write(key, version, writer);
+            if (entry != null) {
+                tooLarge.remove(key);
+                store(key, entry);
+            } else {
+                logger.debug("Response {} is larger than the cache, it is not cached for version {}.", key, version);
+                tooLarge.put(key, version);
+            }
+            load.complete(entry);
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(loadKey, load);
+        }
+    }
+
+    private synchronized Entry lookup(String key, long version) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.version != version || System.nanoTime() - entry.createdNanos > ttlNanos) {
+            remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    // The entry, or null as soon as the body does not fit into the cache
+    private Entry write(String key, long version, BodyWriter writer) throws IOException {
+        long limit = Math.min(maxBytes - 2L * key.length() - ENTRY_OVERHEAD_BYTES, Integer.MAX_VALUE - 8);
+        CompressingBuffer buffer = new CompressingBuffer(limit, gzip);
+        try {
+            writer.write(buffer);
+            byte[] body = buffer.finish();
+            return new Entry(version, body, buffer.isGzipped(), System.nanoTime(), key);
+        } catch (IOException | RuntimeException e) {
+            buffer.discard();
+            // Serializers may wrap the exception of the stream
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof TooLargeException) {
+                    return null;
+                }
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void store(String key, Entry entry) {
+        Entry previous = entries.get(key);
+        if (previous != null) {
+            if (previous.version > entry.version) {
+                return; // written from newer data in the meantime
+            }
+            remove(key, previous);
+        }
+        entries.put(key, entry);
+        totalBytes += entry.bytes;
+
+        long now = System.nanoTime();
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (eldest.hasNext() && (totalBytes > maxBytes || entries.size() > maxEntries)) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            totalBytes -= evicted.bytes;
+            evictions.incrementAndGet();
+        }
+        entries.values().removeIf(e -> {
+            boolean expired = now - e.createdNanos > ttlNanos;
+            if (expired) {
+                totalBytes -= e.bytes;
+            }
+            return expired;
+        });
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        totalBytes -= entry.bytes;
+    }
+
+    private static Entry await(CompletableFuture<Entry> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a cached response", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Writing the response failed", e.getCause());
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return totalBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
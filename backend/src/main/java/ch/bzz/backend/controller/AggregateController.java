@@ -0,0 +1,114 @@
+package ch.bzz.backend.controller;
+
+import ch.bzz.backend.mapping.SensorMappingRegistry;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.MeterModel;
+import ch.bzz.backend.model.Resolution;
+import ch.bzz.backend.query.AggregateResponse;
+import ch.bzz.backend.query.MeterAggregator;
+import ch.bzz.backend.service.IngestionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+
+@RestController
+@RequestMapping("/api/aggregate")
+@CrossOrigin(origins = "http://localhost:4200")
+public class AggregateController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AggregateController.class);
+
+    private final IngestionService ingestionService;
+    private final MeterAggregator aggregator;
+
+    /**
+     * @param parallelism number of worker threads, 0 means one per CPU core
+     */
+    public AggregateController(IngestionService ingestionService, SensorMappingRegistry mappings,
+                               @Value("${wattwise.aggregate.parallelism:0}") int parallelism) {
+        this.ingestionService = ingestionService;
+        this.aggregator = new MeterAggregator(
+                new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors()), mappings);
+    }
+
+    /**
+     * Aggregates the relative values of several meters between {@code from} (inclusive) and {@code to}
+     * (exclusive): {@code sum} adds them up, {@code net} subtracts feed-in from consumption and
+     * {@code peak} takes the highest single meter per bucket. Without {@code sensors} (a comma
+     * separated list of sensor ids) all meters are aggregated.
+     */
+    @GetMapping
+    public ResponseEntity<?> aggregate(@RequestParam(value = "operation", defaultValue = "sum") String operation,
+                                       @RequestParam(value = "sensors", required = false) String sensors,
+                                       @RequestParam(value = "from", required = false) String from,
+                                       @RequestParam(value = "to", required = false) String to,
+                                       @RequestParam(value = "resolution", required = false) String resolution,
+                                       @RequestParam(value = "maxPoints", defaultValue = "500") int maxPoints) {
+        MeterAggregator.Operation aggregation = MeterAggregator.Operation.parse(operation);
+        if (aggregation == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Unbekannte Aggregation: " + operation));
+        }
+
+        LocalDateTime fromTime;
+        LocalDateTime toTime;
+        try {
+            fromTime = MeterController.parseDateTime(from);
+            toTime = MeterController.parseDateTime(to);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Ungültiges Datum: " + e.getParsedString()));
+        }
+        if (fromTime != null && toTime != null && !fromTime.isBefore(toTime)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Das Startdatum muss vor dem Enddatum liegen."));
+        }
+
+        MeterModel model = ingestionService.getMeterModel();
+        List<MeterData> meters = new ArrayList<>();
+        if (sensors == null || sensors.isBlank()) {
+            meters.addAll(model.getAllMeterData());
+        } else {
+            for (String sensorId : sensors.split(",")) {
+                MeterData meter = model.getMeterData(sensorId.trim());
+                if (meter == null) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("message", "Unbekannter Zähler: " + sensorId.trim()));
+                }
+                if (!meters.contains(meter)) {
+                    meters.add(meter);
+                }
+            }
+        }
+        // The same group always gets the same cache entry, whatever the order in the request
+        meters.sort(Comparator.comparing(MeterData::getSensorId));
+
+        Resolution bucketSize;
+        if (resolution == null || resolution.isBlank() || "auto".equalsIgnoreCase(resolution)) {
+            bucketSize = Resolution.auto(MeterAggregator.span(meters, fromTime, toTime), Math.max(1, maxPoints));
+        } else {
+            bucketSize = Resolution.parse(resolution);
+            if (bucketSize == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Unbekannte Auflösung: " + resolution));
+            }
+        }
+
+        AggregateResponse response;
+        try {
+            response = aggregator.aggregate(meters, aggregation, fromTime, toTime, bucketSize);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Zeitraum zu gross für die Auflösung " + bucketSize.getCode() + "."));
+        }
+        logger.info("{} of {} meters from {} to {} at {}: {} points.", aggregation.getCode(), meters.size(),
+                fromTime, toTime, bucketSize.getCode(), response.getPoints().size());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,49 @@
+package ch.bzz.backend.controller;
+
+import ch.bzz.backend.cache.ResponseCache;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Turns a {@link ResponseCache.Entry} into a response. Compressed bodies are sent as they are to
+ * clients that accept gzip and decompressed while writing for all others. Bodies too large for the
+ * cache are written straight to the response.
+ */
+final class CachedResponses {
+
+    private CachedResponses() {
+    }
+
+    /**
+     * @param entry  the cached body, {@code null} if it did not fit into the cache
+     * @param writer writes the body if there is no entry
+     */
+    static ResponseEntity<?> of(ResponseCache.Entry entry, ResponseCache.BodyWriter writer, MediaType contentType,
+                                String acceptEncoding) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (entry == null) {
+            StreamingResponseBody body = writer::write;
+            return response.body(body);
+        }
+        if (!entry.isGzipped()) {
+            return response.body(entry.getBody());
+        }
+        if (acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip")) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(entry.getBody());
+        }
+        StreamingResponseBody body = outputStream -> {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(entry.getBody()), 8192)) {
+                in.transferTo(outputStream);
+            }
+        };
+        return response.body(body);
+    }
+}
@@ -0,0 +1,37 @@
+package ch.bzz.backend.controller;
+
+import ch.bzz.backend.events.MeasurementEventPublisher;
+import ch.bzz.backend.model.Resolution;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Collections;
+
+
+@RestController
+@RequestMapping("/api/events")
+@CrossOrigin(origins = "http://localhost:4200")
+public class EventController {
+
+    private final MeasurementEventPublisher publisher;
+
+    public EventController(MeasurementEventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * Opens a server-sent event stream with the changes of the model. {@code measurements} events
+     * carry the new measurements of one meter and its changed buckets at {@code resolution},
+     * {@code reset} asks the client to load the whole model again.
+     */
+    @GetMapping
+    public ResponseEntity<?> events(@RequestParam(value = "resolution", defaultValue = "day") String resolution,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        Resolution rollups = Resolution.parse(resolution);
+        if (rollups == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Unbekannte Auflösung: " + resolution));
+        }
+        return ResponseEntity.ok(publisher.subscribe(rollups, lastEventId));
+    }
+}
@@ -0,0 +1,101 @@
+package ch.bzz.backend.controller;
+
+import ch.bzz.backend.metrics.IngestionMetrics;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.MeterModel;
+import ch.bzz.backend.query.MeterDataExporter;
+import ch.bzz.backend.service.IngestionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+
+@RestController
+@RequestMapping("/api/export")
+@CrossOrigin(origins = "http://localhost:4200")
+public class ExportController {
+
+    private final IngestionService ingestionService;
+    private final ObjectMapper objectMapper;
+    private final IngestionMetrics metrics;
+    private final int parallelism;
+
+    /**
+     * @param parallelism number of meters formatted at the same time, 0 means one per CPU core
+     */
+    public ExportController(IngestionService ingestionService, ObjectMapper objectMapper, IngestionMetrics metrics,
+                            @Value("${wattwise.export.parallelism:0}") int parallelism) {
+        this.ingestionService = ingestionService;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Downloads the measurements between {@code from} (inclusive) and {@code to} (exclusive) as a ZIP
+     * archive with one CSV or JSON file per meter. Without {@code sensors} (a comma separated list of
+     * sensor ids) all meters are exported.
+     */
+    @GetMapping
+    public ResponseEntity<?> export(@RequestParam(value = "format", defaultValue = "csv") String format,
+                                    @RequestParam(value = "from", required = false) String from,
+                                    @RequestParam(value = "to", required = false) String to,
+                                    @RequestParam(value = "sensors", required = false) String sensors) {
+        MeterDataExporter.Format exportFormat = MeterDataExporter.Format.parse(format);
+        if (exportFormat == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Unbekanntes Format: " + format));
+        }
+
+        LocalDateTime fromTime;
+        LocalDateTime toTime;
+        try {
+            fromTime = MeterController.parseDateTime(from);
+            toTime = MeterController.parseDateTime(to);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Ungültiges Datum: " + e.getParsedString()));
+        }
+        if (fromTime != null && toTime != null && !fromTime.isBefore(toTime)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Das Startdatum muss vor dem Enddatum liegen."));
+        }
+
+        MeterModel model = ingestionService.getMeterModel();
+        List<MeterData> meters = new ArrayList<>();
+        if (sensors == null || sensors.isBlank()) {
+            meters.addAll(model.getAllMeterData());
+            meters.sort(Comparator.comparing(MeterData::getSensorId));
+        } else {
+            for (String sensorId : sensors.split(",")) {
+                MeterData meter = model.getMeterData(sensorId.trim());
+                if (meter == null) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("message", "Unbekannter Zähler: " + sensorId.trim()));
+                }
+                if (!meters.contains(meter)) {
+                    meters.add(meter);
+                }
+            }
+        }
+
+        MeterDataExporter exporter = new MeterDataExporter(objectMapper.getFactory(), parallelism);
+        StreamingResponseBody body = outputStream -> {
+            long start = System.nanoTime();
+            exporter.writeZip(meters, exportFormat, fromTime, toTime, outputStream);
+            metrics.recordSerialize("export-" + exportFormat.getExtension(), System.nanoTime() - start);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"wattwise-export-" + exportFormat.getExtension() + ".zip\"")
+                .body(body);
+    }
+}
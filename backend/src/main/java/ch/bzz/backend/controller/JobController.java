@@ -0,0 +1,34 @@
+package ch.bzz.backend.controller;
+
+import ch.bzz.backend.service.UploadJob;
+import ch.bzz.backend.service.UploadJobService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Collections;
+
+
+@RestController
+@RequestMapping("/api/jobs")
+@CrossOrigin(origins = "http://localhost:4200")
+public class JobController {
+
+    private final UploadJobService uploadJobService;
+
+    public JobController(UploadJobService uploadJobService) {
+        this.uploadJobService = uploadJobService;
+    }
+
+    /**
+     * Returns the progress of an upload job: files parsed so far, merged measurements and errors.
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getJob(@PathVariable("id") String id) {
+        UploadJob job = uploadJobService.getJob(id);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("message", "Upload-Auftrag nicht gefunden: " + id));
+        }
+        return ResponseEntity.ok(job);
+    }
+}
@@ -0,0 +1,58 @@
+package ch.bzz.backend.controller;
+
+import ch.bzz.backend.mapping.SensorMappingRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+@RestController
+@RequestMapping("/api/mappings")
+@CrossOrigin(origins = "http://localhost:4200")
+public class MappingController {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappingController.class);
+
+    private final SensorMappingRegistry mappingRegistry;
+
+    public MappingController(SensorMappingRegistry mappingRegistry) {
+        this.mappingRegistry = mappingRegistry;
+    }
+
+    /**
+     * Returns the sensor mappings currently in use and the file they were loaded from.
+     */
+    @GetMapping
+    public Map<String, Object> getMappings() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("source", mappingRegistry.getSource());
+        result.put("version", mappingRegistry.getVersion());
+        result.put("sensors", mappingRegistry.getSensors());
+        result.put("patterns", mappingRegistry.getPatterns());
+        result.put("fallback", mappingRegistry.getFallback());
+        return result;
+    }
+
+    /**
+     * Reads the mapping file again; the meter model is rebuilt with the new registers.
+     */
+    @PostMapping("/reload")
+    public ResponseEntity<?> reload() {
+        try {
+            mappingRegistry.reload();
+        } catch (IOException e) {
+            logger.error("Failed to reload sensor mapping: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Collections.singletonMap("message", "Zuordnungsdatei ungültig: " + e.getMessage()));
+        }
+        return ResponseEntity.ok(Collections.singletonMap("message", "Zuordnungen neu geladen: "
+                + mappingRegistry.getSensors().size() + " Sensoren, " + mappingRegistry.getPatterns().size() + " Muster."));
+    }
+}
@@ -0,0 +1,218 @@
+package ch.bzz.backend.controller;
+
+import ch.bzz.backend.cache.ResponseCache;
+import ch.bzz.backend.metrics.IngestionMetrics;
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.MeterModel;
+import ch.bzz.backend.model.Resolution;
+import ch.bzz.backend.query.GapsResponse;
+import ch.bzz.backend.query.MeterDataJsonWriter;
+import ch.bzz.backend.query.MeterSummary;
+import ch.bzz.backend.query.SeriesDownsampler;
+import ch.bzz.backend.query.SeriesPoint;
+import ch.bzz.backend.query.SeriesResponse;
+import ch.bzz.backend.service.IngestionService;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+
+@RestController
+@RequestMapping("/api/meters")
+@CrossOrigin(origins = "http://localhost:4200")
+public class MeterController {
+
+    private static final Logger logger = LoggerFactory.getLogger(MeterController.class);
+
+    private final IngestionService ingestionService;
+    private final ObjectMapper objectMapper;
+    private final IngestionMetrics metrics;
+    private final ResponseCache responseCache;
+
+    public MeterController(IngestionService ingestionService, ObjectMapper objectMapper, IngestionMetrics metrics,
+                           ResponseCache responseCache) {
+        this.ingestionService = ingestionService;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Lists all known meters with their number of measurements and covered time range.
+     */
+    @GetMapping
+    public List<MeterSummary> getMeters() {
+        List<MeterSummary> summaries = new ArrayList<>();
+        for (MeterData meter : ingestionService.getMeterModel().getAllMeterData()) {
+            summaries.add(MeterSummary.of(meter));
+        }
+        summaries.sort(Comparator.comparing(MeterSummary::getSensorId));
+        return summaries;
+    }
+
+    /**
+     * Returns the measurements of one meter between {@code from} (inclusive) and {@code to} (exclusive),
+     * aggregated on the server. Without {@code resolution} the finest resolution that yields at most
+     * {@code maxPoints} buckets is used. With {@code interpolate=true}, buckets without any measurement
+     * between two measurements are filled with interpolated points. Responses are cached until the
+     * meter changes.
+     */
+    @GetMapping("/{sensorId}/series")
+    public ResponseEntity<?> getSeries(@PathVariable("sensorId") String sensorId,
+                                       @RequestParam(value = "from", required = false) String from,
+                                       @RequestParam(value = "to", required = false) String to,
+                                       @RequestParam(value = "resolution", required = false) String resolution,
+                                       @RequestParam(value = "maxPoints", defaultValue = "500") int maxPoints,
+                                       @RequestParam(value = "interpolate", defaultValue = "false") boolean interpolate,
+                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        MeterData meter = ingestionService.getMeterModel().getMeterData(sensorId);
+        if (meter == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("message", "Unbekannter Zähler: " + sensorId));
+        }
+
+        LocalDateTime fromTime;
+        LocalDateTime toTime;
+        try {
+            fromTime = parseDateTime(from);
+            toTime = parseDateTime(to);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Ungültiges Datum: " + e.getParsedString()));
+        }
+        if (fromTime != null && toTime != null && !fromTime.isBefore(toTime)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Das Startdatum muss vor dem Enddatum liegen."));
+        }
+
+        Resolution bucketSize;
+        if (resolution == null || resolution.isBlank() || "auto".equalsIgnoreCase(resolution)) {
+            bucketSize = Resolution.auto(span(meter, fromTime, toTime), Math.max(1, maxPoints));
+        } else {
+            bucketSize = Resolution.parse(resolution);
+            if (bucketSize == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Unbekannte Auflösung: " + resolution));
+            }
+        }
+
+        String cacheKey = "series|" + sensorId + "|" + fromTime + "|" + toTime + "|" + bucketSize.getCode() + "|" + interpolate;
+        try {
+            ResponseCache.BodyWriter writer = out -> {
+                List<SeriesPoint> points = SeriesDownsampler.downsample(meter, fromTime, toTime, bucketSize);
+                if (interpolate) {
+                    points = SeriesDownsampler.interpolateGaps(meter, points, fromTime, toTime, bucketSize);
+                }
+                logger.info("Series for {} from {} to {} at {}: {} points.", sensorId, fromTime, toTime, bucketSize.getCode(), points.size());
+                objectMapper.writeValue(out, new SeriesResponse(sensorId, fromTime, toTime, bucketSize, points));
+            };
+            ResponseCache.Entry entry = responseCache.get(cacheKey, meter.getVersion(), writer);
+            return CachedResponses.of(entry, writer, MediaType.APPLICATION_JSON, acceptEncoding);
+        } catch (IOException e) {
+            logger.error("Could not write series for {}: {}", sensorId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Collections.singletonMap("message", "Fehler beim Erstellen der Zeitreihe."));
+        }
+    }
+
+    /**
+     * Lists the missing measurement intervals of one meter between {@code from} (inclusive) and
+     * {@code to} (exclusive), by default between its first and last measurement.
+     */
+    @GetMapping("/{sensorId}/gaps")
+    public ResponseEntity<?> getGaps(@PathVariable("sensorId") String sensorId,
+                                     @RequestParam(value = "from", required = false) String from,
+                                     @RequestParam(value = "to", required = false) String to) {
+        MeterData meter = ingestionService.getMeterModel().getMeterData(sensorId);
+        if (meter == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("message", "Unbekannter Zähler: " + sensorId));
+        }
+        LocalDateTime fromTime;
+        LocalDateTime toTime;
+        try {
+            fromTime = parseDateTime(from);
+            toTime = parseDateTime(to);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Ungültiges Datum: " + e.getParsedString()));
+        }
+        if (fromTime != null && toTime != null && !fromTime.isBefore(toTime)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Das Startdatum muss vor dem Enddatum liegen."));
+        }
+        return ResponseEntity.ok(GapsResponse.of(meter, fromTime, toTime));
+    }
+
+    /**
+     * Streams all meters with all measurements, written straight from the columnar storage.
+     * {@code format=json} (default) produces the same document as /api/files/load-existing,
+     * {@code format=ndjson} one line per meter. The body is gzip compressed if the client accepts it.
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<?> streamMeters(@RequestParam(value = "format", defaultValue = "json") String format,
+                                         @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        if (!ndjson && !"json".equalsIgnoreCase(format)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("message", "Unbekanntes Format: " + format));
+        }
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        MeterModel model = ingestionService.getMeterModel();
+        JsonFactory factory = objectMapper.getFactory();
+
+        StreamingResponseBody body = outputStream -> {
+            long start = System.nanoTime();
+            OutputStream out = gzip ? new GZIPOutputStream(outputStream, 64 * 1024, true) : outputStream;
+            if (ndjson) {
+                MeterDataJsonWriter.writeNdjson(model, factory, out);
+            } else {
+                MeterDataJsonWriter.writeModel(model, factory, out);
+            }
+            out.close();
+            metrics.recordSerialize(ndjson ? "ndjson" : "json", System.nanoTime() - start);
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    /**
+     * Accepts either a date ({@code 2024-01-31}, meaning the start of that day) or a date-time.
+     */
+    static LocalDateTime parseDateTime(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        if (value.length() <= 10) {
+            return LocalDate.parse(value).atStartOfDay();
+        }
+        return LocalDateTime.parse(value);
+    }
+
+    private static Duration span(MeterData meter, LocalDateTime from, LocalDateTime to) {
+        List<Measurement> range = meter.getMeasurements(from, to);
+        if (range.isEmpty()) {
+            return Duration.ZERO;
+        }
+        LocalDateTime first = from != null ? from : range.get(0).getTimestamp();
+        LocalDateTime last = to != null ? to : range.get(range.size() - 1).getTimestamp();
+        return Duration.between(first, last);
+    }
+}
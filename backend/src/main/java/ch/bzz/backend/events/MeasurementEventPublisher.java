@@ -0,0 +1,265 @@
+package ch.bzz.backend.events;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.MeterModel;
+import ch.bzz.backend.model.Resolution;
+import ch.bzz.backend.model.TimeSeries;
+import ch.bzz.backend.query.MeterDelta;
+import ch.bzz.backend.query.SeriesDiff;
+import ch.bzz.backend.query.SeriesDownsampler;
+import ch.bzz.backend.query.SeriesPoint;
+import ch.bzz.backend.service.IngestionService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes changes of the meter model to connected clients as server-sent events. After every change
+ * the series of each meter is compared with the state the clients saw last ({@link SeriesDiff}),
+ * and one {@code measurements} event per changed meter carries the new or changed measurements,
+ * the removed timestamps and the rollup buckets of the client's resolution that contain a change.
+ * <p>
+ * All work runs on a single thread: changes are coalesced, every event is serialized once per
+ * resolution, and clients always receive events in model order. The id of every event is the model
+ * version; a client that reconnects with an older id, or a change too large to send as a delta,
+ * gets a {@code reset} event and should load the model again.
+ */
+@Service
+public class MeasurementEventPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MeasurementEventPublisher.class);
+
+    private final IngestionService ingestionService;
+    private final ObjectMapper objectMapper;
+    private final long timeoutMs;
+    private final int maxDeltaSize;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("measurement-events").daemon().factory());
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Only used on the executor thread: the series of every meter as of the last published version
+    private final Map<String, TimeSeries> published = new HashMap<>();
+    private long publishedVersion;
+
+    /* Verbundener Client mit der Auflösung der Rollups, die er erhält */
+    private record Subscriber(SseEmitter emitter, Resolution resolution) {
+    }
+
+    /**
+     * @param timeoutMs    time after which a connection is closed, clients reconnect on their own
+     * @param maxDeltaSize measurements per meter and change above which a reset is sent instead
+     */
+    public MeasurementEventPublisher(IngestionService ingestionService, ObjectMapper objectMapper,
+                                     @Value("${wattwise.events.timeout-ms:1800000}") long timeoutMs,
+                                     @Value("${wattwise.events.max-delta:20000}") int maxDeltaSize) {
+        this.ingestionService = ingestionService;
+        this.objectMapper = objectMapper;
+        this.timeoutMs = timeoutMs;
+        this.maxDeltaSize = maxDeltaSize;
+        ingestionService.addModelListener(this::modelChanged);
+        modelChanged();
+    }
+
+    /**
+     * Connects a client. It first receives a {@code ready} event with the current model version, or
+     * a {@code reset} event if {@code lastEventId} is older than the current version.
+     *
+     * @param resolution  resolution of the rollups in the events, {@link Resolution#RAW} for none
+     * @param lastEventId id of the last event the client received before reconnecting, may be {@code null}
+     */
+    public SseEmitter subscribe(Resolution resolution, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, resolution);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        execute(() -> {
+            boolean missedEvents = lastEventId != null && !lastEventId.equals(String.valueOf(publishedVersion));
+            if (send(subscriber, missedEvents ? "reset" : "ready", versionJson())) {
+                subscribers.add(subscriber);
+            }
+        });
+        return emitter;
+    }
+
+    private void modelChanged() {
+        if (publishScheduled.compareAndSet(false, true)) {
+            execute(this::publish);
+        }
+    }
+
+    // Keeps idle connections open through proxies and notices clients that went away
+    @Scheduled(fixedDelayString = "${wattwise.events.heartbeat-ms:15000}")
+    public void heartbeat() {
+        if (!subscribers.isEmpty()) {
+            execute(() -> subscribers.forEach(s -> send(s, SseEmitter.event().comment("heartbeat"))));
+        }
+    }
+
+    private void publish() {
+        // Changes after this point schedule another run
+        publishScheduled.set(false);
+        MeterModel model = ingestionService.getMeterModel();
+        long version = model.getVersion();
+        Map<String, MeterData> meters = model.getAllMetersMap();
+        boolean send = !subscribers.isEmpty();
+        boolean reset = false;
+
+        for (MeterData meter : meters.values()) {
+            TimeSeries current = meter.getSeries();
+            TimeSeries previous = published.put(meter.getSensorId(), current);
+            if (previous == current || !send || reset) {
+                continue;
+            }
+            SeriesDiff diff = SeriesDiff.between(previous, current);
+            if (diff.isEmpty()) {
+                continue;
+            }
+            if (diff.size() > maxDeltaSize) {
+                reset = true;
+                continue;
+            }
+            sendDelta(meter, current, diff, version);
+        }
+        List<String> removed = new ArrayList<>();
+        published.keySet().removeIf(sensorId -> {
+            boolean gone = !meters.containsKey(sensorId);
+            if (gone) {
+                removed.add(sensorId);
+            }
+            return gone;
+        });
+        publishedVersion = version;
+
+        if (reset) {
+            logger.info("Model changed too much for deltas, asking {} clients to reload.", subscribers.size());
+            broadcast("reset", versionJson());
+            return;
+        }
+        for (String sensorId : removed) {
+            broadcast("meter-removed", json(Map.of("sensorId", sensorId, "version", version)));
+        }
+    }
+
+    private void sendDelta(MeterData meter, TimeSeries series, SeriesDiff diff, long version) {
+        int[] changed = diff.getChanged();
+        long[] removedKeys = diff.getRemoved();
+        List<Measurement> measurements = new AbstractList<>() {
+            @Override
+            public Measurement get(int index) {
+                return series.measurementAt(changed[index]);
+            }
+
+            @Override
+            public int size() {
+                return changed.length;
+            }
+        };
+        List<LocalDateTime> removed = new ArrayList<>(removedKeys.length);
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (long key : removedKeys) {
+            removed.add(TimeSeries.fromKey(key));
+            first = Math.min(first, key);
+            last = Math.max(last, key);
+        }
+        if (changed.length > 0) {
+            first = Math.min(first, series.keyAt(changed[0]));
+            last = Math.max(last, series.keyAt(changed[changed.length - 1]));
+        }
+
+        Set<Resolution> resolutions = EnumSet.noneOf(Resolution.class);
+        subscribers.forEach(s -> resolutions.add(s.resolution()));
+        for (Resolution resolution : resolutions) {
+            List<SeriesPoint> rollups = Collections.emptyList();
+            if (resolution != Resolution.RAW) {
+                long from = resolution.bucketStartKey(first);
+                long to = resolution.nextBucketKey(resolution.bucketStartKey(last));
+                rollups = SeriesDownsampler.downsample(meter, TimeSeries.fromKey(from), TimeSeries.fromKey(to), resolution);
+            }
+            String data = json(new MeterDelta(meter.getSensorId(), version, measurements, removed, resolution.getCode(), rollups));
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.resolution() == resolution) {
+                    send(subscriber, SseEmitter.event().id(String.valueOf(version)).name("measurements").data(data));
+                }
+            }
+        }
+    }
+
+    private void broadcast(String name, String data) {
+        for (Subscriber subscriber : subscribers) {
+            send(subscriber, name, data);
+        }
+    }
+
+    private boolean send(Subscriber subscriber, String name, String data) {
+        return send(subscriber, SseEmitter.event().id(String.valueOf(publishedVersion)).name(name).data(data));
+    }
+
+    private boolean send(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        try {
+            subscriber.emitter().send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // The client went away, the emitter is completed by the container
+            subscribers.remove(subscriber);
+            return false;
+        }
+    }
+
+    private String versionJson() {
+        return json(Map.of("version", publishedVersion));
+    }
+
+    private String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize event", e);
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to publish measurement events: {}", e.getMessage(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        subscribers.forEach(s -> s.emitter().complete());
+        subscribers.clear();
+    }
+}
@@ -0,0 +1,20 @@
+package ch.bzz.backend.io;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * Ignores {@link #close()}. The JDK's StAX reader closes its input once it reaches the end of the
+ * document, which must not happen to a stream the caller still wants to read from.
+ */
+public class CloseShieldInputStream extends FilterInputStream {
+
+    public CloseShieldInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public void close() {
+        // the owner of the wrapped stream closes it
+    }
+}
@@ -0,0 +1,29 @@
+package ch.bzz.backend.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class FileInputs {
+
+    /* Kleine Dateien lohnen das Mapping nicht */
+    static final long MAPPING_THRESHOLD = 256 * 1024;
+
+    /**
+     * Opens a file for parsing. Large files are memory mapped so the parser reads directly from the
+     * page cache, small ones are read through a plain channel stream.
+     */
+    public static InputStream open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAPPING_THRESHOLD && size <= Integer.MAX_VALUE) {
+                // The mapping stays valid after the channel is closed
+                return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+        }
+        return Files.newInputStream(file);
+    }
+}
@@ -0,0 +1,89 @@
+package ch.bzz.backend.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * Passes every byte read from the wrapped stream on to a channel and a digest. Used to parse an
+ * upload while it is written to disk and hashed, so the data is only read once.
+ */
+public class TeeInputStream extends FilterInputStream {
+
+    private final WritableByteChannel channel;
+    private final MessageDigest digest;
+    private long count;
+
+    public TeeInputStream(InputStream in, WritableByteChannel channel, MessageDigest digest) {
+        super(in);
+        this.channel = channel;
+        this.digest = digest;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            tee(new byte[]{(byte) b}, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int read = super.read(bytes, offset, length);
+        if (read > 0) {
+            tee(bytes, offset, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes still have to reach the copy and the digest
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Reads the rest of the wrapped stream, e.g. trailing whitespace a parser did not consume.
+     */
+    public void drain() throws IOException {
+        byte[] buffer = new byte[8192];
+        while (read(buffer, 0, buffer.length) != -1) {
+            // tee() does the work
+        }
+    }
+
+    /**
+     * @return the number of bytes passed through so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    private void tee(byte[] bytes, int offset, int length) throws IOException {
+        digest.update(bytes, offset, length);
+        ByteBuffer chunk = ByteBuffer.wrap(bytes, offset, length);
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+        count += length;
+    }
+}
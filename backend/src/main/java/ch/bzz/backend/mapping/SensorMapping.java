@@ -0,0 +1,87 @@
+package ch.bzz.backend.mapping;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.List;
+
+/* Zuordnung eines Sensors zu seinem Zähler, den beiden Tarifregistern (OBIS-Codes) und der Energierichtung */
+public class SensorMapping {
+
+    /* Richtung der gemessenen Energie */
+    public enum Direction {
+        CONSUMPTION("consumption"),
+        FEED_IN("feed-in");
+
+        private final String label;
+
+        Direction(String label) {
+            this.label = label;
+        }
+
+        @JsonValue
+        public String getLabel() {
+            return label;
+        }
+
+        public static Direction fromLabel(String label) {
+            for (Direction direction : values()) {
+                if (direction.label.equalsIgnoreCase(label)) {
+                    return direction;
+                }
+            }
+            throw new IllegalArgumentException("Unknown direction '" + label + "', expected consumption or feed-in");
+        }
+    }
+
+    private final String key; // sensor id or pattern the mapping was configured for
+    private final Direction direction;
+    private final String obis1;
+    private final String obis2;
+    private final String meter; // factory number of the ESL meter, null if not configured
+
+    public SensorMapping(String key, Direction direction, String obis1, String obis2) {
+        this(key, direction, obis1, obis2, null);
+    }
+
+    public SensorMapping(String key, Direction direction, String obis1, String obis2, String meter) {
+        this.key = key;
+        this.direction = direction;
+        this.obis1 = obis1;
+        this.obis2 = obis2;
+        this.meter = meter;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public String getObis1() {
+        return obis1;
+    }
+
+    public String getObis2() {
+        return obis2;
+    }
+
+    public String getMeter() {
+        return meter;
+    }
+
+    public List<String> getRegisters() {
+        return List.of(obis1, obis2);
+    }
+
+    @Override
+    public String toString() {
+        return "SensorMapping{" +
+                "key='" + key + '\'' +
+                ", direction=" + direction +
+                ", meter='" + meter + '\'' +
+                ", registers=" + getRegisters() +
+                '}';
+    }
+}
@@ -0,0 +1,271 @@
+package ch.bzz.backend.mapping;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Maps sensor ids (the DocumentID of an SDAT file) to the OBIS registers their measurements are
+ * reconciled with. The mappings are read from a JSON file:
+ * <pre>
+ * {
+ *   "sensors":  { "eslevu180263_BR2294_ID742": { "direction": "consumption", "meter": "38157930", "registers": ["1-1:1.8.1", "1-1:1.8.2"] } },
+ *   "patterns": [ { "pattern": "ID735", "direction": "feed-in", "registers": ["1-1:2.8.1", "1-1:2.8.2"] } ],
+ *   "fallback": { "direction": "consumption", "registers": ["1-0:1.8.0", "1-0:2.8.0"] }
+ * }
+ * </pre>
+ * The optional {@code meter} is the factory number of the meter in the ESL files whose readings the
+ * registers are taken from; it is only needed when the ESL files contain more than one meter.
+ * Sensor ids are looked up in a hash map first. Patterns are regular expressions that may match any
+ * part of the id and are tried in file order; the result is remembered per sensor id, so each id is
+ * matched against the patterns only once. If the configured file does not exist, the mapping bundled
+ * with the application is used.
+ * <p>
+ * The file is checked for changes periodically and can be reloaded explicitly. A reload replaces the
+ * mappings as a whole; if the file is invalid, the previous mappings stay in place.
+ */
+@Component
+public class SensorMappingRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(SensorMappingRegistry.class);
+
+    static final String DEFAULT_RESOURCE = "/sensor-mapping.json";
+    // Pattern results are cached per sensor id; ids without a DocumentID are generated and never repeat
+    private static final int MAX_RESOLVED = 10_000;
+
+    /* Ein kompiliertes Muster mit seiner Zuordnung */
+    private record PatternMapping(Pattern pattern, SensorMapping mapping) {
+    }
+
+    /* Unveränderlicher Stand aller Zuordnungen, wird beim Neuladen als Ganzes ersetzt */
+    private static final class Mappings {
+        private final Map<String, SensorMapping> sensors;
+        private final List<PatternMapping> patterns;
+        private final SensorMapping fallback;
+        private final String source;
+        private final Map<String, Optional<SensorMapping>> resolved = new ConcurrentHashMap<>();
+
+        Mappings(Map<String, SensorMapping> sensors, List<PatternMapping> patterns, SensorMapping fallback, String source) {
+            this.sensors = sensors;
+            this.patterns = patterns;
+            this.fallback = fallback;
+            this.source = source;
+        }
+
+        SensorMapping find(String sensorId) {
+            SensorMapping exact = sensors.get(sensorId);
+            if (exact != null) {
+                return exact;
+            }
+            Optional<SensorMapping> cached = resolved.get(sensorId);
+            if (cached == null) {
+                cached = match(sensorId);
+                if (resolved.size() < MAX_RESOLVED) {
+                    resolved.put(sensorId, cached);
+                }
+            }
+            return cached.orElse(null);
+        }
+
+        private Optional<SensorMapping> match(String sensorId) {
+            for (PatternMapping pattern : patterns) {
+                if (pattern.pattern().matcher(sensorId).find()) {
+                    return Optional.of(pattern.mapping());
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path file; // null uses the bundled mapping only
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    private volatile Mappings mappings;
+    private volatile long loadedModified;
+    private volatile long version;
+
+    /**
+     * @param file JSON file with the mappings, {@code null} or empty to use the bundled mapping
+     */
+    public SensorMappingRegistry(@Value("${wattwise.mapping.file:config/sensor-mapping.json}") String file) {
+        this.file = file == null || file.isBlank() ? null : Paths.get(file);
+        try {
+            reload();
+        } catch (IOException e) {
+            logger.error("Invalid sensor mapping {}: {}. Using the bundled mapping.", this.file, e.getMessage());
+            try {
+                this.mappings = readBundled();
+            } catch (IOException bundled) {
+                throw new IllegalStateException("Bundled sensor mapping is invalid", bundled);
+            }
+        }
+    }
+
+    /**
+     * @return the mapping configured for the sensor, or {@code null} if neither its id nor a pattern matches
+     */
+    public SensorMapping find(String sensorId) {
+        return mappings.find(sensorId);
+    }
+
+    /**
+     * @return the registers used for sensors without a mapping
+     */
+    public SensorMapping getFallback() {
+        return mappings.fallback;
+    }
+
+    /**
+     * Incremented with every reload, so callers can tell whether results derived from the mappings
+     * are still current.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public String getSource() {
+        return mappings.source;
+    }
+
+    public Map<String, SensorMapping> getSensors() {
+        return Collections.unmodifiableMap(mappings.sensors);
+    }
+
+    public List<SensorMapping> getPatterns() {
+        return mappings.patterns.stream().map(PatternMapping::mapping).toList();
+    }
+
+    /**
+     * Registers a callback that runs after the mappings were replaced.
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Reads the mapping file again (or the bundled mapping if the file does not exist) and notifies
+     * the reload listeners.
+     *
+     * @throws IOException if the file cannot be read or is invalid; the previous mappings are kept
+     */
+    public synchronized void reload() throws IOException {
+        Mappings loaded;
+        long modified = 0;
+        if (file != null && Files.isRegularFile(file)) {
+            modified = Files.getLastModifiedTime(file).toMillis();
+            try (InputStream in = Files.newInputStream(file)) {
+                loaded = parse(in, file.toString());
+            }
+        } else {
+            loaded = readBundled();
+        }
+        boolean initial = mappings == null;
+        mappings = loaded;
+        loadedModified = modified;
+        version++;
+        logger.info("Loaded {} sensor mappings and {} patterns from {}.", loaded.sensors.size(), loaded.patterns.size(), loaded.source);
+        if (!initial) {
+            reloadListeners.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Reloads the mappings if the file was created, changed or deleted since it was last read.
+     */
+    @Scheduled(fixedDelayString = "${wattwise.mapping.check-interval-ms:10000}")
+    public void reloadIfChanged() {
+        if (file == null) {
+            return;
+        }
+        long modified;
+        try {
+            modified = Files.isRegularFile(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+        } catch (IOException e) {
+            return;
+        }
+        if (modified == loadedModified) {
+            return;
+        }
+        try {
+            reload();
+        } catch (IOException e) {
+            // Do not try again until the file changes once more
+            loadedModified = modified;
+            logger.error("Sensor mapping {} is invalid, keeping the previous mappings: {}", file, e.getMessage());
+        }
+    }
+
+    private Mappings readBundled() throws IOException {
+        try (InputStream in = SensorMappingRegistry.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Resource " + DEFAULT_RESOURCE + " not found");
+            }
+            return parse(in, "classpath:" + DEFAULT_RESOURCE);
+        }
+    }
+
+    private Mappings parse(InputStream in, String source) throws IOException {
+        JsonNode root = objectMapper.readTree(in);
+        if (root == null || !root.isObject()) {
+            throw new IOException("Expected a JSON object");
+        }
+        Map<String, SensorMapping> sensors = new LinkedHashMap<>();
+        JsonNode sensorNodes = root.path("sensors");
+        for (Iterator<Map.Entry<String, JsonNode>> it = sensorNodes.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> sensor = it.next();
+            sensors.put(sensor.getKey(), toMapping(sensor.getKey(), sensor.getValue()));
+        }
+        List<PatternMapping> patterns = new ArrayList<>();
+        for (JsonNode node : root.path("patterns")) {
+            String pattern = node.path("pattern").asText("");
+            if (pattern.isEmpty()) {
+                throw new IOException("Pattern entry without 'pattern': " + node);
+            }
+            try {
+                patterns.add(new PatternMapping(Pattern.compile(pattern), toMapping(pattern, node)));
+            } catch (PatternSyntaxException e) {
+                throw new IOException("Invalid pattern '" + pattern + "': " + e.getDescription());
+            }
+        }
+        if (!root.has("fallback")) {
+            throw new IOException("Missing 'fallback' mapping");
+        }
+        return new Mappings(sensors, patterns, toMapping("fallback", root.get("fallback")), source);
+    }
+
+    private static SensorMapping toMapping(String key, JsonNode node) throws IOException {
+        JsonNode registers = node.path("registers");
+        if (!registers.isArray() || registers.size() != 2) {
+            throw new IOException("Mapping '" + key + "' needs exactly two registers (tariff 1 and 2)");
+        }
+        try {
+            SensorMapping.Direction direction = SensorMapping.Direction.fromLabel(node.path("direction").asText("consumption"));
+            String meter = node.hasNonNull("meter") ? node.get("meter").asText().trim() : null;
+            return new SensorMapping(key, direction, registers.get(0).asText(), registers.get(1).asText(),
+                    meter == null || meter.isEmpty() ? null : meter);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Mapping '" + key + "': " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ch.bzz.backend.metrics;
+
+import ch.bzz.backend.cache.ResponseCache;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.MeterModel;
+import ch.bzz.backend.parser.ParseIssues;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of the ingestion pipeline, exposed under /actuator/metrics:
+ * <ul>
+ *     <li>{@code wattwise.ingestion.parse}: time to hash and parse one file, tagged with the file type</li>
+ *     <li>{@code wattwise.ingestion.merge}: time to publish parsed files into the model, tagged
+ *     {@code mode=rebuild|append}</li>
+ *     <li>{@code wattwise.serialize}: time to write the model, tagged with the format
+ *     ({@code json}, {@code ndjson}, {@code snapshot})</li>
+ *     <li>{@code wattwise.ingestion.values} and {@code wattwise.ingestion.malformed}: parsed values and
+ *     rejected values per file type, the latter also tagged with the kind of problem</li>
+ *     <li>{@code wattwise.ingestion.file.size} and {@code wattwise.ingestion.file.values}: histograms of
+ *     the file size and the number of values per file</li>
+ *     <li>{@code wattwise.model.meters}, {@code wattwise.model.measurements} and {@code wattwise.model.memory}:
+ *     gauges of the live model</li>
+ *     <li>{@code wattwise.cache.entries}, {@code wattwise.cache.bytes}, {@code wattwise.cache.hits},
+ *     {@code wattwise.cache.misses} and {@code wattwise.cache.evictions}: state of the response cache</li>
+ * </ul>
+ */
+@Component
+public class IngestionMetrics {
+
+    private final MeterRegistry registry;
+
+    public IngestionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Records one parsed file.
+     *
+     * @param type   file type tag, {@code esl} or {@code sdat}
+     * @param values number of observations (SDAT) or register readings (ESL) read from the file
+     */
+    public void recordParse(String type, long nanos, long bytes, int values, ParseIssues issues) {
+        Timer.builder("wattwise.ingestion.parse")
+                .description("Time to hash and parse one file")
+                .tag("type", type)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("wattwise.ingestion.file.size")
+                .description("Size of the parsed files")
+                .baseUnit("bytes")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+        DistributionSummary.builder("wattwise.ingestion.file.values")
+                .description("Observations or register readings per parsed file")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(values);
+        Counter.builder("wattwise.ingestion.values")
+                .description("Observations or register readings read from files")
+                .tag("type", type)
+                .register(registry)
+                .increment(values);
+        for (Map.Entry<String, Integer> issue : issues.getCounts().entrySet()) {
+            Counter.builder("wattwise.ingestion.malformed")
+                    .description("Values that could not be parsed and were skipped or defaulted")
+                    .tag("type", type)
+                    .tag("kind", issue.getKey())
+                    .register(registry)
+                    .increment(issue.getValue());
+        }
+    }
+
+    /**
+     * @param mode {@code rebuild} for a full rebuild of the model, {@code append} for uploads merged
+     *             into the existing meters
+     */
+    public void recordMerge(String mode, long nanos) {
+        Timer.builder("wattwise.ingestion.merge")
+                .description("Time to merge parsed files into the meter model")
+                .tag("mode", mode)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSerialize(String format, long nanos) {
+        Timer.builder("wattwise.serialize")
+                .description("Time to write the meter model")
+                .tag("format", format)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers the gauges of the live model. They are computed when the metrics are read, which
+     * only walks the meters, not their measurements.
+     */
+    public void bindModel(MeterModel model) {
+        Gauge.builder("wattwise.model.meters", model, m -> m.getAllMeterData().size())
+                .description("Meters in the model")
+                .register(registry);
+        Gauge.builder("wattwise.model.measurements", model, IngestionMetrics::measurements)
+                .description("Measurements in the model")
+                .register(registry);
+        Gauge.builder("wattwise.model.memory", model, IngestionMetrics::memoryBytes)
+                .description("Estimated heap used by the measurements of the model")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Registers the gauges and counters of the response cache.
+     */
+    public void bindCache(ResponseCache cache) {
+        Gauge.builder("wattwise.cache.entries", cache, ResponseCache::size)
+                .description("Responses in the cache")
+                .register(registry);
+        Gauge.builder("wattwise.cache.bytes", cache, ResponseCache::getBytes)
+                .description("Memory held by the cached responses")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("wattwise.cache.hits", cache, ResponseCache::getHits)
+                .description("Requests served from the cache")
+                .register(registry);
+        FunctionCounter.builder("wattwise.cache.misses", cache, ResponseCache::getMisses)
+                .description("Requests that had to write the response")
+                .register(registry);
+        FunctionCounter.builder("wattwise.cache.evictions", cache, ResponseCache::getEvictions)
+                .description("Responses evicted to stay within the size limits")
+                .register(registry);
+    }
+
+    private static double measurements(MeterModel model) {
+        long count = 0;
+        for (MeterData meter : model.getAllMeterData()) {
+            count += meter.size();
+        }
+        return count;
+    }
+
+    private static double memoryBytes(MeterModel model) {
+        long bytes = 0;
+        for (MeterData meter : model.getAllMeterData()) {
+            bytes += meter.getSeries().estimateMemoryBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,193 @@
+package ch.bzz.backend.model;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interval index over the timestamps of a {@link TimeSeries}: every stored key {@code k} covers the
+ * interval {@code [k, k + step)}, and touching or overlapping intervals are merged into runs. The runs
+ * are kept sorted in two {@code long[]} columns, so the missing intervals between two points in time
+ * are found with one binary search plus one step per gap, independent of the number of measurements.
+ * <p>
+ * Like {@link TimeSeries}, the index is written by one thread and {@link #freeze()} returns read-only
+ * views sharing the arrays. Appending to the last run only moves its end, which the view keeps a copy
+ * of; inserting or merging runs in the shared range copies the arrays first.
+ */
+public class Coverage {
+
+    /* SDAT-Dateien liefern Viertelstundenwerte */
+    public static final long DEFAULT_STEP = Duration.ofMinutes(15).toNanos();
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /* Fehlender Bereich [fromKey, toKey) */
+    public record Gap(long fromKey, long toKey) {
+
+        /**
+         * @return the number of intervals of length {@code step} that are missing, rounded up
+         */
+        public long intervals(long step) {
+            return (toKey - fromKey + step - 1) / step;
+        }
+    }
+
+    private final long step;
+    private long[] starts;
+    private long[] ends;
+    private int size;
+
+    // Runs [0, sharedSize) may be visible through a frozen view; the view keeps its own copy of the
+    // end of its last run, so only that end may still be written in place
+    private int sharedSize;
+    private final long lastEnd; // end of the last run of a frozen view
+    private final boolean frozen;
+
+    public Coverage(long step) {
+        this.step = step;
+        this.starts = new long[INITIAL_CAPACITY];
+        this.ends = new long[INITIAL_CAPACITY];
+        this.lastEnd = 0;
+        this.frozen = false;
+    }
+
+    private Coverage(Coverage source) {
+        this.step = source.step;
+        this.starts = source.starts;
+        this.ends = source.ends;
+        this.size = source.size;
+        this.lastEnd = source.size > 0 ? source.ends[source.size - 1] : 0;
+        this.frozen = true;
+    }
+
+    /**
+     * Marks {@code [key, key + step)} as covered.
+     */
+    public void add(long key) {
+        if (frozen) {
+            throw new UnsupportedOperationException("Coverage view is read-only");
+        }
+        long end = key + step;
+        // Appending right after the last run is the common case
+        if (size > 0 && key == ends[size - 1]) {
+            ends[size - 1] = end;
+            return;
+        }
+        int previous = lastRunStartingAtOrBefore(key);
+        if (previous >= 0 && key < ends[previous]) {
+            return; // already covered
+        }
+        boolean joinsPrevious = previous >= 0 && key == ends[previous];
+        int next = previous + 1;
+        boolean joinsNext = next < size && starts[next] <= end;
+
+        if (joinsPrevious && joinsNext) {
+            if (next < sharedSize) {
+                unshare();
+            }
+            ends[previous] = Math.max(ends[next], end);
+            System.arraycopy(starts, next + 1, starts, next, size - next - 1);
+            System.arraycopy(ends, next + 1, ends, next, size - next - 1);
+            size--;
+        } else if (joinsPrevious) {
+            if (previous < sharedSize - 1) {
+                unshare();
+            }
+            ends[previous] = end;
+        } else if (joinsNext) {
+            if (next < sharedSize) {
+                unshare();
+            }
+            starts[next] = key;
+            ends[next] = Math.max(ends[next], end);
+        } else {
+            insert(next, key, end);
+        }
+    }
+
+    /**
+     * @return a read-only view of the current runs
+     */
+    public Coverage freeze() {
+        sharedSize = size;
+        return new Coverage(this);
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    public int runCount() {
+        return size;
+    }
+
+    public long startAt(int run) {
+        return starts[run];
+    }
+
+    public long endAt(int run) {
+        return frozen && run == size - 1 ? lastEnd : ends[run];
+    }
+
+    public boolean isCovered(long key) {
+        int run = lastRunStartingAtOrBefore(key);
+        return run >= 0 && key < endAt(run);
+    }
+
+    /**
+     * @return the parts of {@code [fromKey, toKey)} that are not covered, in time order
+     */
+    public List<Gap> gaps(long fromKey, long toKey) {
+        List<Gap> gaps = new ArrayList<>();
+        long cursor = fromKey;
+        int run = Math.max(0, lastRunStartingAtOrBefore(fromKey));
+        for (; run < size && startAt(run) < toKey && cursor < toKey; run++) {
+            if (startAt(run) > cursor) {
+                gaps.add(new Gap(cursor, startAt(run)));
+            }
+            cursor = Math.max(cursor, endAt(run));
+        }
+        if (cursor < toKey) {
+            gaps.add(new Gap(cursor, toKey));
+        }
+        return gaps;
+    }
+
+    // Binary search over the run starts, -1 if the first run starts after key
+    private int lastRunStartingAtOrBefore(long key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private void insert(int index, long start, long end) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            sharedSize = 0;
+        } else if (index < sharedSize) {
+            unshare();
+        }
+        System.arraycopy(starts, index, starts, index + 1, size - index);
+        System.arraycopy(ends, index, ends, index + 1, size - index);
+        starts[index] = start;
+        ends[index] = end;
+        size++;
+    }
+
+    // Called before writing a start in [0, sharedSize) or an end in [0, sharedSize - 1)
+    private void unshare() {
+        starts = starts.clone();
+        ends = ends.clone();
+        sharedSize = 0;
+    }
+}
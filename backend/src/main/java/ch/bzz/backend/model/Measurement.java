@@ -1,6 +1,7 @@
 package ch.bzz.backend.model;
 
 import java.time.LocalDateTime;
+import java.util.Objects;
 
 public class Measurement {
     private LocalDateTime timestamp;
@@ -33,6 +34,20 @@ public class Measurement {
     // Removed redundant getRelativeValue(), getAbsoluteValue(), setAbsoluteValue()
     // Jackson will pick up getRelative() and getAbsolute() for serialization to "relative" and "absolute"
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Measurement that)) return false;
+        return Objects.equals(timestamp, that.timestamp)
+                && Objects.equals(relative, that.relative)
+                && Objects.equals(absolute, that.absolute);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timestamp, relative, absolute);
+    }
+
     @Override
     public String toString() {
         return "Measurement{" +
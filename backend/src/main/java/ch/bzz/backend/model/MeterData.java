@@ -3,34 +3,220 @@ package ch.bzz.backend.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import java.time.LocalDateTime;
+import java.util.AbstractList;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /* Für jeden einzelnen Stromzähler */
 public class MeterData {
     private String sensorId;  // z.B. ID735
-    private TreeMap<LocalDateTime, Measurement> measurements;
+
+    // Written only while holding writeLock, one lock per meter so ingestion of different meters does not contend
+    private final Object writeLock = new Object();
+    private final TimeSeries series; // columnar storage, sorted by timestamp
+    private final EnumMap<Resolution, Rollup> rollups; // pre-aggregated hour/day/week/month cells
+    private final Coverage coverage; // runs of consecutive intervals, to find gaps without scanning the series
+    private volatile boolean pending; // written since the last publish()
+
+    // What readers see: frozen views of series and rollups, replaced after every write
+    private volatile View view;
+
+    static final Resolution[] ROLLUP_RESOLUTIONS = {Resolution.HOUR, Resolution.DAY, Resolution.WEEK, Resolution.MONTH};
+
+    // Shared by all meters and models, so versions are unique and increase with every change
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    /* Unveränderlicher Lesestand eines Zählers */
+    private record View(TimeSeries series, EnumMap<Resolution, Rollup> rollups, Coverage coverage, long version) {
+    }
 
     public MeterData(String sensorId) {
+        this(sensorId, Coverage.DEFAULT_STEP);
+    }
+
+    /**
+     * @param step length of one interval of this meter in the unit of {@link TimeSeries#toKey} keys,
+     *             given by the Resolution of its SDAT files
+     */
+    public MeterData(String sensorId, long step) {
         this.sensorId = sensorId;
-        this.measurements = new TreeMap<>();
+        this.series = new TimeSeries();
+        this.rollups = new EnumMap<>(Resolution.class);
+        for (Resolution resolution : ROLLUP_RESOLUTIONS) {
+            rollups.put(resolution, new Rollup(resolution, series));
+        }
+        this.coverage = new Coverage(step);
+        synchronized (writeLock) {
+            publish();
+        }
     }
 
+    static long nextVersion() {
+        return VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Adds a single measurement. The change becomes visible to readers on their next access; use
+     * {@link #addMeasurements(Collection)} for more than a few values, it publishes once per call.
+     */
     public void addMeasurement(Measurement m) {
-        this.measurements.put(m.getTimestamp(), m);
+        synchronized (writeLock) {
+            putUnpublished(TimeSeries.toKey(m.getTimestamp()), TimeSeries.toPrimitive(m.getRelative()), TimeSeries.toPrimitive(m.getAbsolute()));
+            pending = true;
+        }
+    }
+
+    /**
+     * Adds or replaces all given measurements and publishes them to readers at once.
+     */
+    public void addMeasurements(Collection<Measurement> measurements) {
+        synchronized (writeLock) {
+            for (Measurement m : measurements) {
+                putUnpublished(TimeSeries.toKey(m.getTimestamp()), TimeSeries.toPrimitive(m.getRelative()), TimeSeries.toPrimitive(m.getAbsolute()));
+            }
+            publish();
+        }
+    }
+
+    /**
+     * Primitive variant of {@link #addMeasurement(Measurement)}, {@code key} as in {@link TimeSeries#toKey}
+     * and NaN for missing values.
+     */
+    public void put(long key, double relative, double absolute) {
+        synchronized (writeLock) {
+            putUnpublished(key, relative, absolute);
+            pending = true;
+        }
+    }
+
+    /**
+     * Bulk variant of {@link #put(long, double, double)}. Sorted data that starts after the last stored
+     * interval (e.g. a snapshot being loaded) is copied into the series in one go.
+     */
+    public void putAll(long[] keys, double[] relatives, double[] absolutes, int count) {
+        synchronized (writeLock) {
+            if (!series.appendAll(keys, relatives, absolutes, count)) {
+                for (int i = 0; i < count; i++) {
+                    putUnpublished(keys[i], relatives[i], absolutes[i]);
+                }
+            } else {
+                for (Rollup rollup : rollups.values()) {
+                    for (int i = 0; i < count; i++) {
+                        rollup.add(keys[i], relatives[i], absolutes[i], false);
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    coverage.add(keys[i]);
+                }
+            }
+            publish();
+        }
+    }
+
+    private void putUnpublished(long key, double relative, double absolute) {
+        boolean replaced = !series.isEmpty() && key <= series.keyAt(series.size() - 1) && series.indexOf(key) >= 0;
+        this.series.put(key, relative, absolute);
+        for (Rollup rollup : rollups.values()) {
+            rollup.add(key, relative, absolute, replaced);
+        }
+        coverage.add(key);
+    }
+
+    // Called with writeLock held
+    private void publish() {
+        TimeSeries frozenSeries = series.freeze();
+        EnumMap<Resolution, Rollup> frozenRollups = new EnumMap<>(Resolution.class);
+        for (Map.Entry<Resolution, Rollup> entry : rollups.entrySet()) {
+            frozenRollups.put(entry.getKey(), entry.getValue().freeze(frozenSeries));
+        }
+        pending = false;
+        view = new View(frozenSeries, frozenRollups, coverage.freeze(), nextVersion());
+    }
+
+    // Lock-free unless single writes are waiting to be published
+    private View view() {
+        View current = view;
+        if (!pending) {
+            return current;
+        }
+        synchronized (writeLock) {
+            if (pending) {
+                publish();
+            }
+            return view;
+        }
     }
 
-    // Use @JsonIgnore if you don't want the raw TreeMap serialized,
-    // as getAllMeasurements() will provide the list.
-    // If you want the TreeMap structure, then remove @JsonIgnore and adjust frontend.
-    // For the current frontend, getAllMeasurements() is preferred.
+    // Builds a TreeMap copy of the stored measurements; changes to the map are not written back.
+    // Prefer getMeasurements() or getMeasurements(from, to), which do not copy anything.
     @JsonIgnore
     public TreeMap<LocalDateTime, Measurement> getMeasurementsMap() {
-        return measurements;
+        TimeSeries series = view().series();
+        TreeMap<LocalDateTime, Measurement> map = new TreeMap<>();
+        for (int i = 0; i < series.size(); i++) {
+            Measurement m = series.measurementAt(i);
+            map.put(m.getTimestamp(), m);
+        }
+        return map;
     }
 
+    // Read-only view in timestamp order, Measurement objects are created on access.
+    // Jackson serializes this as "measurements", which the frontend expects.
     public Collection<Measurement> getMeasurements() {
-        return measurements.values();
+        TimeSeries series = view().series();
+        return new RangeView(series, 0, series.size());
+    }
+
+    /**
+     * Read-only view of all measurements with {@code from <= timestamp < to}, found by binary search.
+     * A {@code null} bound means unbounded.
+     */
+    public List<Measurement> getMeasurements(LocalDateTime from, LocalDateTime to) {
+        TimeSeries series = view().series();
+        int start = from == null ? 0 : series.lowerBound(TimeSeries.toKey(from));
+        int end = to == null ? series.size() : series.lowerBound(TimeSeries.toKey(to));
+        return new RangeView(series, start, Math.max(start, end));
+    }
+
+    /**
+     * @return a read-only view of the pre-aggregated cells for the given resolution, or {@code null} if
+     * none are kept for it. {@link Rollup#getSeries()} is the raw data the view was computed from.
+     */
+    @JsonIgnore
+    public Rollup getRollup(Resolution resolution) {
+        return view().rollups().get(resolution);
+    }
+
+    /**
+     * @return a read-only view of the measurements at the time of the call
+     */
+    @JsonIgnore
+    public TimeSeries getSeries() {
+        return view().series();
+    }
+
+    /**
+     * @return a read-only view of the intervals covered by the measurements at the time of the call
+     */
+    @JsonIgnore
+    public Coverage getCoverage() {
+        return view().coverage();
+    }
+
+    /**
+     * @return a number that changes with every published write, e.g. to invalidate cached results
+     */
+    @JsonIgnore
+    public long getVersion() {
+        return view().version();
+    }
+
+    public int size() {
+        return view().series().size();
     }
 
     public String getSensorId() {
@@ -42,11 +228,36 @@ public class MeterData {
     // Removed exportCSV() and exportJSON() as serialization is handled by Spring/Jackson
     // and CSV export is typically a separate endpoint or frontend concern.
 
+    private static class RangeView extends AbstractList<Measurement> {
+        private final TimeSeries series;
+        private final int start;
+        private final int end;
+
+        RangeView(TimeSeries series, int start, int end) {
+            this.series = series;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Measurement get(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + (end - start));
+            }
+            return series.measurementAt(start + index);
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+
     @Override
     public String toString() {
         return "MeterData{" +
                 "sensorId='" + sensorId + '\'' +
-                ", measurements=" + measurements.size() + " entries" +
+                ", measurements=" + size() + " entries" +
                 '}';
     }
-}
\ No newline at end of file
+}
@@ -3,38 +3,91 @@ package ch.bzz.backend.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /* Daten für mehrere Zähler */
 public class MeterModel {
-    private Map<String, MeterData> allMeters;  // key = sensorId (z.B. ID735)
+    // Concurrent map: meters are added and replaced without a global lock, reads never block
+    private final ConcurrentHashMap<String, MeterData> allMeters;  // key = sensorId (z.B. ID735)
+    private volatile long structureVersion; // changes when meters are added, replaced or removed
 
     public MeterModel() {
-        allMeters = new HashMap<>();
+        allMeters = new ConcurrentHashMap<>();
+        structureVersion = MeterData.nextVersion();
     }
 
     public void addMeasurement(String sensorId, Measurement measurement) {
-        allMeters.computeIfAbsent(sensorId, id -> new MeterData(id)).addMeasurement(measurement);
+        getOrCreateMeterData(sensorId).addMeasurement(measurement);
+    }
+
+    /**
+     * Adds all measurements of one meter in a single write, see {@link MeterData#addMeasurements(Collection)}.
+     */
+    public void addMeasurements(String sensorId, List<Measurement> measurements) {
+        getOrCreateMeterData(sensorId).addMeasurements(measurements);
+    }
+
+    public MeterData getOrCreateMeterData(String sensorId) {
+        return getOrCreateMeterData(sensorId, Coverage.DEFAULT_STEP);
+    }
+
+    /**
+     * @param step interval length of a meter that does not exist yet, see {@link MeterData#MeterData(String, long)}
+     */
+    public MeterData getOrCreateMeterData(String sensorId, long step) {
+        MeterData meter = allMeters.get(sensorId);
+        if (meter != null) {
+            return meter;
+        }
+        return allMeters.computeIfAbsent(sensorId, id -> {
+            structureVersion = MeterData.nextVersion();
+            return new MeterData(id, step);
+        });
     }
 
     public MeterData getMeterData(String sensorId) {
         return allMeters.get(sensorId);
     }
 
+    /**
+     * Replaces the content of this model with the given meters: meters with the same id are swapped
+     * atomically, meters that are not in {@code meters} are removed. Readers see each meter either
+     * completely old or completely new.
+     */
+    public void replaceAll(Map<String, MeterData> meters) {
+        allMeters.putAll(meters);
+        allMeters.keySet().retainAll(meters.keySet());
+        structureVersion = MeterData.nextVersion();
+    }
+
+    /**
+     * @return a number that increases with every change to any meter of the model
+     */
+    @JsonIgnore
+    public long getVersion() {
+        long version = structureVersion;
+        for (MeterData meter : allMeters.values()) {
+            version = Math.max(version, meter.getVersion());
+        }
+        return version;
+    }
+
     // This getter (getAllMeterData) will be serialized by Jackson to "allMeterData",
     // which matches your frontend's MeterModelResponse type.
     public Collection<MeterData> getAllMeterData() {
-        return allMeters.values();
+        return Collections.unmodifiableCollection(allMeters.values());
     }
 
     // Optional: If you explicitly want the map itself exposed in JSON, remove @JsonIgnore.
     // For frontend to work, 'allMeterData' is sufficient.
     @JsonIgnore
     public Map<String, MeterData> getAllMetersMap() {
-        return allMeters;
+        return Collections.unmodifiableMap(allMeters);
     }
 
     // Removed exportAllCSV() and exportAllJSON() - Jackson handles JSON serialization.
     // CSV export is typically a separate endpoint or frontend responsibility.
-}
\ No newline at end of file
+}
@@ -0,0 +1,62 @@
+package ch.bzz.backend.model;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/* Zählerstand eines Registers (OBIS-Code) am Ende einer Abrechnungsperiode */
+public class RegisterReading {
+    private final String meter; // factory number of the meter, null if unknown
+    private final String obis;
+    private final LocalDateTime timestamp; // UTC, null if the reading has no period
+    private final double value;
+
+    public RegisterReading(String obis, LocalDateTime timestamp, double value) {
+        this(null, obis, timestamp, value);
+    }
+
+    public RegisterReading(String meter, String obis, LocalDateTime timestamp, double value) {
+        this.meter = meter;
+        this.obis = obis;
+        this.timestamp = timestamp;
+        this.value = value;
+    }
+
+    public String getMeter() {
+        return meter;
+    }
+
+    public String getObis() {
+        return obis;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RegisterReading that)) return false;
+        return Double.compare(value, that.value) == 0 && Objects.equals(meter, that.meter) && obis.equals(that.obis)
+                && Objects.equals(timestamp, that.timestamp);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(meter, obis, timestamp, value);
+    }
+
+    @Override
+    public String toString() {
+        return "RegisterReading{" +
+                "meter='" + meter + '\'' +
+                ", obis='" + obis + '\'' +
+                ", timestamp=" + timestamp +
+                ", value=" + value +
+                '}';
+    }
+}
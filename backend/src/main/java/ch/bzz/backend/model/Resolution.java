@@ -0,0 +1,119 @@
+package ch.bzz.backend.model;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Bucket sizes for series queries. Buckets are aligned to the calendar: hours start at :00,
+ * days at midnight, weeks on Monday and months on the first day of the month.
+ */
+public enum Resolution {
+    RAW("raw", Duration.ZERO),
+    MINUTES_15("15m", Duration.ofMinutes(15)),
+    HOUR("1h", Duration.ofHours(1)),
+    DAY("1d", Duration.ofDays(1)),
+    WEEK("1w", Duration.ofDays(7)),
+    MONTH("1M", Duration.ofDays(30));
+
+    private final String code;
+    private final Duration approximateLength;
+
+    Resolution(String code, Duration approximateLength) {
+        this.code = code;
+        this.approximateLength = approximateLength;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Parses the {@code resolution} request parameter. Accepts the short codes ({@code 15m}, {@code 1h},
+     * {@code 1d}, {@code 1w}, {@code 1M}, {@code raw}) as well as the enum names.
+     *
+     * @return the resolution, or {@code null} if the value is unknown
+     */
+    public static Resolution parse(String value) {
+        for (Resolution resolution : values()) {
+            if (resolution.code.equals(value) || resolution.name().equalsIgnoreCase(value)) {
+                return resolution;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks the finest resolution that results in at most {@code maxPoints} buckets for the given span.
+     */
+    public static Resolution auto(Duration span, int maxPoints) {
+        for (Resolution resolution : values()) {
+            if (resolution == RAW) {
+                continue;
+            }
+            if (span.dividedBy(resolution.approximateLength) < maxPoints) {
+                return resolution;
+            }
+        }
+        return MONTH;
+    }
+
+    /**
+     * @return the start of the bucket containing {@code timestamp}
+     */
+    public LocalDateTime bucketStart(LocalDateTime timestamp) {
+        return switch (this) {
+            case RAW -> timestamp;
+            case MINUTES_15 -> timestamp.truncatedTo(ChronoUnit.HOURS).plusMinutes(timestamp.getMinute() / 15 * 15L);
+            case HOUR -> timestamp.truncatedTo(ChronoUnit.HOURS);
+            case DAY -> timestamp.truncatedTo(ChronoUnit.DAYS);
+            case WEEK -> timestamp.truncatedTo(ChronoUnit.DAYS).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> timestamp.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+        };
+    }
+
+    private static final long NANOS_PER_DAY = Duration.ofDays(1).toNanos();
+    // 1970-01-05, the first Monday after the epoch
+    private static final long FIRST_MONDAY_KEY = 4 * NANOS_PER_DAY;
+
+    /**
+     * Same as {@link #bucketStart(LocalDateTime)} for a {@link TimeSeries} key. Buckets up to a week
+     * have a fixed length in key space (keys are local time, so there are no DST jumps) and are
+     * computed without any date arithmetic.
+     */
+    public long bucketStartKey(long key) {
+        return switch (this) {
+            case RAW -> key;
+            case MINUTES_15, HOUR, DAY -> Math.floorDiv(key, approximateLength.toNanos()) * approximateLength.toNanos();
+            case WEEK -> Math.floorDiv(key - FIRST_MONDAY_KEY, approximateLength.toNanos()) * approximateLength.toNanos() + FIRST_MONDAY_KEY;
+            case MONTH -> TimeSeries.toKey(bucketStart(TimeSeries.fromKey(key)));
+        };
+    }
+
+    /**
+     * Same as {@link #nextBucket(LocalDateTime)} for a {@link TimeSeries} key.
+     */
+    public long nextBucketKey(long bucketStartKey) {
+        return switch (this) {
+            case RAW -> bucketStartKey + 1;
+            case MINUTES_15, HOUR, DAY, WEEK -> bucketStartKey + approximateLength.toNanos();
+            case MONTH -> TimeSeries.toKey(nextBucket(TimeSeries.fromKey(bucketStartKey)));
+        };
+    }
+
+    /**
+     * @return the start of the bucket following the one starting at {@code bucketStart}
+     */
+    public LocalDateTime nextBucket(LocalDateTime bucketStart) {
+        return switch (this) {
+            case RAW -> bucketStart.plusNanos(1);
+            case MINUTES_15 -> bucketStart.plusMinutes(15);
+            case HOUR -> bucketStart.plusHours(1);
+            case DAY -> bucketStart.plusDays(1);
+            case WEEK -> bucketStart.plusWeeks(1);
+            case MONTH -> bucketStart.plusMonths(1);
+        };
+    }
+}
@@ -0,0 +1,267 @@
+package ch.bzz.backend.model;
+
+import java.util.Arrays;
+
+/**
+ * Pre-aggregated cells of a {@link TimeSeries} for one {@link Resolution}. Every cell holds the sum,
+ * min and max of the relative values in its bucket and the closing absolute value (the absolute
+ * value with the latest timestamp). Cells are updated incrementally whenever a new interval is added.
+ * Overwriting an existing interval marks the cell stale, it is then recomputed from the raw series
+ * the next time it is read.
+ * <p>
+ * Like {@link TimeSeries}, a rollup has a single writer and hands out read-only views with
+ * {@link #freeze(TimeSeries)}. Stale cells are recomputed before a view is created, so reading a view
+ * never writes.
+ */
+public class Rollup {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Resolution resolution;
+    private final TimeSeries series;
+
+    private long[] bucketKeys = new long[INITIAL_CAPACITY];
+    private long[] bucketEndKeys = new long[INITIAL_CAPACITY];
+    private double[] sums = new double[INITIAL_CAPACITY];
+    private double[] mins = new double[INITIAL_CAPACITY];
+    private double[] maxs = new double[INITIAL_CAPACITY];
+    private double[] closeAbsolutes = new double[INITIAL_CAPACITY];
+    private long[] closeKeys = new long[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int[] valueCounts = new int[INITIAL_CAPACITY];
+    private boolean[] stale = new boolean[INITIAL_CAPACITY];
+    private int size;
+    private int staleCount;
+
+    // [0, sharedSize) may be visible through a frozen view and must not be written in place
+    private int sharedSize;
+    private final boolean frozen;
+
+    // Most points fall into the same bucket as the previous one, this avoids the date arithmetic
+    private int lastCell = -1;
+
+    public Rollup(Resolution resolution, TimeSeries series) {
+        this.resolution = resolution;
+        this.series = series;
+        this.frozen = false;
+    }
+
+    private Rollup(Rollup source, TimeSeries series) {
+        this.resolution = source.resolution;
+        this.series = series;
+        this.bucketKeys = source.bucketKeys;
+        this.bucketEndKeys = source.bucketEndKeys;
+        this.sums = source.sums;
+        this.mins = source.mins;
+        this.maxs = source.maxs;
+        this.closeAbsolutes = source.closeAbsolutes;
+        this.closeKeys = source.closeKeys;
+        this.counts = source.counts;
+        this.valueCounts = source.valueCounts;
+        this.stale = source.stale;
+        this.size = source.size;
+        this.frozen = true;
+    }
+
+    /**
+     * Returns a read-only view of the current cells, reading raw data from {@code frozenSeries}
+     * (a view of the series this rollup aggregates, taken at the same time).
+     */
+    Rollup freeze(TimeSeries frozenSeries) {
+        if (frozen) {
+            return this;
+        }
+        if (staleCount > 0) {
+            for (int cell = 0; cell < size; cell++) {
+                refresh(cell);
+            }
+        }
+        sharedSize = size;
+        return new Rollup(this, frozenSeries);
+    }
+
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return the series the cells were computed from
+     */
+    public TimeSeries getSeries() {
+        return series;
+    }
+
+    /**
+     * Adds a point to its cell.
+     *
+     * @param replaced true if the point overwrote an existing interval of the series
+     */
+    void add(long key, double relative, double absolute, boolean replaced) {
+        if (frozen) {
+            throw new IllegalStateException("Rollup view is read-only");
+        }
+        int cell = cellFor(key);
+        unshare(cell);
+        if (replaced) {
+            if (!stale[cell]) {
+                stale[cell] = true;
+                staleCount++;
+            }
+            return;
+        }
+        counts[cell]++;
+        if (!Double.isNaN(relative)) {
+            sums[cell] += relative;
+            mins[cell] = Math.min(mins[cell], relative);
+            maxs[cell] = Math.max(maxs[cell], relative);
+            valueCounts[cell]++;
+        }
+        if (!Double.isNaN(absolute) && key >= closeKeys[cell]) {
+            closeAbsolutes[cell] = absolute;
+            closeKeys[cell] = key;
+        }
+    }
+
+    private int cellFor(long key) {
+        if (lastCell >= 0 && key >= bucketKeys[lastCell] && key < bucketEndKeys[lastCell]) {
+            return lastCell;
+        }
+        long startKey = resolution.bucketStartKey(key);
+        int index = Arrays.binarySearch(bucketKeys, 0, size, startKey);
+        if (index < 0) {
+            index = -index - 1;
+            insertCell(index, startKey, resolution.nextBucketKey(startKey));
+        }
+        lastCell = index;
+        return index;
+    }
+
+    private void insertCell(int index, long startKey, long endKey) {
+        if (size == bucketKeys.length) {
+            int capacity = bucketKeys.length * 2;
+            bucketKeys = Arrays.copyOf(bucketKeys, capacity);
+            bucketEndKeys = Arrays.copyOf(bucketEndKeys, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+            closeAbsolutes = Arrays.copyOf(closeAbsolutes, capacity);
+            closeKeys = Arrays.copyOf(closeKeys, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            valueCounts = Arrays.copyOf(valueCounts, capacity);
+            stale = Arrays.copyOf(stale, capacity);
+            sharedSize = 0;
+        }
+        unshare(index);
+        int tail = size - index;
+        if (tail > 0) {
+            System.arraycopy(bucketKeys, index, bucketKeys, index + 1, tail);
+            System.arraycopy(bucketEndKeys, index, bucketEndKeys, index + 1, tail);
+            System.arraycopy(sums, index, sums, index + 1, tail);
+            System.arraycopy(mins, index, mins, index + 1, tail);
+            System.arraycopy(maxs, index, maxs, index + 1, tail);
+            System.arraycopy(closeAbsolutes, index, closeAbsolutes, index + 1, tail);
+            System.arraycopy(closeKeys, index, closeKeys, index + 1, tail);
+            System.arraycopy(counts, index, counts, index + 1, tail);
+            System.arraycopy(valueCounts, index, valueCounts, index + 1, tail);
+            System.arraycopy(stale, index, stale, index + 1, tail);
+        }
+        bucketKeys[index] = startKey;
+        bucketEndKeys[index] = endKey;
+        resetCell(index);
+        size++;
+    }
+
+    // Copies all cells before a write at cell, if a frozen view may still read that position
+    private void unshare(int cell) {
+        if (cell >= sharedSize) {
+            return;
+        }
+        bucketKeys = bucketKeys.clone();
+        bucketEndKeys = bucketEndKeys.clone();
+        sums = sums.clone();
+        mins = mins.clone();
+        maxs = maxs.clone();
+        closeAbsolutes = closeAbsolutes.clone();
+        closeKeys = closeKeys.clone();
+        counts = counts.clone();
+        valueCounts = valueCounts.clone();
+        stale = stale.clone();
+        sharedSize = 0;
+    }
+
+    private void resetCell(int index) {
+        sums[index] = 0.0;
+        mins[index] = Double.POSITIVE_INFINITY;
+        maxs[index] = Double.NEGATIVE_INFINITY;
+        closeAbsolutes[index] = Double.NaN;
+        closeKeys[index] = Long.MIN_VALUE;
+        counts[index] = 0;
+        valueCounts[index] = 0;
+        stale[index] = false;
+    }
+
+    private void refresh(int cell) {
+        if (!stale[cell] || frozen) {
+            return;
+        }
+        unshare(cell);
+        resetCell(cell);
+        staleCount--;
+        int end = series.lowerBound(bucketEndKeys[cell]);
+        for (int i = series.lowerBound(bucketKeys[cell]); i < end; i++) {
+            add(series.keyAt(i), series.relativeAt(i), series.absoluteAt(i), false);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the index of the first cell whose bucket starts at or after {@code key}
+     */
+    public int lowerBound(long key) {
+        int index = Arrays.binarySearch(bucketKeys, 0, size, key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    public long bucketKeyAt(int cell) {
+        return bucketKeys[cell];
+    }
+
+    public double sumAt(int cell) {
+        refresh(cell);
+        return sums[cell];
+    }
+
+    /**
+     * @return the smallest relative value of the cell, NaN if the cell has no relative values
+     */
+    public double minAt(int cell) {
+        refresh(cell);
+        return valueCounts[cell] == 0 ? Double.NaN : mins[cell];
+    }
+
+    public double maxAt(int cell) {
+        refresh(cell);
+        return valueCounts[cell] == 0 ? Double.NaN : maxs[cell];
+    }
+
+    /**
+     * @return the absolute value with the latest timestamp in the cell, NaN if there is none
+     */
+    public double closeAbsoluteAt(int cell) {
+        refresh(cell);
+        return closeAbsolutes[cell];
+    }
+
+    public int countAt(int cell) {
+        refresh(cell);
+        return counts[cell];
+    }
+
+    public int valueCountAt(int cell) {
+        refresh(cell);
+        return valueCounts[cell];
+    }
+}
@@ -0,0 +1,257 @@
+package ch.bzz.backend.model;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Columnar storage for the measurements of one meter. Timestamps are kept sorted in a {@code long[]}
+ * with the relative and absolute values in parallel {@code double[]} columns, which needs about 24 bytes
+ * per interval instead of a TreeMap entry with a LocalDateTime and a Measurement holding two boxed Doubles.
+ * Missing values ({@code null} in {@link Measurement}) are stored as NaN.
+ * <p>
+ * A series is written by one thread at a time. {@link #freeze()} returns a read-only view that shares
+ * the arrays with the series; appends within the capacity only write behind the view's size and keep
+ * sharing them, any write into the shared range (overwrite or out of order insert) copies the arrays
+ * first. Views can therefore be read by any number of threads without locking.
+ */
+public class TimeSeries {
+
+    /* Kapazität wächst in Blöcken dieser Grösse (4096 Viertelstunden = ca. 43 Tage) */
+    static final int CHUNK_SIZE = 4096;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private long[] timestamps = new long[0];
+    private double[] relatives = new double[0];
+    private double[] absolutes = new double[0];
+    private int size;
+
+    // [0, sharedSize) may be visible through a frozen view and must not be written in place
+    private int sharedSize;
+    private final boolean frozen;
+
+    public TimeSeries() {
+        this.frozen = false;
+    }
+
+    private TimeSeries(long[] timestamps, double[] relatives, double[] absolutes, int size) {
+        this.timestamps = timestamps;
+        this.relatives = relatives;
+        this.absolutes = absolutes;
+        this.size = size;
+        this.frozen = true;
+    }
+
+    /**
+     * Converts a timestamp into the sort key used by this series (nanoseconds since 1970-01-01T00:00,
+     * which covers the years 1678 to 2262).
+     */
+    public static long toKey(LocalDateTime timestamp) {
+        return Math.addExact(Math.multiplyExact(timestamp.toEpochSecond(ZoneOffset.UTC), NANOS_PER_SECOND), timestamp.getNano());
+    }
+
+    public static LocalDateTime fromKey(long key) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(key, NANOS_PER_SECOND), (int) Math.floorMod(key, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+
+    static double toPrimitive(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    static Double toBoxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    /**
+     * Inserts or replaces the values for the given key. Appending in time order (the usual case when
+     * merging SDAT files) is O(1) amortised, out of order inserts shift the tail of the arrays.
+     *
+     * @return the index the values were written to
+     */
+    public int put(long key, double relative, double absolute) {
+        checkWritable();
+        int index;
+        if (size == 0 || key > timestamps[size - 1]) {
+            index = size;
+        } else {
+            index = Arrays.binarySearch(timestamps, 0, size, key);
+            if (index >= 0) {
+                unshare(index);
+                relatives[index] = relative;
+                absolutes[index] = absolute;
+                return index;
+            }
+            index = -index - 1;
+            unshare(index);
+        }
+
+        ensureCapacity(size + 1);
+        if (index < size) {
+            System.arraycopy(timestamps, index, timestamps, index + 1, size - index);
+            System.arraycopy(relatives, index, relatives, index + 1, size - index);
+            System.arraycopy(absolutes, index, absolutes, index + 1, size - index);
+        }
+        timestamps[index] = key;
+        relatives[index] = relative;
+        absolutes[index] = absolute;
+        size++;
+        return index;
+    }
+
+    /**
+     * Appends {@code count} entries in one copy if the keys are strictly increasing and all later
+     * than the last stored key. Otherwise nothing is changed.
+     *
+     * @return true if the entries were appended
+     */
+    public boolean appendAll(long[] keys, double[] relatives, double[] absolutes, int count) {
+        checkWritable();
+        if (count == 0) {
+            return true;
+        }
+        if (size > 0 && keys[0] <= timestamps[size - 1]) {
+            return false;
+        }
+        for (int i = 1; i < count; i++) {
+            if (keys[i] <= keys[i - 1]) {
+                return false;
+            }
+        }
+        ensureCapacity(size + count);
+        System.arraycopy(keys, 0, timestamps, size, count);
+        System.arraycopy(relatives, 0, this.relatives, size, count);
+        System.arraycopy(absolutes, 0, this.absolutes, size, count);
+        size += count;
+        return true;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= timestamps.length) {
+            return;
+        }
+        // Grow by at least a quarter to keep appends amortised O(1), rounded up to whole chunks
+        int target = Math.max(required, timestamps.length + (timestamps.length >> 2));
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, ((long) target + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        relatives = Arrays.copyOf(relatives, capacity);
+        absolutes = Arrays.copyOf(absolutes, capacity);
+        sharedSize = 0;
+    }
+
+    // Copies the columns before a write at index, if a frozen view may still read that position
+    private void unshare(int index) {
+        if (index >= sharedSize) {
+            return;
+        }
+        timestamps = timestamps.clone();
+        relatives = relatives.clone();
+        absolutes = absolutes.clone();
+        sharedSize = 0;
+    }
+
+    /**
+     * Returns a read-only view of the current content. Later writes to this series are not visible
+     * through the view.
+     */
+    public TimeSeries freeze() {
+        if (frozen) {
+            return this;
+        }
+        sharedSize = size;
+        return new TimeSeries(timestamps, relatives, absolutes, size);
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkWritable() {
+        if (frozen) {
+            throw new IllegalStateException("TimeSeries view is read-only");
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long keyAt(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public double relativeAt(int index) {
+        checkIndex(index);
+        return relatives[index];
+    }
+
+    public double absoluteAt(int index) {
+        checkIndex(index);
+        return absolutes[index];
+    }
+
+    public Measurement measurementAt(int index) {
+        checkIndex(index);
+        return new Measurement(fromKey(timestamps[index]), toBoxed(relatives[index]), toBoxed(absolutes[index]));
+    }
+
+    /**
+     * @return the index of the given key, or -1 if there is no entry for it
+     */
+    public int indexOf(long key) {
+        int index = Arrays.binarySearch(timestamps, 0, size, key);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @return the index of the first entry with a key {@code >= key} (may be {@link #size()})
+     */
+    public int lowerBound(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first entry with a key {@code > key} (may be {@link #size()})
+     */
+    public int upperBound(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Approximate heap usage of the columns in bytes (allocated capacity, not only the used part).
+     */
+    public long estimateMemoryBytes() {
+        return (long) timestamps.length * Long.BYTES + (long) relatives.length * Double.BYTES + (long) absolutes.length * Double.BYTES;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+    }
+}
@@ -1,46 +1,151 @@
 package ch.bzz.backend.parser;
 
-import org.w3c.dom.*;
+import ch.bzz.backend.io.CloseShieldInputStream;
+import ch.bzz.backend.io.FileInputs;
+import ch.bzz.backend.model.RegisterReading;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class ESLParser {
 
+    private static final Logger logger = LoggerFactory.getLogger(ESLParser.class);
+
+    private static final ZoneId ESL_ZONE = ZoneId.of("Europe/Zurich");
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
     public static Map<String, Double> parseESLFile(File xmlFile) {
-        Map<String, Double> obisValues = new HashMap<>();
+        return toValueMap(parseESLReadingsFile(xmlFile));
+    }
+
+    /**
+     * Reads the {@code obis}/{@code value} attributes of all ValueRow elements in one streaming pass.
+     * If an OBIS code occurs more than once, the last value in document order wins. The stream is
+     * not closed by this method.
+     */
+    public static Map<String, Double> parseESLStream(InputStream in, String sourceName) {
+        return toValueMap(parseESLReadings(in, sourceName));
+    }
+
+    public static List<RegisterReading> parseESLReadingsFile(File xmlFile) {
+        return parseESLReadingsFile(xmlFile, new ParseIssues());
+    }
+
+    public static List<RegisterReading> parseESLReadingsFile(File xmlFile, ParseIssues issues) {
+        try (InputStream in = FileInputs.open(xmlFile.toPath())) {
+            return parseESLReadings(in, xmlFile.getName(), issues);
+        } catch (IOException e) {
+            logger.error("Error reading ESL file {}: {}", xmlFile.getName(), e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Reads all ValueRow elements in document order together with the factory number of the Meter
+     * and the end of the TimePeriod they belong to. ESL files use Swiss local time, the timestamps
+     * are converted to UTC like the SDAT intervals. The stream is not closed by this method.
+     */
+    public static List<RegisterReading> parseESLReadings(InputStream in, String sourceName) {
+        return parseESLReadings(in, sourceName, new ParseIssues());
+    }
+
+    /**
+     * Like {@link #parseESLReadings(InputStream, String)}, malformed values are counted in {@code issues}
+     * and logged as one summary for the whole file.
+     */
+    public static List<RegisterReading> parseESLReadings(InputStream in, String sourceName, ParseIssues issues) {
+        List<RegisterReading> readings = new ArrayList<>();
+        XMLStreamReader reader = null;
         try {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(xmlFile);
-            doc.getDocumentElement().normalize();
-
-            NodeList valueRows = doc.getElementsByTagName("ValueRow");
-
-            for (int i = 0; i < valueRows.getLength(); i++) {
-                Node node = valueRows.item(i);
-                if (node.getNodeType() == Node.ELEMENT_NODE) {
-                    Element element = (Element) node;
-                    String obis = element.getAttribute("obis");
-                    String valueStr = element.getAttribute("value");
-                    if (!obis.isEmpty() && !valueStr.isEmpty()) {
-                        try {
-                            double value = Double.parseDouble(valueStr);
-                            obisValues.put(obis, value);
-                        } catch (NumberFormatException e) {
-                            System.err.println("Invalid numeric value: " + valueStr);
-                        }
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(new CloseShieldInputStream(in));
+            String meter = null;
+            LocalDateTime periodEnd = null;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if ("Meter".equals(reader.getLocalName())) {
+                    String factoryNo = reader.getAttributeValue(null, "factoryNo");
+                    meter = factoryNo == null || factoryNo.isBlank() ? null : factoryNo.trim();
+                    periodEnd = null;
+                    continue;
+                }
+                if ("TimePeriod".equals(reader.getLocalName())) {
+                    periodEnd = parsePeriodEnd(reader.getAttributeValue(null, "end"), issues);
+                    continue;
+                }
+                if (!"ValueRow".equals(reader.getLocalName())) {
+                    continue;
+                }
+                String obis = reader.getAttributeValue(null, "obis");
+                String valueStr = reader.getAttributeValue(null, "value");
+                if (obis != null && !obis.isEmpty() && valueStr != null && !valueStr.isEmpty()) {
+                    try {
+                        double value = Double.parseDouble(valueStr);
+                        readings.add(new RegisterReading(meter, obis, periodEnd, value));
+                    } catch (NumberFormatException e) {
+                        issues.add(ParseIssues.INVALID_VALUE, obis + " '" + valueStr + "'");
                     }
                 }
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
+        } catch (XMLStreamException e) {
+            logger.error("Error parsing ESL file {}: {}", sourceName, e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    logger.debug("ESLParser: Could not close stream reader for {}", sourceName, e);
+                }
+            }
         }
 
+        issues.log(logger, "ESLParser", sourceName);
+        return readings;
+    }
+
+    /**
+     * @return the value of every OBIS code, the last reading in the list wins
+     */
+    public static Map<String, Double> toValueMap(List<RegisterReading> readings) {
+        Map<String, Double> obisValues = new HashMap<>();
+        for (RegisterReading reading : readings) {
+            obisValues.put(reading.getObis(), reading.getValue());
+        }
         return obisValues;
     }
+
+    private static LocalDateTime parsePeriodEnd(String end, ParseIssues issues) {
+        if (end == null || end.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(end.trim()).atZone(ESL_ZONE).withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            issues.add(ParseIssues.INVALID_TIMESTAMP, "TimePeriod end '" + end + "'");
+            return null;
+        }
+    }
 }
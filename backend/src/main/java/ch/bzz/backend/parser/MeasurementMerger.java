@@ -5,20 +5,128 @@ import ch.bzz.backend.model.Measurement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class MeasurementMerger {
 
-    public static List<Measurement> mergeWithESL(List<Measurement> sdatValues, Map<String, Double> eslMap, String obis1, String obis2) {
-        double startValue = eslMap.getOrDefault(obis1, 0.0) + eslMap.getOrDefault(obis2, 0.0);
-        double total = startValue;
-        List<Measurement> result = new ArrayList<>();
+    /* Blockgrösse für die parallele Präfixsumme */
+    static final int BLOCK_SIZE = 4096;
+
+    // Below this many values the sequential loop is faster than splitting the work
+    static final int PARALLEL_THRESHOLD = 64 * BLOCK_SIZE;
 
-        for (Measurement m : sdatValues) {
-            total += m.getRelative();
-            result.add(new Measurement(m.getTimestamp(), m.getRelative(), total));
+    public static List<Measurement> mergeWithESL(List<Measurement> sdatValues, Map<String, Double> eslMap, String obis1, String obis2) {
+        int count = sdatValues.size();
+        double[] relatives = new double[count];
+        for (int i = 0; i < count; i++) {
+            Double relative = sdatValues.get(i).getRelative();
+            relatives[i] = relative != null ? relative : Double.NaN;
         }
+        double[] absolutes = new double[count];
+        accumulate(relatives, absolutes, 0, count, startValue(eslMap, obis1, obis2));
 
+        List<Measurement> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Measurement m = sdatValues.get(i);
+            result.add(new Measurement(m.getTimestamp(), m.getRelative(), absolutes[i]));
+        }
         return result;
     }
-}
 
+    /**
+     * @return the meter reading the relative values are added to, the sum of both ESL registers
+     */
+    public static double startValue(Map<String, Double> eslMap, String obis1, String obis2) {
+        return eslMap.getOrDefault(obis1, 0.0) + eslMap.getOrDefault(obis2, 0.0);
+    }
+
+    /**
+     * Writes the running total of {@code relatives[from..to)} plus {@code start} to the same range of
+     * {@code absolutes} (which may be the same array). NaN relatives (missing values) do not change
+     * the total. Large ranges are split into blocks of {@link #BLOCK_SIZE}: the block sums are computed
+     * in parallel, turned into per-block offsets, and every block is then accumulated from its offset
+     * in parallel. The result can therefore differ from a strictly sequential sum in the last digits.
+     */
+    public static void accumulate(double[] relatives, double[] absolutes, int from, int to, double start) {
+        if (to - from < PARALLEL_THRESHOLD) {
+            accumulateBlock(relatives, absolutes, from, to, start);
+            return;
+        }
+        int blocks = (to - from + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        double[] offsets = new double[blocks];
+        ForkJoinPool.commonPool().invoke(new BlockTask(relatives, absolutes, from, to, 0, blocks, offsets, true));
+        double total = start;
+        for (int block = 0; block < blocks; block++) {
+            double sum = offsets[block];
+            offsets[block] = total;
+            total += sum;
+        }
+        ForkJoinPool.commonPool().invoke(new BlockTask(relatives, absolutes, from, to, 0, blocks, offsets, false));
+    }
+
+    // The kernel: one pass, no allocation, the running total stays in a register
+    private static void accumulateBlock(double[] relatives, double[] absolutes, int from, int to, double start) {
+        double total = start;
+        for (int i = from; i < to; i++) {
+            double relative = relatives[i];
+            if (relative == relative) { // not NaN
+                total += relative;
+            }
+            absolutes[i] = total;
+        }
+    }
+
+    private static double sumBlock(double[] relatives, int from, int to) {
+        double sum = 0.0;
+        for (int i = from; i < to; i++) {
+            double relative = relatives[i];
+            if (relative == relative) {
+                sum += relative;
+            }
+        }
+        return sum;
+    }
+
+    /* Bearbeitet die Blöcke [firstBlock, lastBlock) im ersten (Summen) oder zweiten Durchgang */
+    private static final class BlockTask extends RecursiveAction {
+        private final double[] relatives;
+        private final double[] absolutes;
+        private final int from;
+        private final int to;
+        private final int firstBlock;
+        private final int lastBlock;
+        private final double[] offsets;
+        private final boolean sumPass;
+
+        BlockTask(double[] relatives, double[] absolutes, int from, int to, int firstBlock, int lastBlock, double[] offsets, boolean sumPass) {
+            this.relatives = relatives;
+            this.absolutes = absolutes;
+            this.from = from;
+            this.to = to;
+            this.firstBlock = firstBlock;
+            this.lastBlock = lastBlock;
+            this.offsets = offsets;
+            this.sumPass = sumPass;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastBlock - firstBlock > 8) {
+                int middle = (firstBlock + lastBlock) >>> 1;
+                invokeAll(new BlockTask(relatives, absolutes, from, to, firstBlock, middle, offsets, sumPass),
+                        new BlockTask(relatives, absolutes, from, to, middle, lastBlock, offsets, sumPass));
+                return;
+            }
+            for (int block = firstBlock; block < lastBlock; block++) {
+                int blockFrom = from + block * BLOCK_SIZE;
+                int blockTo = Math.min(to, blockFrom + BLOCK_SIZE);
+                if (sumPass) {
+                    offsets[block] = sumBlock(relatives, blockFrom, blockTo);
+                } else {
+                    accumulateBlock(relatives, absolutes, blockFrom, blockTo, offsets[block]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ch.bzz.backend.parser;
+
+import org.slf4j.Logger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the malformed values of one file instead of logging every one of them. A file with a
+ * broken export can contain thousands of invalid observations; they are counted per kind and
+ * reported as a single warning (and as metrics by the caller) once the file is parsed. The
+ * warnings themselves are rate limited across all files, suppressed ones are only counted.
+ */
+public class ParseIssues {
+
+    public static final String INVALID_VALUE = "invalid-value";
+    public static final String INVALID_SEQUENCE = "invalid-sequence";
+    public static final String INVALID_TIMESTAMP = "invalid-timestamp";
+    public static final String INVALID_RESOLUTION = "invalid-resolution";
+    public static final String MISSING_VALUE = "missing-value";
+    public static final String MISSING_SEQUENCE = "missing-sequence";
+    public static final String MISPLACED_ELEMENT = "misplaced-element";
+
+    private static final long LOG_INTERVAL_NANOS = 10_000_000_000L;
+    private static final AtomicLong nextLogNanos = new AtomicLong(System.nanoTime());
+    private static final AtomicInteger suppressedFiles = new AtomicInteger();
+
+    private final Map<String, Integer> counts = new LinkedHashMap<>();
+    private final Map<String, String> firstDetails = new HashMap<>();
+
+    /**
+     * Counts one problem of the given kind. Only the detail of the first problem of each kind is kept.
+     */
+    public void add(String kind, String detail) {
+        counts.merge(kind, 1, Integer::sum);
+        firstDetails.putIfAbsent(kind, detail);
+    }
+
+    /**
+     * Adds the problems of a part of the same file, e.g. a chunk parsed separately. The details of
+     * this instance take precedence, so parts should be added in file order.
+     */
+    public void addAll(ParseIssues other) {
+        other.counts.forEach((kind, count) -> counts.merge(kind, count, Integer::sum));
+        other.firstDetails.forEach(firstDetails::putIfAbsent);
+    }
+
+    public boolean isEmpty() {
+        return counts.isEmpty();
+    }
+
+    public int total() {
+        return counts.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public Map<String, Integer> getCounts() {
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Logs one warning summarizing all problems of the file, e.g.
+     * {@code 96 problems in a.xml: invalid-value=95 (first: observation 3 'n/a'), missing-sequence=1 (...)}.
+     * At most one such warning is written every ten seconds; the files in between are logged on debug
+     * level and mentioned in the next warning.
+     */
+    public void log(Logger logger, String parser, String sourceName) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        String summary = counts.entrySet().stream()
+                .map(e -> e.getKey() + "=" + e.getValue() + " (first: " + firstDetails.get(e.getKey()) + ")")
+                .collect(Collectors.joining(", "));
+        long now = System.nanoTime();
+        long next = nextLogNanos.get();
+        if (now - next < 0 || !nextLogNanos.compareAndSet(next, now + LOG_INTERVAL_NANOS)) {
+            suppressedFiles.incrementAndGet();
+            logger.debug("{}: {} problems in {}: {}", parser, total(), sourceName, summary);
+            return;
+        }
+        int suppressed = suppressedFiles.getAndSet(0);
+        if (suppressed > 0) {
+            logger.warn("{}: {} problems in {}: {} ({} more files with problems since the last warning)",
+                    parser, total(), sourceName, summary, suppressed);
+        } else {
+            logger.warn("{}: {} problems in {}: {}", parser, total(), sourceName, summary);
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package ch.bzz.backend.parser;
 
+import ch.bzz.backend.io.ByteBufferInputStream;
+import ch.bzz.backend.io.CloseShieldInputStream;
+import ch.bzz.backend.io.FileInputs;
 import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.TimeSeries;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -12,22 +16,573 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class SDATParser {
 
     private static final Logger logger = LoggerFactory.getLogger(SDATParser.class);
     private static final String STROM_NAMESPACE = "http://www.strom.ch";
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ISO_DATE_TIME;
+    static final int DEFAULT_RESOLUTION_MINUTES = 15;
 
+    /* Ab dieser Grösse wird eine Datei in Abschnitten parallel gelesen */
+    static final long CHUNKED_THRESHOLD = 4 * 1024 * 1024;
 
+    // Smaller chunks do not pay for the extra stream reader and list
+    static final int MIN_CHUNK_BYTES = 512 * 1024;
+
+    // Encodings in which the byte offsets of tags can be searched for directly
+    private static final Set<String> ASCII_COMPATIBLE = Set.of("UTF-8", "US-ASCII", "ISO-8859-1");
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Parses an SDAT file in a single streaming pass (StAX). Observations are turned into
+     * {@link Measurement}s as soon as they are read, so no DOM is built and memory use does
+     * not depend on the number of observations in the file.
+     * <p>
+     * Files of at least {@link #CHUNKED_THRESHOLD} bytes are split into ranges of observations
+     * that are parsed in parallel, see {@link #parseSDATFileChunked(File, int)}.
+     */
     public static ParsedSDAT parseSDATFile(File file) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        if (isLargeFile(file.length()) && parallelism > 1) {
+            int chunks = (int) Math.min(2L * parallelism, file.length() / MIN_CHUNK_BYTES);
+            ParsedSDAT parsed = parseSDATFileChunked(file, chunks);
+            if (parsed != null) {
+                return parsed;
+            }
+            logger.debug("SDATParser: {} cannot be split, parsing it in one pass.", file.getName());
+        }
+        try (InputStream in = FileInputs.open(file.toPath())) {
+            return parseSDATStream(in, file.getName());
+        } catch (IOException e) {
+            logger.error("Error parsing SDAT file {}: {}", file.getName(), e.getMessage(), e);
+            return new ParsedSDAT(null, new ArrayList<>());
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #parseSDATFile(File)} reading from an already opened stream.
+     * The stream is not closed by this method.
+     */
+    public static ParsedSDAT parseSDATStream(InputStream in, String sourceName) {
+        StreamState state = new StreamState();
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(new CloseShieldInputStream(in));
+            readEvents(reader, state, false);
+        } catch (XMLStreamException e) {
+            logger.error("Error parsing SDAT file {}: {}", sourceName, e.getMessage(), e);
+            state.issues.log(logger, "SDATParser", sourceName);
+            return new ParsedSDAT(state.documentId, new ArrayList<>(), state.issues);
+        } finally {
+            close(reader, sourceName);
+        }
+
+        if (state.intervalStart == null) {
+            logger.error("SDATParser: No valid Interval StartDateTime found. Cannot calculate timestamps for observations.");
+            state.issues.log(logger, "SDATParser", sourceName);
+            return new ParsedSDAT(state.documentId, new ArrayList<>(), state.issues);
+        }
+        state.flushPending();
+        state.issues.log(logger, "SDATParser", sourceName);
+        logger.info("SDATParser: Parsed {} observations from {}.", state.measurements.size(), sourceName);
+        return new ParsedSDAT(state.documentId, state.measurements, state.issues, state.resolutionMinutes);
+    }
+
+    /**
+     * Feeds the events of {@code reader} to {@code state}. With {@code headerOnly} reading stops at
+     * the start of the first Observation, which is not passed to the state, and the namespace
+     * declarations seen up to there are collected.
+     *
+     * @return the prefix of the first Observation if reading stopped there, otherwise {@code null}
+     */
+    private static String readEvents(XMLStreamReader reader, StreamState state, boolean headerOnly) throws XMLStreamException {
+        int depth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                state.leave(reader.getLocalName(), depth);
+                continue;
+            }
+            if (event == XMLStreamConstants.START_ELEMENT && headerOnly) {
+                for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                    String prefix = reader.getNamespacePrefix(i);
+                    state.namespaces.put(prefix == null ? "" : prefix, reader.getNamespaceURI(i));
+                }
+            }
+            if (event != XMLStreamConstants.START_ELEMENT || !STROM_NAMESPACE.equals(reader.getNamespaceURI())) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                }
+                continue;
+            }
+            if (headerOnly && "Observation".equals(reader.getLocalName())) {
+                String prefix = reader.getPrefix();
+                return prefix == null ? "" : prefix;
+            }
+            depth++;
+            // Leaf elements are read with getElementText(), which also consumes their END_ELEMENT
+            if (state.enter(reader, depth)) {
+                depth--;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether {@link #parseSDATFile(File)} parses a file of this size in parallel chunks
+     */
+    public static boolean isLargeFile(long size) {
+        return size >= CHUNKED_THRESHOLD;
+    }
+
+    /**
+     * Parses the observations of a large SDAT file in up to {@code chunks} parts in parallel. The
+     * header up to the first Observation is read once; its Interval start and Resolution give the
+     * timestamps of all observations. The bytes from the first to the last Observation are then
+     * split at Observation start tags, and every part is parsed on the common pool by its own
+     * stream reader, wrapped in an element that declares the namespaces of the document.
+     * <p>
+     * This only works for the usual layout of one Interval followed by a run of Observations.
+     * Anything else between the observations, a header without Interval or Resolution, or an
+     * encoding that is not ASCII compatible makes the method return {@code null}, and so does
+     * malformed XML within the observations; the caller then parses the file in one pass, which
+     * also reports the errors.
+     *
+     * @return the parsed file, or {@code null} if it has to be parsed in one pass
+     */
+    static ParsedSDAT parseSDATFileChunked(File file, int chunks) {
+        ByteBuffer document;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            document = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            logger.debug("SDATParser: Could not map {}: {}", file.getName(), e.getMessage());
+            return null;
+        }
+
+        StreamState header = new StreamState();
+        String prefix;
+        String encoding;
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteBufferInputStream(document.duplicate()));
+            prefix = readEvents(reader, header, true);
+            encoding = reader.getCharacterEncodingScheme() != null ? reader.getCharacterEncodingScheme() : reader.getEncoding();
+        } catch (XMLStreamException e) {
+            return null;
+        } finally {
+            close(reader, file.getName());
+        }
+        encoding = encoding == null ? "UTF-8" : encoding.toUpperCase();
+        if (prefix == null || header.intervalStart == null || !header.resolutionSeen || !header.documentIdSeen
+                || !ASCII_COMPATIBLE.contains(encoding)) {
+            return null;
+        }
+
+        String qualifiedName = prefix.isEmpty() ? "Observation" : prefix + ":Observation";
+        byte[] startTag = ("<" + qualifiedName).getBytes(StandardCharsets.US_ASCII);
+        byte[] endTag = ("</" + qualifiedName + ">").getBytes(StandardCharsets.US_ASCII);
+        int first = indexOfStartTag(document, startTag, 0, document.limit());
+        int end = lastIndexOf(document, endTag);
+        if (first < 0 || end < first) {
+            return null;
+        }
+        end += endTag.length;
+
+        int[] bounds = new int[Math.max(1, chunks) + 1];
+        int count = 0;
+        bounds[count++] = first;
+        for (int i = 1; i < bounds.length - 1; i++) {
+            int split = indexOfStartTag(document, startTag, first + (int) ((long) (end - first) * i / (bounds.length - 1)), end);
+            if (split > bounds[count - 1]) {
+                bounds[count++] = split;
+            }
+        }
+        bounds[count++] = end;
+
+        StringBuilder open = new StringBuilder("<?xml version=\"1.0\" encoding=\"").append(encoding).append("\"?><chunk");
+        header.namespaces.forEach((p, uri) -> open.append(p.isEmpty() ? " xmlns" : " xmlns:" + p).append("=\"")
+                .append(uri.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;")).append('"'));
+        byte[] openBytes = open.append('>').toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] closeBytes = "</chunk>".getBytes(StandardCharsets.US_ASCII);
+
+        List<Callable<StreamState>> tasks = new ArrayList<>(count - 1);
+        for (int i = 0; i + 1 < count; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            tasks.add(() -> parseChunk(document, from, to, header, openBytes, closeBytes));
+        }
+        List<StreamState> parts = new ArrayList<>(tasks.size());
+        try {
+            for (Future<StreamState> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                StreamState part = future.get();
+                if (part == null) {
+                    return null;
+                }
+                parts.add(part);
+            }
+        } catch (ExecutionException e) {
+            return null; // malformed XML, the single pass reports it
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        int total = 0;
+        for (StreamState part : parts) {
+            total += part.measurements.size();
+        }
+        List<Measurement> measurements = new ArrayList<>(total);
+        ParseIssues issues = header.issues;
+        for (StreamState part : parts) {
+            measurements.addAll(part.measurements);
+            issues.addAll(part.issues);
+        }
+        issues.log(logger, "SDATParser", file.getName());
+        logger.info("SDATParser: Parsed {} observations from {} in {} chunks.", measurements.size(), file.getName(), parts.size());
+        return new ParsedSDAT(header.documentId, measurements, issues, header.resolutionMinutes);
+    }
+
+    /**
+     * Parses the observations in {@code document[from, to)}.
+     *
+     * @return the state with the measurements, or {@code null} if the range contains anything but
+     * Observation elements
+     */
+    private static StreamState parseChunk(ByteBuffer document, int from, int to, StreamState header,
+                                          byte[] open, byte[] close) throws XMLStreamException {
+        StreamState state = header.forChunk(from);
+        InputStream in = new SequenceInputStream(Collections.enumeration(List.of(new ByteArrayInputStream(open),
+                new ByteBufferInputStream(document.slice(from, to - from)), new ByteArrayInputStream(close))));
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                    state.leave(reader.getLocalName(), depth);
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                depth++;
+                boolean strom = STROM_NAMESPACE.equals(reader.getNamespaceURI());
+                // Depth 1 is the wrapper, its children must all be observations
+                if (depth == 2 && !(strom && "Observation".equals(reader.getLocalName()))) {
+                    return null;
+                }
+                if (strom && state.enter(reader, depth)) {
+                    depth--;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return state;
+    }
+
+    // Start of the next "<prefix:Observation" in [from, to) that is a complete tag name, or -1
+    private static int indexOfStartTag(ByteBuffer buffer, byte[] tag, int from, int to) {
+        int last = to - tag.length - 1;
+        for (int i = from; i <= last; i++) {
+            if (buffer.get(i) != '<' || !matches(buffer, i, tag)) {
+                continue;
+            }
+            byte next = buffer.get(i + tag.length);
+            if (next == '>' || next == '/' || next == ' ' || next == '\t' || next == '\r' || next == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, byte[] tag) {
+        for (int i = buffer.limit() - tag.length; i >= 0; i--) {
+            if (buffer.get(i) == '<' && matches(buffer, i, tag)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int at, byte[] tag) {
+        for (int j = 1; j < tag.length; j++) {
+            if (buffer.get(at + j) != tag[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void close(XMLStreamReader reader, String sourceName) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                logger.debug("SDATParser: Could not close stream reader for {}", sourceName, e);
+            }
+        }
+    }
+
+    /**
+     * Mutable cursor state of the streaming parser. Tracks the depth of the few container elements
+     * whose direct children are of interest and collects the resulting measurements.
+     */
+    private static final class StreamState {
+        private String documentId;
+        private boolean documentIdSeen;
+        private LocalDateTime intervalStart;
+        private int resolutionMinutes = DEFAULT_RESOLUTION_MINUTES;
+        private boolean resolutionSeen;
+
+        private int instanceDocumentDepth = -1;
+        private int intervalDepth = -1;
+        private int resolutionDepth = -1;
+        private int observationDepth = -1;
+
+        private int observationCount;
+        private boolean volumeSeen;
+        private boolean sequenceSeen;
+        private boolean sequenceValid;
+        private double volume;
+        private int sequence;
+
+        private final List<Measurement> measurements = new ArrayList<>();
+        private final ParseIssues issues = new ParseIssues();
+        // Namespace declarations up to the first Observation, only collected when reading the header
+        private final Map<String, String> namespaces = new LinkedHashMap<>();
+        // Where observation numbers in issue details count from, empty for the whole document
+        private String location = "";
+        // Observations that appear before Interval/Resolution (not expected for valid SDAT files)
+        private int[] pendingSequences = new int[0];
+        private double[] pendingVolumes = new double[0];
+        private int pendingCount;
+
+        /**
+         * State for the observations of a chunk starting at byte {@code offset}, with the Interval
+         * start and Resolution of this header.
+         */
+        StreamState forChunk(int offset) {
+            StreamState chunk = new StreamState();
+            chunk.documentId = documentId;
+            chunk.documentIdSeen = true;
+            chunk.intervalStart = intervalStart;
+            chunk.resolutionMinutes = resolutionMinutes;
+            chunk.resolutionSeen = true;
+            chunk.location = " after byte " + offset;
+            return chunk;
+        }
+
+        /**
+         * Handles a START_ELEMENT in the strom namespace.
+         *
+         * @return true if the element was consumed completely (including its END_ELEMENT)
+         */
+        boolean enter(XMLStreamReader reader, int depth) throws XMLStreamException {
+            switch (reader.getLocalName()) {
+                case "InstanceDocument" -> instanceDocumentDepth = depth;
+                case "Interval" -> intervalDepth = depth;
+                case "Observation" -> {
+                    observationDepth = depth;
+                    observationCount++;
+                    volumeSeen = false;
+                    sequenceSeen = false;
+                    sequenceValid = false;
+                    volume = 0.0;
+                    sequence = 0;
+                }
+                case "DocumentID" -> {
+                    if (documentIdSeen) {
+                        return false;
+                    }
+                    documentIdSeen = true;
+                    String text = reader.getElementText().trim();
+                    if (instanceDocumentDepth >= 0 && depth == instanceDocumentDepth + 1) {
+                        documentId = text;
+                        logger.info("SDATParser: Found DocumentID: {}", documentId);
+                    } else {
+                        issues.add(ParseIssues.MISPLACED_ELEMENT, "DocumentID '" + text + "' not under rsm:InstanceDocument");
+                    }
+                    return true;
+                }
+                case "StartDateTime" -> {
+                    if (intervalStart != null || intervalDepth < 0 || depth != intervalDepth + 1) {
+                        return false;
+                    }
+                    String text = reader.getElementText();
+                    try {
+                        intervalStart = LocalDateTime.parse(text.trim(), DATE_TIME_FORMATTER);
+                    } catch (DateTimeParseException e) {
+                        issues.add(ParseIssues.INVALID_TIMESTAMP, "Interval StartDateTime '" + text.trim() + "'");
+                    }
+                    return true;
+                }
+                case "Resolution" -> {
+                    if (resolutionSeen) {
+                        return false;
+                    }
+                    if (resolutionDepth < 0) {
+                        resolutionDepth = depth;
+                        return false;
+                    }
+                    resolutionSeen = true;
+                    String text = reader.getElementText();
+                    try {
+                        int minutes = Integer.parseInt(text.trim());
+                        if (minutes < 1) {
+                            throw new NumberFormatException();
+                        }
+                        resolutionMinutes = minutes;
+                    } catch (NumberFormatException e) {
+                        issues.add(ParseIssues.INVALID_RESOLUTION, "'" + text.trim() + "', using 15 minutes");
+                    }
+                    return true;
+                }
+                case "Volume" -> {
+                    if (observationDepth < 0 || volumeSeen) {
+                        return false;
+                    }
+                    volumeSeen = true;
+                    String text = reader.getElementText();
+                    try {
+                        volume = Double.parseDouble(text.trim());
+                    } catch (NumberFormatException e) {
+                        issues.add(ParseIssues.INVALID_VALUE, "observation " + observationCount + location + " '" + text.trim() + "'");
+                    }
+                    return true;
+                }
+                case "Sequence" -> {
+                    if (observationDepth < 0 || sequenceSeen) {
+                        return false;
+                    }
+                    sequenceSeen = true;
+                    String text = reader.getElementText();
+                    try {
+                        sequence = Integer.parseInt(text.trim());
+                        sequenceValid = sequence >= 1;
+                    } catch (NumberFormatException e) {
+                        sequenceValid = false;
+                    }
+                    if (!sequenceValid) {
+                        issues.add(ParseIssues.INVALID_SEQUENCE, "observation " + observationCount + location + " '" + text.trim() + "'");
+                    }
+                    return true;
+                }
+                default -> {
+                    // not relevant
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Handles an END_ELEMENT; {@code depth} is the depth after leaving the element.
+         */
+        void leave(String localName, int depth) {
+            if (depth == observationDepth - 1 && "Observation".equals(localName)) {
+                observationDepth = -1;
+                if (!volumeSeen) {
+                    issues.add(ParseIssues.MISSING_VALUE, "observation " + observationCount + location);
+                }
+                if (!sequenceSeen) {
+                    issues.add(ParseIssues.MISSING_SEQUENCE, "observation " + observationCount + location);
+                }
+                // Without a valid position the interval of the value is unknown; it is left out, so
+                // the interval shows up as a gap instead of a value at the wrong time
+                if (sequenceValid) {
+                    addObservation(sequence, volume);
+                }
+            } else if (depth == intervalDepth - 1 && "Interval".equals(localName)) {
+                intervalDepth = -1;
+            } else if (depth == instanceDocumentDepth - 1 && "InstanceDocument".equals(localName)) {
+                instanceDocumentDepth = -1;
+            } else if (depth == resolutionDepth - 1 && "Resolution".equals(localName)) {
+                resolutionDepth = -1;
+                resolutionSeen = true;
+            }
+        }
+
+        private void addObservation(int sequence, double volume) {
+            if (intervalStart != null && resolutionSeen && pendingCount == 0) {
+                measurements.add(toMeasurement(sequence, volume));
+                return;
+            }
+            if (pendingCount == pendingSequences.length) {
+                int newLength = Math.max(16, pendingCount * 2);
+                pendingSequences = Arrays.copyOf(pendingSequences, newLength);
+                pendingVolumes = Arrays.copyOf(pendingVolumes, newLength);
+            }
+            pendingSequences[pendingCount] = sequence;
+            pendingVolumes[pendingCount] = volume;
+            pendingCount++;
+        }
+
+        void flushPending() {
+            // Once an observation had to be buffered, all following ones are buffered as well
+            for (int i = 0; i < pendingCount; i++) {
+                measurements.add(toMeasurement(pendingSequences[i], pendingVolumes[i]));
+            }
+            pendingCount = 0;
+        }
+
+        private Measurement toMeasurement(int sequence, double volume) {
+            // The Sequence number is 1-based, so subtract 1 for the offset
+            LocalDateTime timestamp = intervalStart.plusMinutes((long) (sequence - 1) * resolutionMinutes);
+            return new Measurement(timestamp, volume, null); // absolute will be calculated by merger
+        }
+    }
+
+
+    /**
+     * DOM based reference implementation. Loads the whole document into memory and is therefore
+     * only kept to verify the streaming parser against; use {@link #parseSDATFile(File)} instead.
+     */
+    static ParsedSDAT parseSDATFileDom(File file) {
         List<Measurement> measurements = new ArrayList<>();
         String documentId = null;
 
@@ -88,7 +643,11 @@ public class SDATParser {
                 NodeList resSubNodes = ((Element) resolutionNodes.item(0)).getElementsByTagNameNS(STROM_NAMESPACE, "Resolution");
                 if (resSubNodes.getLength() > 0) {
                     try {
-                        resolutionMinutes = Integer.parseInt(resSubNodes.item(0).getTextContent().trim());
+                        int minutes = Integer.parseInt(resSubNodes.item(0).getTextContent().trim());
+                        if (minutes < 1) {
+                            throw new NumberFormatException();
+                        }
+                        resolutionMinutes = minutes;
                     } catch (NumberFormatException e) {
                         logger.warn("SDATParser: Could not parse Resolution value. Defaulting to 15 minutes.", e);
                     }
@@ -127,6 +686,10 @@ public class SDATParser {
                     } else {
                         logger.warn("SDATParser: Sequence tag not found for observation {}", i + 1);
                     }
+                    // Same rule as the streaming parser: without a valid position the interval is unknown
+                    if (sequence < 1) {
+                        continue;
+                    }
 
                     LocalDateTime currentTimestamp = intervalStart.plusMinutes((long) (sequence - 1) * resolutionMinutes);
 
@@ -134,7 +697,7 @@ public class SDATParser {
                     measurements.add(new Measurement(currentTimestamp, relativeVolume, null)); // absolute will be calculated by merger
                 }
             }
-            return new ParsedSDAT(documentId, measurements);
+            return new ParsedSDAT(documentId, measurements, new ParseIssues(), resolutionMinutes);
 
         } catch (ParserConfigurationException | SAXException | IOException e) {
             logger.error("Error parsing SDAT file {}: {}", file.getName(), e.getMessage(), e);
@@ -142,22 +705,115 @@ public class SDATParser {
         }
     }
 
-    // Inner class for returning parsed data
+    /**
+     * Parse result of one SDAT file. The values are held in two primitive arrays, like the columns of
+     * {@link ch.bzz.backend.model.TimeSeries}, because the results of all ingested files are kept in
+     * memory; {@link #getValues()} is a view that creates the {@link Measurement}s on access.
+     */
     public static class ParsedSDAT {
-        private String documentId;
-        private List<Measurement> values;
+        private final String documentId;
+        private final long[] keys;        // see TimeSeries#toKey
+        private final double[] relatives; // NaN for missing values
+        private final int resolutionMinutes;
+        private final ParseIssues issues;
 
         public ParsedSDAT(String documentId, List<Measurement> values) {
+            this(documentId, values, new ParseIssues());
+        }
+
+        public ParsedSDAT(String documentId, List<Measurement> values, ParseIssues issues) {
+            this(documentId, values, issues, DEFAULT_RESOLUTION_MINUTES);
+        }
+
+        public ParsedSDAT(String documentId, List<Measurement> values, ParseIssues issues, int resolutionMinutes) {
+            this.documentId = documentId;
+            this.keys = new long[values.size()];
+            this.relatives = new double[values.size()];
+            for (int i = 0; i < keys.length; i++) {
+                Measurement m = values.get(i);
+                keys[i] = TimeSeries.toKey(m.getTimestamp());
+                relatives[i] = m.getRelative() != null ? m.getRelative() : Double.NaN;
+            }
+            this.resolutionMinutes = resolutionMinutes;
+            this.issues = issues;
+        }
+
+        public ParsedSDAT(String documentId, long[] keys, double[] relatives) {
+            this(documentId, keys, relatives, DEFAULT_RESOLUTION_MINUTES);
+        }
+
+        public ParsedSDAT(String documentId, long[] keys, double[] relatives, int resolutionMinutes) {
             this.documentId = documentId;
-            this.values = values;
+            this.keys = keys;
+            this.relatives = relatives;
+            this.resolutionMinutes = resolutionMinutes;
+            this.issues = new ParseIssues();
         }
 
         public String getDocumentId() {
             return documentId;
         }
 
+        /**
+         * @return the measurements in file order, without absolute values
+         */
         public List<Measurement> getValues() {
-            return values;
+            return new AbstractList<>() {
+                @Override
+                public Measurement get(int index) {
+                    double relative = relatives[index];
+                    return new Measurement(TimeSeries.fromKey(keys[index]), Double.isNaN(relative) ? null : relative, null);
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+
+        /**
+         * @return the timestamps of the measurements in file order; must not be modified
+         */
+        public long[] getKeys() {
+            return keys;
+        }
+
+        /**
+         * @return the relative values in file order, NaN for missing ones; must not be modified
+         */
+        public double[] getRelatives() {
+            return relatives;
+        }
+
+        /**
+         * @return the length of one interval as given by the Resolution of the file, 15 minutes if it
+         * had none
+         */
+        public int getResolutionMinutes() {
+            return resolutionMinutes;
+        }
+
+        /**
+         * @return the length of one interval in the unit of {@link TimeSeries#toKey} keys
+         */
+        public long getStep() {
+            return Duration.ofMinutes(resolutionMinutes).toNanos();
+        }
+
+        public int size() {
+            return keys.length;
+        }
+
+        public boolean isEmpty() {
+            return keys.length == 0;
+        }
+
+        /**
+         * @return the malformed values found while parsing, empty for results restored from the index
+         */
+        public ParseIssues getIssues() {
+            return issues;
         }
     }
-}
\ No newline at end of file
+}
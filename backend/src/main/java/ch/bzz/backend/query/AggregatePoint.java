@@ -0,0 +1,28 @@
+package ch.bzz.backend.query;
+
+import java.time.LocalDateTime;
+
+/* Aggregierter Wert mehrerer Zähler in einem Intervall */
+public class AggregatePoint {
+    private final LocalDateTime timestamp;
+    private final double value;
+    private final int meters; // number of meters with values in the bucket
+
+    public AggregatePoint(LocalDateTime timestamp, double value, int meters) {
+        this.timestamp = timestamp;
+        this.value = value;
+        this.meters = meters;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public int getMeters() {
+        return meters;
+    }
+}
@@ -0,0 +1,56 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.Resolution;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/* Antwort des Aggregate-Endpoints für eine Gruppe von Zählern */
+public class AggregateResponse {
+    private final MeterAggregator.Operation operation;
+    private final List<String> sensorIds;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final Resolution resolution;
+    private final List<AggregatePoint> points;
+    private final AggregatePoint peak; // bucket with the highest value, null without points
+
+    public AggregateResponse(MeterAggregator.Operation operation, List<String> sensorIds, LocalDateTime from,
+                             LocalDateTime to, Resolution resolution, List<AggregatePoint> points, AggregatePoint peak) {
+        this.operation = operation;
+        this.sensorIds = sensorIds;
+        this.from = from;
+        this.to = to;
+        this.resolution = resolution;
+        this.points = points;
+        this.peak = peak;
+    }
+
+    public String getOperation() {
+        return operation.getCode();
+    }
+
+    public List<String> getSensorIds() {
+        return sensorIds;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public String getResolution() {
+        return resolution.getCode();
+    }
+
+    public List<AggregatePoint> getPoints() {
+        return points;
+    }
+
+    public AggregatePoint getPeak() {
+        return peak;
+    }
+}
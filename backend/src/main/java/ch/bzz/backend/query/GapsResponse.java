@@ -0,0 +1,67 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.Coverage;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.TimeSeries;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/* Antwort des Gaps-Endpoints: fehlende Intervalle eines Zählers in einem Zeitraum */
+public class GapsResponse {
+    private final String sensorId;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final long missingIntervals;
+    private final List<SeriesGap> gaps;
+
+    public GapsResponse(String sensorId, LocalDateTime from, LocalDateTime to, long missingIntervals, List<SeriesGap> gaps) {
+        this.sensorId = sensorId;
+        this.from = from;
+        this.to = to;
+        this.missingIntervals = missingIntervals;
+        this.gaps = gaps;
+    }
+
+    /**
+     * Looks up the gaps in the meter's {@link Coverage}. Without {@code from}/{@code to} the range
+     * from the first to the end of the last measurement is used.
+     */
+    public static GapsResponse of(MeterData meter, LocalDateTime from, LocalDateTime to) {
+        Coverage coverage = meter.getCoverage();
+        if (coverage.runCount() == 0 && (from == null || to == null)) {
+            return new GapsResponse(meter.getSensorId(), from, to, 0, List.of());
+        }
+        long fromKey = from != null ? TimeSeries.toKey(from) : coverage.startAt(0);
+        long toKey = to != null ? TimeSeries.toKey(to) : coverage.endAt(coverage.runCount() - 1);
+        List<SeriesGap> gaps = new ArrayList<>();
+        long missing = 0;
+        for (Coverage.Gap gap : coverage.gaps(fromKey, toKey)) {
+            long intervals = gap.intervals(coverage.getStep());
+            gaps.add(new SeriesGap(TimeSeries.fromKey(gap.fromKey()), TimeSeries.fromKey(gap.toKey()), intervals));
+            missing += intervals;
+        }
+        return new GapsResponse(meter.getSensorId(), TimeSeries.fromKey(fromKey), TimeSeries.fromKey(toKey), missing, gaps);
+    }
+
+    public String getSensorId() {
+        return sensorId;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public long getMissingIntervals() {
+        return missingIntervals;
+    }
+
+    public List<SeriesGap> getGaps() {
+        return gaps;
+    }
+}
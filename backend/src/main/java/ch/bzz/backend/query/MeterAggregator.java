@@ -0,0 +1,279 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.mapping.SensorMapping;
+import ch.bzz.backend.mapping.SensorMappingRegistry;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.Resolution;
+import ch.bzz.backend.model.TimeSeries;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Aggregates the relative values of many meters on a common time grid: the buckets of one
+ * {@link Resolution} between the first and the last measurement of the group. Every meter is
+ * downsampled on its own (using its rollups), the meters are split among the workers of a
+ * {@link ForkJoinPool} and the partial grids are combined pairwise.
+ * <p>
+ * Results are cached per group and range. A cached result remembers the versions of its meters and
+ * of the sensor mapping and is only returned while none of them changed.
+ */
+public class MeterAggregator {
+
+    /* Art der Aggregation */
+    public enum Operation {
+        SUM("sum"),     // sum of all meters
+        NET("net"),     // consumption minus feed-in, the direction comes from the sensor mapping
+        PEAK("peak");   // highest value of a single meter
+
+        private final String code;
+
+        Operation(String code) {
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public static Operation parse(String value) {
+            for (Operation operation : values()) {
+                if (operation.code.equalsIgnoreCase(value)) {
+                    return operation;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final int METERS_PER_TASK = 4;
+    private static final int MAX_CACHED_RESULTS = 64;
+    private static final int MAX_BUCKETS = 100_000;
+
+    private final ForkJoinPool pool;
+    private final SensorMappingRegistry mappings; // null treats all meters as consumption
+    private final Map<CacheKey, CachedResult> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedResult> eldest) {
+            return size() > MAX_CACHED_RESULTS;
+        }
+    };
+
+    public MeterAggregator(ForkJoinPool pool, SensorMappingRegistry mappings) {
+        this.pool = pool;
+        this.mappings = mappings;
+    }
+
+    /**
+     * Aggregates the measurements of {@code meters} with {@code from <= timestamp < to}. Raw
+     * resolution is aggregated per 15 minutes, the interval of the SDAT files.
+     *
+     * @throws IllegalArgumentException if the range has more than 100'000 buckets
+     */
+    public AggregateResponse aggregate(List<MeterData> meters, Operation operation, LocalDateTime from,
+                                       LocalDateTime to, Resolution resolution) {
+        Resolution gridResolution = resolution == Resolution.RAW ? Resolution.MINUTES_15 : resolution;
+        List<String> sensorIds = meters.stream().map(MeterData::getSensorId).toList();
+        long mappingVersion = mappings != null ? mappings.getVersion() : 0;
+        CacheKey key = new CacheKey(operation, gridResolution, from, to, sensorIds, mappingVersion);
+        // Versions are read before the meters, a meter changing in between only makes the entry stale
+        long[] versions = new long[meters.size()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = meters.get(i).getVersion();
+        }
+        synchronized (cache) {
+            CachedResult cached = cache.get(key);
+            if (cached != null && Arrays.equals(cached.versions(), versions)) {
+                return cached.response();
+            }
+        }
+
+        AggregateResponse response = compute(meters, operation, from, to, gridResolution, sensorIds);
+        synchronized (cache) {
+            cache.put(key, new CachedResult(versions, response));
+        }
+        return response;
+    }
+
+    private AggregateResponse compute(List<MeterData> meters, Operation operation, LocalDateTime from,
+                                      LocalDateTime to, Resolution resolution, List<String> sensorIds) {
+        long[] range = range(meters, from, to);
+        if (range == null) {
+            return new AggregateResponse(operation, sensorIds, from, to, resolution, List.of(), null);
+        }
+        long[] grid = grid(range[0], range[1], resolution);
+        double[] signs = new double[meters.size()];
+        for (int i = 0; i < signs.length; i++) {
+            signs[i] = operation == Operation.NET && isFeedIn(meters.get(i)) ? -1.0 : 1.0;
+        }
+
+        Grid total = pool.invoke(new AggregateTask(meters, signs, operation, grid, resolution,
+                TimeSeries.fromKey(range[0]), TimeSeries.fromKey(range[1]), 0, meters.size()));
+
+        List<AggregatePoint> points = new ArrayList<>();
+        AggregatePoint peak = null;
+        for (int i = 0; i < grid.length; i++) {
+            if (total.meters[i] == 0) {
+                continue;
+            }
+            AggregatePoint point = new AggregatePoint(TimeSeries.fromKey(grid[i]), total.values[i], total.meters[i]);
+            points.add(point);
+            if (peak == null || point.getValue() > peak.getValue()) {
+                peak = point;
+            }
+        }
+        return new AggregateResponse(operation, sensorIds, TimeSeries.fromKey(range[0]), TimeSeries.fromKey(range[1]),
+                resolution, points, peak);
+    }
+
+    private boolean isFeedIn(MeterData meter) {
+        SensorMapping mapping = mappings != null ? mappings.find(meter.getSensorId()) : null;
+        return mapping != null && mapping.getDirection() == SensorMapping.Direction.FEED_IN;
+    }
+
+    /**
+     * @return the time between the first and the last measurement of the meters within the range,
+     * used to choose a resolution
+     */
+    public static Duration span(List<MeterData> meters, LocalDateTime from, LocalDateTime to) {
+        long[] range = range(meters, from, to);
+        return range == null ? Duration.ZERO : Duration.ofNanos(range[1] - range[0]);
+    }
+
+    // [first key, last key + 1) of all meters, limited to [from, to); null if there is no measurement
+    private static long[] range(List<MeterData> meters, LocalDateTime from, LocalDateTime to) {
+        long fromKey = from == null ? Long.MIN_VALUE : TimeSeries.toKey(from);
+        long toKey = to == null ? Long.MAX_VALUE : TimeSeries.toKey(to);
+        long first = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (MeterData meter : meters) {
+            TimeSeries series = meter.getSeries();
+            int start = series.lowerBound(fromKey);
+            int stop = series.lowerBound(toKey);
+            if (start < stop) {
+                first = Math.min(first, series.keyAt(start));
+                end = Math.max(end, series.keyAt(stop - 1) + 1);
+            }
+        }
+        return first < end ? new long[]{first, end} : null;
+    }
+
+    private static long[] grid(long fromKey, long toKey, Resolution resolution) {
+        long[] grid = new long[64];
+        int size = 0;
+        for (long bucket = resolution.bucketStartKey(fromKey); bucket < toKey; bucket = resolution.nextBucketKey(bucket)) {
+            if (size == MAX_BUCKETS) {
+                throw new IllegalArgumentException("More than " + MAX_BUCKETS + " buckets");
+            }
+            if (size == grid.length) {
+                grid = Arrays.copyOf(grid, size * 2);
+            }
+            grid[size++] = bucket;
+        }
+        return Arrays.copyOf(grid, size);
+    }
+
+    /* Teilergebnis: Wert und Anzahl Zähler pro Intervall des Rasters */
+    private static final class Grid {
+        final double[] values;
+        final int[] meters;
+
+        Grid(int size, Operation operation) {
+            values = new double[size];
+            meters = new int[size];
+            if (operation == Operation.PEAK) {
+                Arrays.fill(values, Double.NEGATIVE_INFINITY);
+            }
+        }
+
+        void add(int bucket, double value, Operation operation) {
+            values[bucket] = operation == Operation.PEAK ? Math.max(values[bucket], value) : values[bucket] + value;
+            meters[bucket]++;
+        }
+
+        Grid combine(Grid other, Operation operation) {
+            for (int i = 0; i < values.length; i++) {
+                if (other.meters[i] > 0) {
+                    values[i] = operation == Operation.PEAK ? Math.max(values[i], other.values[i]) : values[i] + other.values[i];
+                    meters[i] += other.meters[i];
+                }
+            }
+            return this;
+        }
+    }
+
+    /* Aggregiert die Zähler [start, end) und teilt grössere Gruppen auf */
+    private static final class AggregateTask extends RecursiveTask<Grid> {
+        private final List<MeterData> meters;
+        private final double[] signs;
+        private final Operation operation;
+        private final long[] grid;
+        private final Resolution resolution;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final int start;
+        private final int end;
+
+        AggregateTask(List<MeterData> meters, double[] signs, Operation operation, long[] grid, Resolution resolution,
+                      LocalDateTime from, LocalDateTime to, int start, int end) {
+            this.meters = meters;
+            this.signs = signs;
+            this.operation = operation;
+            this.grid = grid;
+            this.resolution = resolution;
+            this.from = from;
+            this.to = to;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Grid compute() {
+            if (end - start <= METERS_PER_TASK) {
+                Grid result = new Grid(grid.length, operation);
+                for (int i = start; i < end; i++) {
+                    addMeter(meters.get(i), signs[i], result);
+                }
+                return result;
+            }
+            int middle = (start + end) >>> 1;
+            AggregateTask left = new AggregateTask(meters, signs, operation, grid, resolution, from, to, start, middle);
+            left.fork();
+            Grid right = new AggregateTask(meters, signs, operation, grid, resolution, from, to, middle, end).compute();
+            return left.join().combine(right, operation);
+        }
+
+        // Both the points and the grid are sorted, so each point is placed with a forward scan
+        private void addMeter(MeterData meter, double sign, Grid result) {
+            int bucket = 0;
+            for (SeriesPoint point : SeriesDownsampler.downsample(meter, from, to, resolution)) {
+                if (point.getAvg() == null) {
+                    continue; // only missing values in this bucket
+                }
+                long key = TimeSeries.toKey(point.getTimestamp());
+                while (bucket < grid.length && grid[bucket] < key) {
+                    bucket++;
+                }
+                if (bucket < grid.length && grid[bucket] == key) {
+                    result.add(bucket, sign * point.getRelative(), operation);
+                }
+            }
+        }
+    }
+
+    /* Gruppe, Zeitraum und Auflösung eines Ergebnisses */
+    private record CacheKey(Operation operation, Resolution resolution, LocalDateTime from, LocalDateTime to,
+                            List<String> sensorIds, long mappingVersion) {
+    }
+
+    /* Ergebnis mit den Versionen der Zähler, aus denen es berechnet wurde */
+    private record CachedResult(long[] versions, AggregateResponse response) {
+    }
+}
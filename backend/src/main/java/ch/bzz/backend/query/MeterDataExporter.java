@@ -0,0 +1,276 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.TimeSeries;
+import com.fasterxml.jackson.core.JsonFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports meters as a ZIP archive with one CSV or JSON file per meter, written straight from the
+ * columnar {@link TimeSeries} storage.
+ * <p>
+ * The files of up to {@code parallelism} meters are formatted at the same time on virtual threads.
+ * Each of them hands its output to the thread writing the archive in chunks of 64 KiB through a
+ * small bounded queue, and the archive takes the meters in order. A formatter that runs ahead
+ * blocks until its meter is written, so memory use depends on the parallelism only, not on the
+ * number of meters or measurements.
+ */
+public class MeterDataExporter {
+
+    /* Dateiformat der exportierten Zähler */
+    public enum Format {
+        CSV("csv"),
+        JSON("json");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format parse(String value) {
+            for (Format format : values()) {
+                if (format.extension.equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNKS_PER_METER = 4;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final JsonFactory jsonFactory;
+    private final int parallelism;
+
+    public MeterDataExporter(JsonFactory jsonFactory, int parallelism) {
+        this.jsonFactory = jsonFactory;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Writes the measurements of the meters between {@code from} (inclusive) and {@code to}
+     * (exclusive) as a ZIP archive, one file per meter in the order of {@code meters}. The stream
+     * is not closed.
+     *
+     * @param from start of the export, {@code null} for the first measurement
+     * @param to   end of the export, {@code null} for the last measurement
+     */
+    public void writeZip(List<MeterData> meters, Format format, LocalDateTime from, LocalDateTime to,
+                         OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // Deflating runs on the writing thread only, the fastest level keeps up with the formatters
+        zip.setLevel(Deflater.BEST_SPEED);
+        List<ChunkPipe> pipes = new ArrayList<>(meters.size());
+        List<Future<?>> tasks = new ArrayList<>(meters.size());
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("export-", 0).factory())) {
+            try {
+                for (int i = 0; i < meters.size(); i++) {
+                    while (pipes.size() < meters.size() && pipes.size() < i + parallelism) {
+                        MeterData meter = meters.get(pipes.size());
+                        ChunkPipe pipe = new ChunkPipe();
+                        pipes.add(pipe);
+                        tasks.add(executor.submit(() -> format(meter, format, from, to, pipe)));
+                    }
+                    zip.putNextEntry(new ZipEntry(fileName(meters.get(i).getSensorId(), format)));
+                    ChunkPipe pipe = pipes.get(i);
+                    for (byte[] chunk = pipe.take(); chunk != ChunkPipe.END; chunk = pipe.take()) {
+                        zip.write(chunk);
+                    }
+                    zip.closeEntry();
+                    pipes.set(i, null);
+                }
+                zip.finish();
+            } catch (IOException | RuntimeException e) {
+                // e.g. the client went away, the formatters waiting for the archive are stopped
+                tasks.forEach(task -> task.cancel(true));
+                throw e;
+            }
+        }
+    }
+
+    private void format(MeterData meter, Format format, LocalDateTime from, LocalDateTime to, ChunkPipe pipe) {
+        try {
+            TimeSeries series = meter.getSeries();
+            int first = from != null ? series.lowerBound(TimeSeries.toKey(from)) : 0;
+            int end = to != null ? series.lowerBound(TimeSeries.toKey(to)) : series.size();
+            if (format == Format.CSV) {
+                writeCsv(series, first, Math.max(first, end), pipe);
+            } else {
+                MeterDataJsonWriter.writeMeter(meter.getSensorId(), series, first, Math.max(first, end), jsonFactory, pipe);
+            }
+            pipe.close();
+        } catch (Throwable t) {
+            pipe.fail(t);
+        }
+    }
+
+    /**
+     * Writes {@code timestamp,relative,absolute} lines for the measurements {@code from} (inclusive)
+     * to {@code to} (exclusive); missing values are left empty.
+     */
+    static void writeCsv(TimeSeries series, int from, int to, OutputStream out) throws IOException {
+        StringBuilder line = new StringBuilder(CHUNK_SIZE + 128);
+        line.append("timestamp,relative,absolute\n");
+        TimestampFormat timestamps = new TimestampFormat();
+        for (int i = from; i < to; i++) {
+            timestamps.append(series.keyAt(i), line);
+            line.append(',');
+            appendNullable(series.relativeAt(i), line);
+            line.append(',');
+            appendNullable(series.absoluteAt(i), line);
+            line.append('\n');
+            if (line.length() >= CHUNK_SIZE) {
+                out.write(line.toString().getBytes(StandardCharsets.US_ASCII));
+                line.setLength(0);
+            }
+        }
+        out.write(line.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void appendNullable(double value, StringBuilder line) {
+        if (!Double.isNaN(value)) {
+            line.append(value);
+        }
+    }
+
+    // Sensor ids come from the uploaded files, only a safe subset of characters is used in entry names
+    static String fileName(String sensorId, Format format) {
+        return sensorId.replaceAll("[^A-Za-z0-9._-]", "_") + "." + format.getExtension();
+    }
+
+    /* Formatiert Zeitstempel wie ISO_LOCAL_DATE_TIME, das Datum wird nur bei einem Tageswechsel neu formatiert */
+    private static final class TimestampFormat {
+        private long day = Long.MIN_VALUE;
+        private String date;
+
+        void append(long key, StringBuilder line) {
+            long seconds = Math.floorDiv(key, 1_000_000_000L);
+            if (Math.floorMod(key, 1_000_000_000L) != 0) {
+                TIMESTAMP_FORMAT.formatTo(TimeSeries.fromKey(key), line);
+                return;
+            }
+            long epochDay = Math.floorDiv(seconds, 86_400L);
+            if (epochDay != day) {
+                day = epochDay;
+                date = LocalDate.ofEpochDay(epochDay).toString();
+            }
+            int secondOfDay = (int) Math.floorMod(seconds, 86_400L);
+            line.append(date).append('T');
+            appendTwoDigits(secondOfDay / 3600, line);
+            line.append(':');
+            appendTwoDigits(secondOfDay / 60 % 60, line);
+            line.append(':');
+            appendTwoDigits(secondOfDay % 60, line);
+        }
+
+        private static void appendTwoDigits(int value, StringBuilder line) {
+            line.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+        }
+    }
+
+    /* Puffer zwischen dem Thread, der einen Zähler formatiert, und dem Thread, der das Archiv schreibt */
+    private static final class ChunkPipe extends OutputStream {
+        static final byte[] END = new byte[0];
+
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS_PER_METER);
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        private volatile Throwable failure;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    flushBuffer();
+                }
+                int n = Math.min(length, buffer.length - count);
+                System.arraycopy(bytes, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (count > 0) {
+                byte[] last = Arrays.copyOf(buffer, count);
+                count = 0;
+                put(last);
+            }
+            put(END);
+        }
+
+        void fail(Throwable t) {
+            failure = t;
+            try {
+                put(END);
+            } catch (InterruptedIOException e) {
+                // the archive was aborted, nobody waits for this meter anymore
+            }
+        }
+
+        byte[] take() throws IOException {
+            byte[] chunk;
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for export data");
+            }
+            if (chunk == END && failure != null) {
+                throw new IOException("Export failed: " + failure.getMessage(), failure);
+            }
+            return chunk;
+        }
+
+        private void flushBuffer() throws IOException {
+            byte[] full = buffer;
+            buffer = new byte[CHUNK_SIZE];
+            count = 0;
+            put(full);
+        }
+
+        private void put(byte[] chunk) throws InterruptedIOException {
+            try {
+                chunks.put(chunk);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export was cancelled");
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.MeterModel;
+import ch.bzz.backend.model.TimeSeries;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes meter data as JSON directly from the columnar {@link TimeSeries} storage with a streaming
+ * {@link JsonGenerator}. Neither Measurement objects nor a JSON tree are created, so output starts
+ * right away and memory use does not depend on the number of measurements.
+ */
+public class MeterDataJsonWriter {
+
+    // Same format Jackson uses for LocalDateTime, so clients see identical timestamps
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    /**
+     * Writes the model in the same shape as the serialized {@link MeterModel}:
+     * {@code {"allMeterData":[{"sensorId":...,"measurements":[...]}, ...]}}.
+     */
+    public static void writeModel(MeterModel model, JsonFactory factory, OutputStream out) throws IOException {
+        try (JsonGenerator generator = factory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("allMeterData");
+            for (MeterData meter : model.getAllMeterData()) {
+                writeMeter(meter, generator);
+                generator.flush();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes one JSON object per meter and line (NDJSON), each in the same shape as a serialized {@link MeterData}.
+     */
+    public static void writeNdjson(MeterModel model, JsonFactory factory, OutputStream out) throws IOException {
+        try (JsonGenerator generator = factory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.setRootValueSeparator(null);
+            for (MeterData meter : model.getAllMeterData()) {
+                writeMeter(meter, generator);
+                generator.writeRaw('\n');
+                generator.flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the measurements {@code from} (inclusive) to {@code to} (exclusive) of one series as a
+     * single object in the shape of a serialized {@link MeterData}. The stream is not closed.
+     */
+    public static void writeMeter(String sensorId, TimeSeries series, int from, int to, JsonFactory factory,
+                                  OutputStream out) throws IOException {
+        try (JsonGenerator generator = factory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            writeMeter(sensorId, series, from, to, generator);
+        }
+    }
+
+    private static void writeMeter(MeterData meter, JsonGenerator generator) throws IOException {
+        TimeSeries series = meter.getSeries();
+        writeMeter(meter.getSensorId(), series, 0, series.size(), generator);
+    }
+
+    private static void writeMeter(String sensorId, TimeSeries series, int from, int to, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("sensorId", sensorId);
+        generator.writeArrayFieldStart("measurements");
+        for (int i = from; i < to; i++) {
+            generator.writeStartObject();
+            generator.writeStringField("timestamp", TIMESTAMP_FORMAT.format(TimeSeries.fromKey(series.keyAt(i))));
+            writeNullableNumber(generator, "relative", series.relativeAt(i));
+            writeNullableNumber(generator, "absolute", series.absoluteAt(i));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static void writeNullableNumber(JsonGenerator generator, String field, double value) throws IOException {
+        if (Double.isNaN(value)) {
+            generator.writeNullField(field);
+        } else {
+            generator.writeNumberField(field, value);
+        }
+    }
+}
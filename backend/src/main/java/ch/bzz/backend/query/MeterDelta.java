@@ -0,0 +1,50 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.Measurement;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/* Änderungen an einem Zähler seit dem letzten Event */
+public class MeterDelta {
+    private final String sensorId;
+    private final long version;
+    private final List<Measurement> measurements; // new or changed measurements
+    private final List<LocalDateTime> removed;
+    private final String resolution;
+    private final List<SeriesPoint> rollups;      // buckets of the resolution that contain a change
+
+    public MeterDelta(String sensorId, long version, List<Measurement> measurements, List<LocalDateTime> removed,
+                      String resolution, List<SeriesPoint> rollups) {
+        this.sensorId = sensorId;
+        this.version = version;
+        this.measurements = measurements;
+        this.removed = removed;
+        this.resolution = resolution;
+        this.rollups = rollups;
+    }
+
+    public String getSensorId() {
+        return sensorId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Measurement> getMeasurements() {
+        return measurements;
+    }
+
+    public List<LocalDateTime> getRemoved() {
+        return removed;
+    }
+
+    public String getResolution() {
+        return resolution;
+    }
+
+    public List<SeriesPoint> getRollups() {
+        return rollups;
+    }
+}
@@ -0,0 +1,46 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.TimeSeries;
+
+import java.time.LocalDateTime;
+
+/* Übersicht über einen Zähler ohne Messwerte */
+public class MeterSummary {
+    private final String sensorId;
+    private final int count;
+    private final LocalDateTime first;
+    private final LocalDateTime last;
+
+    public MeterSummary(String sensorId, int count, LocalDateTime first, LocalDateTime last) {
+        this.sensorId = sensorId;
+        this.count = count;
+        this.first = first;
+        this.last = last;
+    }
+
+    public static MeterSummary of(MeterData meter) {
+        TimeSeries series = meter.getSeries();
+        if (series.isEmpty()) {
+            return new MeterSummary(meter.getSensorId(), 0, null, null);
+        }
+        return new MeterSummary(meter.getSensorId(), series.size(),
+                TimeSeries.fromKey(series.keyAt(0)), TimeSeries.fromKey(series.keyAt(series.size() - 1)));
+    }
+
+    public String getSensorId() {
+        return sensorId;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public LocalDateTime getFirst() {
+        return first;
+    }
+
+    public LocalDateTime getLast() {
+        return last;
+    }
+}
@@ -0,0 +1,90 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.TimeSeries;
+
+import java.util.Arrays;
+
+/**
+ * Difference between two states of a {@link TimeSeries}: the positions in the new state whose
+ * interval is new or has other values, and the keys that no longer exist. Both states are walked
+ * once in key order.
+ */
+public class SeriesDiff {
+
+    private final int[] changed;   // indices into the current series
+    private final long[] removed;  // keys of the previous series
+
+    private SeriesDiff(int[] changed, long[] removed) {
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    /**
+     * @param previous the earlier state, {@code null} if the series did not exist
+     */
+    public static SeriesDiff between(TimeSeries previous, TimeSeries current) {
+        int[] changed = new int[16];
+        int changedCount = 0;
+        long[] removed = new long[4];
+        int removedCount = 0;
+        int i = 0;
+        int j = 0;
+        int previousSize = previous == null ? 0 : previous.size();
+        while (j < current.size()) {
+            long key = current.keyAt(j);
+            while (i < previousSize && previous.keyAt(i) < key) {
+                if (removedCount == removed.length) {
+                    removed = Arrays.copyOf(removed, removedCount * 2);
+                }
+                removed[removedCount++] = previous.keyAt(i++);
+            }
+            boolean same = i < previousSize && previous.keyAt(i) == key
+                    && sameValue(previous.relativeAt(i), current.relativeAt(j))
+                    && sameValue(previous.absoluteAt(i), current.absoluteAt(j));
+            if (i < previousSize && previous.keyAt(i) == key) {
+                i++;
+            }
+            if (!same) {
+                if (changedCount == changed.length) {
+                    changed = Arrays.copyOf(changed, changedCount * 2);
+                }
+                changed[changedCount++] = j;
+            }
+            j++;
+        }
+        while (i < previousSize) {
+            if (removedCount == removed.length) {
+                removed = Arrays.copyOf(removed, removedCount * 2);
+            }
+            removed[removedCount++] = previous.keyAt(i++);
+        }
+        return new SeriesDiff(Arrays.copyOf(changed, changedCount), Arrays.copyOf(removed, removedCount));
+    }
+
+    // NaN (missing) equals NaN
+    private static boolean sameValue(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    public boolean isEmpty() {
+        return changed.length == 0 && removed.length == 0;
+    }
+
+    /**
+     * @return the indices of new or changed intervals in the current series, ascending
+     */
+    public int[] getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return the keys of intervals that only exist in the previous series, ascending
+     */
+    public long[] getRemoved() {
+        return removed;
+    }
+
+    public int size() {
+        return changed.length + removed.length;
+    }
+}
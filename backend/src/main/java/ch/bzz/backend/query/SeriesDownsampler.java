@@ -0,0 +1,160 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.Coverage;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.Resolution;
+import ch.bzz.backend.model.Rollup;
+import ch.bzz.backend.model.TimeSeries;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class SeriesDownsampler {
+
+    /**
+     * Aggregates the measurements of {@code meter} with {@code from <= timestamp < to} into buckets of
+     * the given resolution. Buckets that lie completely inside the range are read from the meter's
+     * pre-computed {@link Rollup} if one exists for the resolution; only the partially covered buckets
+     * at the edges are aggregated from the raw series.
+     */
+    public static List<SeriesPoint> downsample(MeterData meter, LocalDateTime from, LocalDateTime to, Resolution resolution) {
+        // Series and rollup have to come from the same published state of the meter
+        Rollup rollup = meter.getRollup(resolution);
+        TimeSeries series = rollup != null ? rollup.getSeries() : meter.getSeries();
+        long fromKey = from == null ? Long.MIN_VALUE : TimeSeries.toKey(from);
+        long toKey = to == null ? Long.MAX_VALUE : TimeSeries.toKey(to);
+        List<SeriesPoint> points = new ArrayList<>();
+
+        if (rollup == null || series.isEmpty()) {
+            aggregateRaw(series, fromKey, toKey, resolution, points);
+            return points;
+        }
+
+        // [fromKey, alignedFrom) and [alignedTo, toKey) are partial buckets, everything in between comes from the rollup
+        long alignedFrom = fromKey;
+        if (from != null) {
+            LocalDateTime bucketStart = resolution.bucketStart(from);
+            alignedFrom = bucketStart.equals(from) ? fromKey : TimeSeries.toKey(resolution.nextBucket(bucketStart));
+        }
+        long alignedTo = to == null ? Long.MAX_VALUE : TimeSeries.toKey(resolution.bucketStart(to));
+        if (alignedFrom >= alignedTo) {
+            aggregateRaw(series, fromKey, toKey, resolution, points);
+            return points;
+        }
+
+        aggregateRaw(series, fromKey, alignedFrom, resolution, points);
+        int end = alignedTo == Long.MAX_VALUE ? rollup.size() : rollup.lowerBound(alignedTo);
+        for (int cell = rollup.lowerBound(alignedFrom); cell < end; cell++) {
+            points.add(toPoint(rollup, cell));
+        }
+        aggregateRaw(series, alignedTo, toKey, resolution, points);
+        return points;
+    }
+
+    private static SeriesPoint toPoint(Rollup rollup, int cell) {
+        LocalDateTime timestamp = TimeSeries.fromKey(rollup.bucketKeyAt(cell));
+        double close = rollup.closeAbsoluteAt(cell);
+        Double absolute = Double.isNaN(close) ? null : close;
+        int valueCount = rollup.valueCountAt(cell);
+        if (valueCount == 0) {
+            return new SeriesPoint(timestamp, 0.0, absolute, null, null, null, rollup.countAt(cell));
+        }
+        double sum = rollup.sumAt(cell);
+        return new SeriesPoint(timestamp, sum, absolute, rollup.minAt(cell), rollup.maxAt(cell), sum / valueCount, rollup.countAt(cell));
+    }
+
+    /**
+     * Aggregates the raw points with {@code fromKey <= key < toKey} in a single pass, comparing primitive
+     * keys only. The range is located by binary search on the sorted timestamps.
+     */
+    private static void aggregateRaw(TimeSeries series, long fromKey, long toKey, Resolution resolution, List<SeriesPoint> points) {
+        int i = series.lowerBound(fromKey);
+        int end = series.lowerBound(toKey);
+        while (i < end) {
+            long bucketStartKey = resolution.bucketStartKey(series.keyAt(i));
+            long bucketEndKey = resolution.nextBucketKey(bucketStartKey);
+            LocalDateTime bucketStart = TimeSeries.fromKey(bucketStartKey);
+
+            double sum = 0.0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double lastAbsolute = Double.NaN;
+            int valueCount = 0;
+            int count = 0;
+            for (; i < end && series.keyAt(i) < bucketEndKey; i++) {
+                count++;
+                double relative = series.relativeAt(i);
+                if (!Double.isNaN(relative)) {
+                    sum += relative;
+                    min = Math.min(min, relative);
+                    max = Math.max(max, relative);
+                    valueCount++;
+                }
+                double absolute = series.absoluteAt(i);
+                if (!Double.isNaN(absolute)) {
+                    lastAbsolute = absolute;
+                }
+            }
+
+            Double absolute = Double.isNaN(lastAbsolute) ? null : lastAbsolute;
+            if (valueCount == 0) {
+                points.add(new SeriesPoint(bucketStart, sum, absolute, null, null, null, count));
+            } else {
+                points.add(new SeriesPoint(bucketStart, sum, absolute, min, max, sum / valueCount, count));
+            }
+        }
+    }
+
+    /**
+     * Adds a point for every bucket of {@code resolution} that lies completely inside a gap of the
+     * meter's {@link Coverage}, so charts draw a line through missing intervals instead of dropping to
+     * zero. The register is interpolated linearly between the measurements on both sides of the gap;
+     * gaps before the first or after the last measurement are not filled.
+     *
+     * @return {@code points} and the interpolated points in time order
+     */
+    public static List<SeriesPoint> interpolateGaps(MeterData meter, List<SeriesPoint> points, LocalDateTime from,
+                                                    LocalDateTime to, Resolution resolution) {
+        TimeSeries series = meter.getSeries();
+        Coverage coverage = meter.getCoverage();
+        if (series.isEmpty()) {
+            return points;
+        }
+        long step = coverage.getStep();
+        long fromKey = Math.max(from == null ? Long.MIN_VALUE : TimeSeries.toKey(from), series.keyAt(0));
+        long toKey = Math.min(to == null ? Long.MAX_VALUE : TimeSeries.toKey(to), series.keyAt(series.size() - 1));
+
+        List<SeriesPoint> filled = new ArrayList<>(points);
+        for (Coverage.Gap gap : coverage.gaps(fromKey, toKey)) {
+            int before = series.lowerBound(gap.fromKey()) - 1;
+            int after = series.lowerBound(gap.toKey());
+            if (before < 0 || after >= series.size()
+                    || Double.isNaN(series.absoluteAt(before)) || Double.isNaN(series.absoluteAt(after))) {
+                continue;
+            }
+            long bucket = resolution == Resolution.RAW ? gap.fromKey() : resolution.bucketStartKey(gap.fromKey());
+            while (bucket < gap.toKey()) {
+                long next = resolution == Resolution.RAW ? bucket + step : resolution.nextBucketKey(bucket);
+                if (bucket >= gap.fromKey() && next <= gap.toKey()) {
+                    // The register at key k includes the interval starting at k
+                    double open = interpolate(series, before, after, bucket - step);
+                    double close = interpolate(series, before, after, next - step);
+                    filled.add(new SeriesPoint(TimeSeries.fromKey(bucket), close - open, close, null, null, null, 0, true));
+                }
+                bucket = next;
+            }
+        }
+        if (filled.size() > points.size()) {
+            filled.sort(Comparator.comparing(SeriesPoint::getTimestamp));
+        }
+        return filled;
+    }
+
+    private static double interpolate(TimeSeries series, int before, int after, long key) {
+        long keyBefore = series.keyAt(before);
+        double fraction = (double) (key - keyBefore) / (series.keyAt(after) - keyBefore);
+        return series.absoluteAt(before) + fraction * (series.absoluteAt(after) - series.absoluteAt(before));
+    }
+}
@@ -0,0 +1,28 @@
+package ch.bzz.backend.query;
+
+import java.time.LocalDateTime;
+
+/* Zeitraum ohne Messwerte, von (inklusive) bis (exklusive) */
+public class SeriesGap {
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final long intervals; // number of missing measurement intervals
+
+    public SeriesGap(LocalDateTime from, LocalDateTime to, long intervals) {
+        this.from = from;
+        this.to = to;
+        this.intervals = intervals;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public long getIntervals() {
+        return intervals;
+    }
+}
@@ -0,0 +1,63 @@
+package ch.bzz.backend.query;
+
+import java.time.LocalDateTime;
+
+/* Ein Punkt einer (ggf. verdichteten) Zeitreihe */
+public class SeriesPoint {
+    private final LocalDateTime timestamp; // start of the bucket
+    private final double relative;         // sum of the relative values in the bucket
+    private final Double absolute;         // last absolute value in the bucket
+    private final Double min;              // min/max/avg of the relative values, null if there are none
+    private final Double max;
+    private final Double avg;
+    private final int count;
+    private final boolean interpolated;    // no measurements in the bucket, values estimated from its neighbours
+
+    public SeriesPoint(LocalDateTime timestamp, double relative, Double absolute, Double min, Double max, Double avg, int count) {
+        this(timestamp, relative, absolute, min, max, avg, count, false);
+    }
+
+    public SeriesPoint(LocalDateTime timestamp, double relative, Double absolute, Double min, Double max, Double avg, int count,
+                       boolean interpolated) {
+        this.timestamp = timestamp;
+        this.relative = relative;
+        this.absolute = absolute;
+        this.min = min;
+        this.max = max;
+        this.avg = avg;
+        this.count = count;
+        this.interpolated = interpolated;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public double getRelative() {
+        return relative;
+    }
+
+    public Double getAbsolute() {
+        return absolute;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public Double getAvg() {
+        return avg;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isInterpolated() {
+        return interpolated;
+    }
+}
@@ -0,0 +1,43 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.Resolution;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/* Antwort des Series-Endpoints für einen Zähler */
+public class SeriesResponse {
+    private final String sensorId;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final Resolution resolution;
+    private final List<SeriesPoint> points;
+
+    public SeriesResponse(String sensorId, LocalDateTime from, LocalDateTime to, Resolution resolution, List<SeriesPoint> points) {
+        this.sensorId = sensorId;
+        this.from = from;
+        this.to = to;
+        this.resolution = resolution;
+        this.points = points;
+    }
+
+    public String getSensorId() {
+        return sensorId;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public String getResolution() {
+        return resolution.getCode();
+    }
+
+    public List<SeriesPoint> getPoints() {
+        return points;
+    }
+}
@@ -0,0 +1,102 @@
+package ch.bzz.backend.reconciliation;
+
+import ch.bzz.backend.model.RegisterReading;
+import ch.bzz.backend.model.TimeSeries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All ESL register readings, indexed by meter, OBIS code and time. Readings are added in file
+ * order, a later file overwrites the value of an earlier one for the same meter, register and
+ * period end. Readings without a period end cannot be placed in time and are ignored.
+ * <p>
+ * The registers of different meters use the same OBIS codes, so the readings of a sensor are
+ * looked up with the meter of its mapping. Without a configured meter the registers must belong to
+ * a single meter; if several meters have readings for them, none are used rather than mixing the
+ * counters of different meters.
+ */
+public class EslReadingIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(EslReadingIndex.class);
+
+    // Readings without a meter (factory number) are kept under this key
+    private static final String UNKNOWN_METER = "";
+
+    private final Map<String, Map<String, NavigableMap<Long, Double>>> readingsByMeter = new LinkedHashMap<>();
+    // The anchors of a register pair are requested once per SDAT file, possibly from several threads
+    private final Map<String, NavigableMap<Long, Double>> anchorsByPair = new ConcurrentHashMap<>();
+
+    public void addAll(Iterable<RegisterReading> readings) {
+        for (RegisterReading reading : readings) {
+            if (reading.getTimestamp() == null) {
+                continue;
+            }
+            String meter = reading.getMeter() != null ? reading.getMeter() : UNKNOWN_METER;
+            readingsByMeter.computeIfAbsent(meter, m -> new HashMap<>())
+                    .computeIfAbsent(reading.getObis(), obis -> new TreeMap<>())
+                    .put(TimeSeries.toKey(reading.getTimestamp()), reading.getValue());
+        }
+        anchorsByPair.clear();
+    }
+
+    /**
+     * Returns the meter readings of a meter whose total is split over two registers (tariffs), keyed
+     * like {@link TimeSeries#toKey}. A reading is only complete when both registers were read at the
+     * same time; if one register never occurs at all, it counts as 0 like in
+     * {@link ch.bzz.backend.parser.MeasurementMerger#startValue}.
+     *
+     * @param meter factory number of the meter, {@code null} if the registers belong to the only
+     *              meter that has readings for them
+     * @return an unmodifiable map, empty if there are no readings for the registers or the meter is ambiguous
+     */
+    public NavigableMap<Long, Double> anchors(String meter, String obis1, String obis2) {
+        String key = (meter != null ? meter : "") + '\u0000' + obis1 + '\u0000' + obis2;
+        return anchorsByPair.computeIfAbsent(key, k -> {
+            Map<String, NavigableMap<Long, Double>> registers = meter != null
+                    ? readingsByMeter.getOrDefault(meter, Collections.emptyMap())
+                    : onlyMeterWith(obis1, obis2);
+            NavigableMap<Long, Double> first = registers.getOrDefault(obis1, Collections.emptyNavigableMap());
+            NavigableMap<Long, Double> second = registers.getOrDefault(obis2, Collections.emptyNavigableMap());
+            NavigableMap<Long, Double> anchors = new TreeMap<>();
+            if (first.isEmpty()) {
+                anchors.putAll(second);
+            } else if (second.isEmpty()) {
+                anchors.putAll(first);
+            } else {
+                first.forEach((time, value) -> {
+                    Double other = second.get(time);
+                    if (other != null) {
+                        anchors.put(time, value + other);
+                    }
+                });
+            }
+            return Collections.unmodifiableNavigableMap(anchors);
+        });
+    }
+
+    // The registers of the single meter that has readings for obis1 or obis2
+    private Map<String, NavigableMap<Long, Double>> onlyMeterWith(String obis1, String obis2) {
+        List<String> meters = new ArrayList<>();
+        readingsByMeter.forEach((meter, registers) -> {
+            if (registers.containsKey(obis1) || registers.containsKey(obis2)) {
+                meters.add(meter);
+            }
+        });
+        if (meters.size() > 1) {
+            logger.warn("Registers {} and {} have readings of the meters {}, configure the meter in the sensor mapping. "
+                    + "The readings are not used.", obis1, obis2, meters);
+            return Collections.emptyMap();
+        }
+        return meters.isEmpty() ? Collections.emptyMap() : readingsByMeter.get(meters.get(0));
+    }
+}
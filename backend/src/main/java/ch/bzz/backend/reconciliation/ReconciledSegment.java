@@ -0,0 +1,74 @@
+package ch.bzz.backend.reconciliation;
+
+/* Mit den ESL-Zählerständen abgeglichene Messwerte einer SDAT-Datei, NaN für fehlende Werte */
+public class ReconciledSegment {
+    private final String sensorId;
+    private final String meter; // null if the mapping names no meter
+    private final String obis1;
+    private final String obis2;
+    private final String contentHash;
+    private final long[] keys;
+    private final double[] relatives;
+    private final double[] absolutes;
+    // Readings in [windowFrom, windowTo] determine the result, changes outside of it do not
+    private final long windowFrom;
+    private final long windowTo;
+
+    ReconciledSegment(String sensorId, String meter, String obis1, String obis2, String contentHash, long[] keys,
+                      double[] relatives, double[] absolutes, long windowFrom, long windowTo) {
+        this.sensorId = sensorId;
+        this.meter = meter;
+        this.obis1 = obis1;
+        this.obis2 = obis2;
+        this.contentHash = contentHash;
+        this.keys = keys;
+        this.relatives = relatives;
+        this.absolutes = absolutes;
+        this.windowFrom = windowFrom;
+        this.windowTo = windowTo;
+    }
+
+    public String getSensorId() {
+        return sensorId;
+    }
+
+    public String getMeter() {
+        return meter;
+    }
+
+    public String getObis1() {
+        return obis1;
+    }
+
+    public String getObis2() {
+        return obis2;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public long[] getKeys() {
+        return keys;
+    }
+
+    public double[] getRelatives() {
+        return relatives;
+    }
+
+    public double[] getAbsolutes() {
+        return absolutes;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    long getWindowFrom() {
+        return windowFrom;
+    }
+
+    long getWindowTo() {
+        return windowTo;
+    }
+}
@@ -0,0 +1,190 @@
+package ch.bzz.backend.reconciliation;
+
+import ch.bzz.backend.parser.MeasurementMerger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns the relative values of SDAT files into absolute meter readings that agree with the ESL
+ * readings. Every SDAT file is one segment:
+ * <ul>
+ *     <li>readings that fall into the segment anchor it: the absolute value at each reading equals
+ *     the reading, and the difference to the summed relative values (drift) is spread evenly over
+ *     the intervals between two readings</li>
+ *     <li>a segment without readings of its own that lies between two readings is integrated from
+ *     the one before it, and the difference to the one after it is spread evenly over the time
+ *     between the two readings, so the consumption in gaps without SDAT files is accounted for</li>
+ *     <li>with a reading on one side only, it is integrated from the reading before it or back from
+ *     the reading after it</li>
+ * </ul>
+ * Results are cached per file. When the readings change, only segments whose anchors are affected
+ * are computed again.
+ */
+public class ReconciliationEngine {
+
+    private volatile EslReadingIndex readings = new EslReadingIndex();
+    private final Map<String, ReconciledSegment> segments = new ConcurrentHashMap<>(); // key = SDAT path
+
+    /**
+     * Replaces the ESL readings. Cached segments are kept if the readings in their anchor window
+     * did not change.
+     *
+     * @return the number of segments that have to be computed again
+     */
+    public int updateReadings(EslReadingIndex newReadings) {
+        EslReadingIndex oldReadings = readings;
+        int before = segments.size();
+        segments.values().removeIf(segment -> !window(oldReadings, segment).equals(window(newReadings, segment)));
+        readings = newReadings;
+        return before - segments.size();
+    }
+
+    /**
+     * Forgets the segments of files that are no longer ingested.
+     */
+    public void retainAll(Set<String> paths) {
+        segments.keySet().retainAll(paths);
+    }
+
+    public void clear() {
+        segments.clear();
+    }
+
+    /**
+     * Returns the reconciled segment of an SDAT file, from the cache if the file and the relevant
+     * readings did not change. Safe to call from several threads for different paths. The segment
+     * shares {@code keys} and {@code relatives} with the caller, they must not be modified.
+     */
+    public ReconciledSegment reconcile(String path, String contentHash, String sensorId, String meter, String obis1,
+                                       String obis2, long[] keys, double[] relatives) {
+        ReconciledSegment cached = segments.get(path);
+        if (cached != null && cached.getContentHash().equals(contentHash) && cached.getSensorId().equals(sensorId)
+                && Objects.equals(cached.getMeter(), meter) && cached.getObis1().equals(obis1) && cached.getObis2().equals(obis2)) {
+            return cached;
+        }
+        ReconciledSegment segment = compute(sensorId, meter, obis1, obis2, contentHash, keys, relatives,
+                readings.anchors(meter, obis1, obis2));
+        segments.put(path, segment);
+        return segment;
+    }
+
+    private static NavigableMap<Long, Double> window(EslReadingIndex index, ReconciledSegment segment) {
+        return index.anchors(segment.getMeter(), segment.getObis1(), segment.getObis2())
+                .subMap(segment.getWindowFrom(), true, segment.getWindowTo(), true);
+    }
+
+    static ReconciledSegment compute(String sensorId, String meter, String obis1, String obis2, String contentHash,
+                                     long[] keys, double[] relatives, NavigableMap<Long, Double> anchors) {
+        int count = keys.length;
+        double[] absolutes = new double[count];
+        if (count == 0) {
+            return new ReconciledSegment(sensorId, meter, obis1, obis2, contentHash, keys, relatives, absolutes, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+        // absolutes[i] starts as the sum of relatives[0..i], the register at the start of the segment is added below
+        MeasurementMerger.accumulate(relatives, absolutes, 0, count, 0.0);
+
+        // A reading at time t is the register after all intervals that start before t
+        long first = keys[0];
+        long end = keys[count - 1] + (count > 1 ? keys[count - 1] - keys[count - 2] : 0);
+        boolean sorted = isStrictlyIncreasing(keys);
+        List<Integer> positions = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        if (sorted) {
+            for (Map.Entry<Long, Double> anchor : anchors.subMap(first, true, end, true).entrySet()) {
+                int position = position(keys, anchor.getKey());
+                if (positions.isEmpty() || position > positions.get(positions.size() - 1)) {
+                    positions.add(position);
+                    values.add(anchor.getValue());
+                }
+            }
+        }
+
+        if (!positions.isEmpty()) {
+            distribute(absolutes, positions, values);
+            // Readings outside of the segment do not matter once it has its own
+            return new ReconciledSegment(sensorId, meter, obis1, obis2, contentHash, keys, relatives, absolutes, first, end);
+        }
+
+        Long before = anchors.lowerKey(first);
+        Long after = anchors.higherKey(end);
+        if (sorted && before != null && after != null) {
+            bound(keys, absolutes, end, before, anchors.get(before), after, anchors.get(after));
+        } else {
+            double start = 0.0;
+            if (before != null && (after == null || first - before <= after - end)) {
+                start = anchors.get(before);
+            } else if (after != null) {
+                start = anchors.get(after) - absolutes[count - 1];
+            }
+            for (int i = 0; i < count; i++) {
+                absolutes[i] += start;
+            }
+        }
+        return new ReconciledSegment(sensorId, meter, obis1, obis2, contentHash, keys, relatives, absolutes,
+                before != null ? before : Long.MIN_VALUE, after != null ? after : Long.MAX_VALUE);
+    }
+
+    // Shifts the running totals so they pass through every anchor, the drift between two anchors grows linearly
+    private static void distribute(double[] absolutes, List<Integer> positions, List<Double> values) {
+        int count = absolutes.length;
+        // Sums of the relative values before each anchor, taken before absolutes is changed
+        double[] measured = new double[positions.size()];
+        for (int anchor = 0; anchor < measured.length; anchor++) {
+            int position = positions.get(anchor);
+            measured[anchor] = position == 0 ? 0.0 : absolutes[position - 1];
+        }
+
+        double offset = values.get(0) - measured[0];
+        for (int i = 0; i < positions.get(0); i++) {
+            absolutes[i] += offset;
+        }
+        for (int anchor = 0; anchor + 1 < measured.length; anchor++) {
+            int from = positions.get(anchor);
+            int to = positions.get(anchor + 1);
+            double drift = (values.get(anchor + 1) - values.get(anchor)) - (measured[anchor + 1] - measured[anchor]);
+            int span = to - from;
+            for (int i = from; i < to; i++) {
+                absolutes[i] += offset + drift * (i - from + 1) / span;
+            }
+            offset += drift;
+        }
+        for (int i = positions.get(positions.size() - 1); i < count; i++) {
+            absolutes[i] += offset;
+        }
+    }
+
+    // Integrates from the reading before the segment and spreads the difference to the reading after
+    // it, including what was used in the gaps without measurements, evenly over the time in between
+    private static void bound(long[] keys, double[] absolutes, long end, long before, double beforeValue,
+                              long after, double afterValue) {
+        int count = absolutes.length;
+        double drift = (afterValue - beforeValue) - absolutes[count - 1];
+        double span = after - before;
+        for (int i = 0; i < count; i++) {
+            long intervalEnd = i + 1 < count ? keys[i + 1] : end;
+            absolutes[i] += beforeValue + drift * ((intervalEnd - before) / span);
+        }
+    }
+
+    // Number of intervals starting before time
+    private static int position(long[] keys, long time) {
+        int index = Arrays.binarySearch(keys, time);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static boolean isStrictlyIncreasing(long[] keys) {
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i] <= keys[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,5 +1,7 @@
 package ch.bzz.backend.runner;
 
+import ch.bzz.backend.mapping.SensorMapping;
+import ch.bzz.backend.mapping.SensorMappingRegistry;
 import ch.bzz.backend.model.Measurement;
 import ch.bzz.backend.parser.ESLParser;
 import ch.bzz.backend.parser.MeasurementMerger;
@@ -22,19 +24,13 @@ public class ParserRunner {
             List<Measurement> sdatMeasurements = parsed.getValues();
             String documentId = parsed.getDocumentId();
 
-            String obis1, obis2;
-            if (documentId.contains("ID742")) {
-                obis1 = "1-1:1.8.1";
-                obis2 = "1-1:1.8.2";
-            } else if (documentId.contains("ID735")) {
-                obis1 = "1-1:2.8.1";
-                obis2 = "1-1:2.8.2";
-            } else {
+            SensorMapping mapping = new SensorMappingRegistry(null).find(documentId);
+            if (mapping == null) {
                 System.out.println("Unknown DocumentID: " + documentId);
                 return;
             }
 
-            List<Measurement> result = MeasurementMerger.mergeWithESL(sdatMeasurements, eslValues, obis1, obis2);
+            List<Measurement> result = MeasurementMerger.mergeWithESL(sdatMeasurements, eslValues, mapping.getObis1(), mapping.getObis2());
             result.forEach(System.out::println);
 
         } catch (Exception e) {
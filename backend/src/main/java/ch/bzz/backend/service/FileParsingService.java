@@ -0,0 +1,195 @@
+package ch.bzz.backend.service;
+
+import ch.bzz.backend.io.FileInputs;
+import ch.bzz.backend.io.TeeInputStream;
+import ch.bzz.backend.metrics.IngestionMetrics;
+import ch.bzz.backend.model.RegisterReading;
+import ch.bzz.backend.parser.ESLParser;
+import ch.bzz.backend.parser.ParseIssues;
+import ch.bzz.backend.parser.SDATParser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Parses ESL and SDAT files into {@link IngestionIndex.Entry index entries}. All parsing runs on one
+ * executor, whether the file comes from a directory scan, an upload job or the folder watcher, so
+ * the number of files parsed at the same time is bounded for the whole application. The entries
+ * only become part of the model once they are passed to the {@link IngestionService}.
+ */
+@Service
+public class FileParsingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileParsingService.class);
+
+    private final int parseParallelism;
+    private final ExecutorService parseExecutor;
+    private final Semaphore parsePermits;
+    private final IngestionMetrics metrics;
+
+    /**
+     * @param parseParallelism maximum number of files parsed at the same time, 0 means one per CPU core
+     * @param metrics          meters the parsing is recorded in, {@code null} records into a local registry
+     */
+    public FileParsingService(@Value("${wattwise.ingestion.parse-parallelism:0}") int parseParallelism,
+                              IngestionMetrics metrics) {
+        this.metrics = metrics != null ? metrics : new IngestionMetrics(new SimpleMeterRegistry());
+        this.parseParallelism = parseParallelism > 0 ? parseParallelism : Runtime.getRuntime().availableProcessors();
+        // Parsing is CPU bound, the semaphore keeps the number of virtual threads doing work at the same time bounded
+        this.parseExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("file-parser-", 0).factory());
+        this.parsePermits = new Semaphore(this.parseParallelism);
+        logger.info("Ingestion parses up to {} files in parallel.", this.parseParallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parseExecutor.shutdownNow();
+    }
+
+    /* Ergebnis des Parsens einer einzelnen Datei */
+    public record ParseResult(IngestionIndex.Entry entry, boolean parsed) {
+    }
+
+    /**
+     * Starts parsing a file found in an upload directory. If its content hash matches {@code cached},
+     * the cached entry is returned with the new metadata and the file is not parsed.
+     */
+    public Future<ParseResult> submitFile(File file, IngestionIndex.FileType type, IngestionIndex.Entry cached) {
+        return submit(() -> parseFile(file, type, cached));
+    }
+
+    /**
+     * Starts parsing an uploaded file whose content hash was computed while it was saved. The job
+     * reads the file exactly once, for the parser. The returned entry has to be passed to
+     * {@link IngestionService#addUploads(List)} to become part of the model.
+     */
+    public Future<IngestionIndex.Entry> submitUpload(SavedUpload upload) {
+        return submit(() -> parseUpload(upload.getPath(), upload.getType(), upload.getContentHash()));
+    }
+
+    /**
+     * Starts parsing a file that appeared in a watched directory. The SHA-256 hash for the index
+     * is computed from the same bytes the parser consumes.
+     */
+    public Future<IngestionIndex.Entry> submitUpload(Path file, IngestionIndex.FileType type) {
+        return submit(() -> parseUpload(file, type, null));
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        return parseExecutor.submit(() -> {
+            parsePermits.acquire();
+            try {
+                return task.call();
+            } finally {
+                parsePermits.release();
+            }
+        });
+    }
+
+    private ParseResult parseFile(File file, IngestionIndex.FileType type, IngestionIndex.Entry cached) throws IOException {
+        long start = System.nanoTime();
+        String key = file.getPath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        String hash = IngestionIndex.hashFile(file.toPath());
+        if (cached != null && cached.getType() == type && cached.getContentHash().equals(hash)) {
+            // Only touched, the cached parse result is still valid
+            return new ParseResult(cached.withMetadata(size, lastModified), false);
+        }
+
+        if (type == IngestionIndex.FileType.ESL) {
+            logger.info("Processing ESL file: {}", file.getName());
+            ParseIssues issues = new ParseIssues();
+            List<RegisterReading> readings = ESLParser.parseESLReadingsFile(file, issues);
+            IngestionIndex.Entry entry = new IngestionIndex.Entry(key, type, size, lastModified, hash, readings, null);
+            recordParse(entry, System.nanoTime() - start, issues);
+            return new ParseResult(entry, true);
+        }
+        logger.info("Processing SDAT file: {}", file.getName());
+        SDATParser.ParsedSDAT parsed = SDATParser.parseSDATFile(file);
+        IngestionIndex.Entry entry = new IngestionIndex.Entry(key, type, size, lastModified, hash, null, parsed);
+        recordParse(entry, System.nanoTime() - start, parsed.getIssues());
+        return new ParseResult(entry, true);
+    }
+
+    private IngestionIndex.Entry parseUpload(Path file, IngestionIndex.FileType type, String contentHash) throws IOException {
+        long start = System.nanoTime();
+        ParseIssues issues = new ParseIssues();
+        String fileName = file.getFileName().toString();
+        List<RegisterReading> eslReadings = null;
+        SDATParser.ParsedSDAT parsedSdat = null;
+        if (type == IngestionIndex.FileType.SDAT && SDATParser.isLargeFile(Files.size(file))) {
+            // The parser reads the chunks of the mapped file in parallel, a hash that is not known yet
+            // costs a second pass over the file
+            logger.info("Processing large uploaded SDAT file: {}", fileName);
+            if (contentHash == null) {
+                contentHash = IngestionIndex.hashFile(file);
+            }
+            parsedSdat = SDATParser.parseSDATFile(file.toFile());
+            issues = parsedSdat.getIssues();
+        } else {
+            MessageDigest digest = contentHash == null ? IngestionIndex.newDigest() : null;
+            try (InputStream in = openForParse(file, digest)) {
+                if (type == IngestionIndex.FileType.ESL) {
+                    logger.info("Processing uploaded ESL file: {}", fileName);
+                    eslReadings = ESLParser.parseESLReadings(in, fileName, issues);
+                } else {
+                    logger.info("Processing uploaded SDAT file: {}", fileName);
+                    parsedSdat = SDATParser.parseSDATStream(in, fileName);
+                    issues = parsedSdat.getIssues();
+                }
+                if (in instanceof TeeInputStream tee) {
+                    tee.drain();
+                    contentHash = HexFormat.of().formatHex(digest.digest());
+                }
+            }
+        }
+        File saved = file.toFile();
+        IngestionIndex.Entry entry = new IngestionIndex.Entry(saved.getPath(), type, saved.length(), saved.lastModified(),
+                contentHash, eslReadings, parsedSdat);
+        recordParse(entry, System.nanoTime() - start, issues);
+        return entry;
+    }
+
+    /**
+     * Opens a file for parsing. With a digest, the bytes the parser consumes are hashed on the way;
+     * the tee only feeds the digest, the file is already on disk.
+     */
+    private static InputStream openForParse(Path file, MessageDigest digest) throws IOException {
+        InputStream in = FileInputs.open(file);
+        if (digest == null) {
+            return in;
+        }
+        return new TeeInputStream(in, Channels.newChannel(OutputStream.nullOutputStream()), digest);
+    }
+
+    private void recordParse(IngestionIndex.Entry entry, long nanos, ParseIssues issues) {
+        boolean esl = entry.getType() == IngestionIndex.FileType.ESL;
+        int values = esl ? entry.getEslReadings().size() : entry.getParsedSdat().size();
+        if (!esl && (entry.getParsedSdat().getDocumentId() == null || entry.getParsedSdat().getDocumentId().trim().isEmpty())) {
+            logger.warn("SDAT file {} has no DocumentID, assigning it to '{}'", Paths.get(entry.getPath()).getFileName(),
+                    IngestionService.documentId(entry));
+        }
+        metrics.recordParse(esl ? "esl" : "sdat", nanos, entry.getSize(), values, issues);
+    }
+}
@@ -0,0 +1,263 @@
+package ch.bzz.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingests files that are copied into the upload directories by other means than the upload
+ * endpoint, e.g. a share the meter operator drops files into. The directories are watched with a
+ * {@link WatchService}; a file is picked up once it has not changed for {@code quietMs}, so files
+ * that are still being copied are not parsed half-written. Ready files are parsed and published in
+ * batches of up to {@code batchSize} through the same path as uploads, and the next batch only
+ * starts when the previous one is part of the model. Files already in the ingestion index are
+ * never parsed again, deleted files are removed from the model.
+ * <p>
+ * Only the top level of the directories is watched, like the uploads are stored. If the watch
+ * service loses events, the directories are scanned once with {@link IngestionService#rescan()}.
+ */
+@Service
+public class FolderWatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FolderWatchService.class);
+
+    private final IngestionService ingestionService;
+    private final FileParsingService parsing;
+    private final boolean enabled;
+    private final long quietNanos;
+    private final int batchSize;
+    private final Path eslDir = Paths.get(IngestionService.ESL_UPLOAD_DIR);
+    private final Path sdatDir = Paths.get(IngestionService.SDAT_UPLOAD_DIR);
+
+    // Files with events, in the order they were first seen, waiting until they stop changing
+    private final Map<Path, PendingFile> pending = new LinkedHashMap<>();
+    private final Set<Path> deleted = new LinkedHashSet<>();
+    private volatile WatchService watchService;
+    private Thread thread;
+
+    /* Datei, die auf das Ende des Kopierens wartet */
+    private static final class PendingFile {
+        long size;
+        long lastModified;
+        long changedAt; // System.nanoTime() of the last change that was seen
+
+        PendingFile(long size, long lastModified, long changedAt) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.changedAt = changedAt;
+        }
+    }
+
+    /**
+     * @param enabled   whether the upload directories are watched
+     * @param quietMs   time a file must not change before it is parsed
+     * @param batchSize maximum number of files published into the model at once
+     */
+    public FolderWatchService(IngestionService ingestionService, FileParsingService parsing,
+                              @Value("${wattwise.watch.enabled:true}") boolean enabled,
+                              @Value("${wattwise.watch.quiet-ms:2000}") long quietMs,
+                              @Value("${wattwise.watch.batch-size:200}") int batchSize) {
+        this.ingestionService = ingestionService;
+        this.parsing = parsing;
+        this.enabled = enabled;
+        this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMs);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Starts watching after the existing files were loaded on startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            register(eslDir);
+            register(sdatDir);
+        } catch (IOException e) {
+            logger.error("Could not watch the upload directories, new files are only loaded on /load-existing: {}", e.getMessage());
+            return;
+        }
+        thread = Thread.ofPlatform().name("folder-watch").daemon().start(this::run);
+        logger.info("Watching {} and {} for new files.", eslDir, sdatDir);
+    }
+
+    private void register(Path dir) throws IOException {
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    @PreDestroy
+    public void stop() {
+        WatchService service = watchService;
+        if (service == null) {
+            return;
+        }
+        try {
+            service.close();
+        } catch (IOException e) {
+            logger.warn("Could not close the folder watch service: {}", e.getMessage());
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = pending.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(Math.max(1, quietNanos / 4), TimeUnit.NANOSECONDS);
+                // Drain everything that is queued, a copy of many files arrives as a burst of events
+                while (key != null) {
+                    collect(key);
+                    key = watchService.poll();
+                }
+                if (!deleted.isEmpty()) {
+                    List<Path> files = new ArrayList<>(deleted);
+                    deleted.clear();
+                    ingestionService.removeFiles(files);
+                    ingestionService.directoriesSynced();
+                }
+                List<Path> ready = takeReady(System.nanoTime());
+                for (int from = 0; from < ready.size(); from += batchSize) {
+                    ingest(ready.subList(from, Math.min(ready.size(), from + batchSize)));
+                }
+                if (!ready.isEmpty()) {
+                    ingestionService.directoriesSynced();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shutting down
+        } catch (IOException | RuntimeException e) {
+            logger.error("Folder watch stopped, new files are only loaded on /load-existing: {}", e.getMessage(), e);
+        }
+    }
+
+    private void collect(WatchKey key) throws IOException {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                logger.warn("Missed file events in {}, scanning the upload directories.", dir);
+                try {
+                    ingestionService.rescan();
+                } catch (IOException e) {
+                    logger.error("Failed to scan the upload directories: {}", e.getMessage());
+                }
+                continue;
+            }
+            Path file = dir.resolve((Path) event.context());
+            if (ignored(file)) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                pending.remove(file);
+                deleted.add(file);
+                continue;
+            }
+            deleted.remove(file);
+            File f = file.toFile();
+            PendingFile known = pending.get(file);
+            if (known == null) {
+                pending.put(file, new PendingFile(f.length(), f.lastModified(), System.nanoTime()));
+            } else {
+                known.size = f.length();
+                known.lastModified = f.lastModified();
+                known.changedAt = System.nanoTime();
+            }
+        }
+        if (!key.reset()) {
+            throw new IOException("Upload directory " + dir + " is no longer accessible");
+        }
+    }
+
+    // Hidden files and partial copies of common tools
+    private static boolean ignored(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(".") || name.endsWith(".part") || name.endsWith(".tmp");
+    }
+
+    /**
+     * Removes the files that did not change for the quiet period from the pending files. A file
+     * whose size or modification time still changes without an event restarts its quiet period.
+     */
+    private List<Path> takeReady(long now) {
+        List<Path> ready = new ArrayList<>();
+        Iterator<Map.Entry<Path, PendingFile>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, PendingFile> entry = it.next();
+            PendingFile state = entry.getValue();
+            if (now - state.changedAt < quietNanos) {
+                continue;
+            }
+            File f = entry.getKey().toFile();
+            if (!f.isFile()) {
+                it.remove();
+            } else if (f.length() != state.size || f.lastModified() != state.lastModified) {
+                state.size = f.length();
+                state.lastModified = f.lastModified();
+                state.changedAt = now;
+            } else {
+                it.remove();
+                ready.add(entry.getKey());
+            }
+        }
+        return ready;
+    }
+
+    private void ingest(List<Path> files) throws InterruptedException {
+        List<Path> parsed = new ArrayList<>();
+        List<Future<IngestionIndex.Entry>> futures = new ArrayList<>();
+        for (Path file : files) {
+            if (ingestionService.isKnown(file)) {
+                continue;
+            }
+            IngestionIndex.FileType type = file.startsWith(eslDir) ? IngestionIndex.FileType.ESL : IngestionIndex.FileType.SDAT;
+            parsed.add(file);
+            futures.add(parsing.submitUpload(file, type));
+        }
+        if (futures.isEmpty()) {
+            return;
+        }
+
+        List<IngestionIndex.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                entries.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                logger.error("Could not parse watched file {}: {}", parsed.get(i), e.getCause().getMessage());
+            }
+        }
+        IngestionService.UploadResult result = ingestionService.addUploads(entries);
+        logger.info("Ingested {} watched files with {} measurements, skipped {} duplicate files.",
+                entries.size(), result.getMeasurements(), result.getDuplicates().size());
+    }
+}
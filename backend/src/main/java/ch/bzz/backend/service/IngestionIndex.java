@@ -0,0 +1,481 @@
+package ch.bzz.backend.service;
+
+import ch.bzz.backend.io.TeeInputStream;
+import ch.bzz.backend.model.RegisterReading;
+import ch.bzz.backend.parser.SDATParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Persistent index of all ingested files. Every entry is keyed by the file path and remembers
+ * size, modification time and content hash together with the parsed result, so a file only has
+ * to be parsed again when its content actually changed.
+ * <p>
+ * The index file only holds the metadata, as a log of put and remove records: {@link #save()}
+ * appends the changes since the last save, so an upload costs one record instead of a rewrite of
+ * the whole history. The log is compacted once it has grown well beyond the number of entries.
+ * Parse results are written once per content hash into a cache directory next to the index file
+ * and deleted when no entry refers to them anymore.
+ */
+public class IngestionIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionIndex.class);
+
+    private static final int MAGIC = 0x57574958; // "WWIX"
+    private static final int VERSION = 3; // 3: metadata log, parse results in the cache directory
+    private static final int CACHE_VERSION = 3; // 2: ESL readings with their meter, 3: SDAT resolution
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    // Log records beyond twice the number of entries that are tolerated before compacting
+    private static final int COMPACT_SLACK = 64;
+
+    public enum FileType {
+        ESL, SDAT
+    }
+
+    /* Ein Eintrag pro eingelesener Datei */
+    public static class Entry {
+        private final String path;
+        private final FileType type;
+        private final long size;
+        private final long lastModified;
+        private final String contentHash;
+        private final List<RegisterReading> eslReadings;  // only for ESL files
+        private final SDATParser.ParsedSDAT parsedSdat;   // only for SDAT files
+
+        Entry(String path, FileType type, long size, long lastModified, String contentHash,
+              List<RegisterReading> eslReadings, SDATParser.ParsedSDAT parsedSdat) {
+            this.path = path;
+            this.type = type;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.eslReadings = eslReadings;
+            this.parsedSdat = parsedSdat;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public FileType getType() {
+            return type;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public List<RegisterReading> getEslReadings() {
+            return eslReadings;
+        }
+
+        public SDATParser.ParsedSDAT getParsedSdat() {
+            return parsedSdat;
+        }
+
+        boolean matches(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+
+        Entry withMetadata(long size, long lastModified) {
+            return new Entry(path, type, size, lastModified, contentHash, eslReadings, parsedSdat);
+        }
+
+        // Name of the cache file with the parse result, equal content shares one file
+        String cacheName() {
+            return contentHash + (type == FileType.ESL ? ".esl" : ".sdat");
+        }
+    }
+
+    private final Path indexFile;
+    private final Path cacheDir;
+    // TreeMap keeps the entries sorted by path, which gives a deterministic processing order
+    private final Map<String, Entry> entries = new TreeMap<>();
+    // Changes since the last save by path, null for a removed entry
+    private final Map<String, Entry> pending = new LinkedHashMap<>();
+    // Cache files of replaced or removed entries, deleted on save unless still referenced
+    private final Set<String> released = new HashSet<>();
+    private int logRecords;
+    private boolean logValid; // false if the index file has to be rewritten before appending
+
+    public IngestionIndex(Path indexFile) {
+        this.indexFile = indexFile;
+        this.cacheDir = indexFile.resolveSibling(indexFile.getFileName() + ".parsed");
+    }
+
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public void put(Entry entry) {
+        Entry previous = entries.put(entry.getPath(), entry);
+        pending.put(entry.getPath(), entry);
+        if (previous != null && !previous.cacheName().equals(entry.cacheName())) {
+            released.add(previous.cacheName());
+        }
+    }
+
+    public Entry remove(String path) {
+        Entry removed = entries.remove(path);
+        if (removed != null) {
+            pending.put(path, null);
+            released.add(removed.cacheName());
+        }
+        return removed;
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    public List<Entry> getEntries(FileType type) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.getType() == type) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Fingerprint over the paths and content hashes of all entries. Two indexes with the same
+     * fingerprint describe the same set of files, so a model built from one is valid for the other.
+     */
+    public long fingerprint() {
+        MessageDigest digest = newDigest();
+        for (Entry entry : entries.values()) {
+            digest.update(entry.getPath().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(entry.getContentHash().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    /**
+     * Computes the SHA-256 hash of a file's content as hex string.
+     */
+    public static String hashFile(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Writes {@code in} to {@code target} and computes the SHA-256 hash of the written bytes on the
+     * way, so a saved upload never has to be read again just for its hash.
+     */
+    public static String copyAndHash(InputStream in, Path target) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             TeeInputStream tee = new TeeInputStream(in, channel, digest)) {
+            tee.drain();
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Loads the index from disk. A missing or unreadable index file results in an empty index,
+     * which simply means that all files get parsed again. The same goes for single entries whose
+     * parse result is missing from the cache directory.
+     */
+    public void load() {
+        entries.clear();
+        pending.clear();
+        released.clear();
+        logRecords = 0;
+        logValid = false;
+        if (!Files.isRegularFile(indexFile)) {
+            logger.info("No ingestion index found at {}, starting with an empty index.", indexFile);
+            return;
+        }
+        Map<String, Entry> metadata = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Ingestion index {} has an unknown format, ignoring it.", indexFile);
+                return;
+            }
+            logValid = true;
+            while (readRecord(in, metadata)) {
+                logRecords++;
+            }
+        } catch (EOFException e) {
+            // A save was interrupted, the records before it are complete
+            logger.warn("Ingestion index {} ends with an incomplete record, it is rewritten on the next save.", indexFile);
+            logValid = false;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read ingestion index {}, ignoring it: {}", indexFile, e.getMessage());
+            logValid = false;
+            return;
+        }
+
+        for (Entry meta : metadata.values()) {
+            Entry entry = readParsed(meta);
+            if (entry != null) {
+                entries.put(entry.getPath(), entry);
+            } else {
+                logValid = false;
+            }
+        }
+        logger.info("Loaded ingestion index with {} entries from {}.", entries.size(), indexFile);
+    }
+
+    /**
+     * Writes the changes since the last save to disk: the parse results of new entries go into the
+     * cache directory, then their metadata is appended to the index file. If the index file has to
+     * be compacted it is replaced atomically, so a crash never leaves a half written index behind;
+     * an interrupted append only loses its own records.
+     */
+    public void save() {
+        try {
+            Files.createDirectories(cacheDir);
+            for (Entry entry : pending.values()) {
+                if (entry != null) {
+                    writeParsed(entry);
+                }
+            }
+            if (!logValid || logRecords + pending.size() > 2L * entries.size() + COMPACT_SLACK) {
+                compact();
+            } else if (!pending.isEmpty()) {
+                append();
+            }
+            pending.clear();
+            deleteReleased();
+        } catch (IOException e) {
+            logger.error("Failed to write ingestion index {}: {}", indexFile, e.getMessage());
+        }
+    }
+
+    private void append() throws IOException {
+        // If this fails halfway the next save rewrites the file instead of appending after a torn record
+        logValid = false;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indexFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)))) {
+            for (Map.Entry<String, Entry> change : pending.entrySet()) {
+                writeRecord(out, change.getKey(), change.getValue());
+            }
+        }
+        logRecords += pending.size();
+        logValid = true;
+    }
+
+    private void compact() throws IOException {
+        Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Entry entry : entries.values()) {
+                writeRecord(out, entry.getPath(), entry);
+            }
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logRecords = entries.size();
+        logValid = true;
+
+        // Also picks up cache files whose entry never made it into the log
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir)) {
+            for (Path file : files) {
+                released.add(file.getFileName().toString());
+            }
+        }
+    }
+
+    private void deleteReleased() {
+        if (released.isEmpty()) {
+            return;
+        }
+        Set<String> referenced = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            referenced.add(entry.cacheName());
+        }
+        for (String name : released) {
+            if (!referenced.contains(name)) {
+                try {
+                    Files.deleteIfExists(cacheDir.resolve(name));
+                } catch (IOException e) {
+                    logger.warn("Could not delete cached parse result {}: {}", name, e.getMessage());
+                }
+            }
+        }
+        released.clear();
+    }
+
+    private static void writeRecord(DataOutputStream out, String path, Entry entry) throws IOException {
+        if (entry == null) {
+            out.writeByte(REMOVE);
+            out.writeUTF(path);
+            return;
+        }
+        out.writeByte(PUT);
+        out.writeUTF(path);
+        out.writeByte(entry.getType().ordinal());
+        out.writeLong(entry.getSize());
+        out.writeLong(entry.getLastModified());
+        out.writeUTF(entry.getContentHash());
+    }
+
+    // Applies the next record to metadata, false at the end of the log
+    private static boolean readRecord(DataInputStream in, Map<String, Entry> metadata) throws IOException {
+        int op = in.read();
+        if (op == -1) {
+            return false;
+        }
+        String path = in.readUTF();
+        if (op == REMOVE) {
+            metadata.remove(path);
+            return true;
+        }
+        if (op != PUT) {
+            throw new IOException("Unknown record type " + op);
+        }
+        FileType type = FileType.values()[in.readByte()];
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        String hash = in.readUTF();
+        metadata.put(path, new Entry(path, type, size, lastModified, hash, null, null));
+        return true;
+    }
+
+    // Written once per content, the file is never changed afterwards
+    private void writeParsed(Entry entry) throws IOException {
+        Path file = cacheDir.resolve(entry.cacheName());
+        if (Files.exists(file)) {
+            return;
+        }
+        Path tempFile = cacheDir.resolve(entry.cacheName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(CACHE_VERSION);
+            if (entry.getType() == FileType.ESL) {
+                out.writeInt(entry.getEslReadings().size());
+                for (RegisterReading reading : entry.getEslReadings()) {
+                    out.writeBoolean(reading.getMeter() != null);
+                    if (reading.getMeter() != null) {
+                        out.writeUTF(reading.getMeter());
+                    }
+                    out.writeUTF(reading.getObis());
+                    out.writeBoolean(reading.getTimestamp() != null);
+                    if (reading.getTimestamp() != null) {
+                        out.writeLong(reading.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+                    }
+                    out.writeDouble(reading.getValue());
+                }
+            } else {
+                SDATParser.ParsedSDAT parsed = entry.getParsedSdat();
+                out.writeBoolean(parsed.getDocumentId() != null);
+                if (parsed.getDocumentId() != null) {
+                    out.writeUTF(parsed.getDocumentId());
+                }
+                out.writeInt(parsed.getResolutionMinutes());
+                out.writeInt(parsed.size());
+                for (long key : parsed.getKeys()) {
+                    out.writeLong(key);
+                }
+                for (double relative : parsed.getRelatives()) {
+                    out.writeDouble(relative);
+                }
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // The entry with its cached parse result, or null if the cache file is missing or unreadable
+    private Entry readParsed(Entry meta) {
+        Path file = cacheDir.resolve(meta.cacheName());
+        if (!Files.isRegularFile(file)) {
+            logger.info("Parse result of {} is not cached, the file is parsed again.", meta.getPath());
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != CACHE_VERSION) {
+                return null;
+            }
+            if (meta.getType() == FileType.ESL) {
+                int count = in.readInt();
+                List<RegisterReading> readings = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    String meter = in.readBoolean() ? in.readUTF() : null;
+                    String obis = in.readUTF();
+                    LocalDateTime timestamp = in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC) : null;
+                    readings.add(new RegisterReading(meter, obis, timestamp, in.readDouble()));
+                }
+                return new Entry(meta.getPath(), meta.getType(), meta.getSize(), meta.getLastModified(), meta.getContentHash(), readings, null);
+            }
+            String documentId = in.readBoolean() ? in.readUTF() : null;
+            int resolutionMinutes = in.readInt();
+            int count = in.readInt();
+            long[] keys = new long[count];
+            double[] relatives = new double[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = in.readLong();
+            }
+            for (int i = 0; i < count; i++) {
+                relatives[i] = in.readDouble();
+            }
+            return new Entry(meta.getPath(), meta.getType(), meta.getSize(), meta.getLastModified(), meta.getContentHash(), null,
+                    new SDATParser.ParsedSDAT(documentId, keys, relatives, resolutionMinutes));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read cached parse result of {}, the file is parsed again: {}", meta.getPath(), e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,657 @@
+package ch.bzz.backend.service;
+
+import ch.bzz.backend.metrics.IngestionMetrics;
+import ch.bzz.backend.mapping.SensorMapping;
+import ch.bzz.backend.mapping.SensorMappingRegistry;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.MeterModel;
+import ch.bzz.backend.parser.SDATParser;
+import ch.bzz.backend.reconciliation.EslReadingIndex;
+import ch.bzz.backend.reconciliation.ReconciledSegment;
+import ch.bzz.backend.reconciliation.ReconciliationEngine;
+import ch.bzz.backend.snapshot.MeterModelSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the {@link MeterModel} built from all uploaded files in memory. Parsed files are cached in
+ * an {@link IngestionIndex}, so only new or changed files are parsed and repeated loads are answered
+ * from the in-memory model. There is a single live model instance; rebuilds swap in new meters and
+ * uploads that only add newer SDAT files are appended to the existing meters, so readers never wait
+ * for ingestion.
+ * <p>
+ * The files themselves are parsed by the {@link FileParsingService}, and the {@link SnapshotService}
+ * restores and persists the model.
+ */
+@Service
+public class IngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionService.class);
+
+    public static final String UPLOAD_DIR_BASE = "uploads" + File.separator;
+    public static final String ESL_UPLOAD_DIR = UPLOAD_DIR_BASE + "esl-files" + File.separator;
+    public static final String SDAT_UPLOAD_DIR = UPLOAD_DIR_BASE + "sdat-files" + File.separator;
+    private static final String INDEX_FILE = UPLOAD_DIR_BASE + "ingestion-index.bin";
+
+    private final IngestionIndex index;
+    private final FileParsingService parsing;
+    private final MeterModel meterModel = new MeterModel();
+    private final ReconciliationEngine reconciliation = new ReconciliationEngine();
+    // The segments each meter of the model was built from, used to skip meters that did not change
+    private final Map<String, List<ReconciledSegment>> builtSegments = new HashMap<>();
+    private final SdatDocumentIndex documentIndex = new SdatDocumentIndex();
+    private boolean modelDirty = true;
+    private final IngestionMetrics metrics;
+    private final SensorMappingRegistry mappings;
+    private long eslDirModified = -1;
+    private long sdatDirModified = -1;
+    // Saved uploads an upload job is going to parse, the folder watcher leaves them alone
+    private final Set<String> claimedUploads = ConcurrentHashMap.newKeySet();
+    private final List<Runnable> modelListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param parsing  parses the files, {@code null} uses a parser with one thread per CPU core
+     * @param metrics  meters the ingestion is recorded in, {@code null} records into a local registry
+     * @param mappings OBIS registers of the sensors, {@code null} uses the bundled mapping
+     */
+    public IngestionService(FileParsingService parsing, IngestionMetrics metrics, SensorMappingRegistry mappings) {
+        this.metrics = metrics != null ? metrics : new IngestionMetrics(new SimpleMeterRegistry());
+        this.parsing = parsing != null ? parsing : new FileParsingService(0, this.metrics);
+        this.metrics.bindModel(meterModel);
+        this.mappings = mappings != null ? mappings : new SensorMappingRegistry(null);
+        this.mappings.addReloadListener(this::mappingsReloaded);
+        try {
+            Files.createDirectories(Paths.get(ESL_UPLOAD_DIR));
+            Files.createDirectories(Paths.get(SDAT_UPLOAD_DIR));
+        } catch (IOException e) {
+            logger.error("Failed to create upload directories: {}", e.getMessage());
+        }
+        this.index = new IngestionIndex(Paths.get(INDEX_FILE));
+        this.index.load();
+    }
+
+    /**
+     * Replaces the model with the one of a snapshot, see {@link SnapshotService}.
+     *
+     * @return false if the snapshot was not written for the files in the index and was not used
+     */
+    public synchronized boolean restore(MeterModelSnapshot snapshot) {
+        if (snapshot.getFingerprint() != index.fingerprint()) {
+            return false;
+        }
+        restoreModel(snapshot.getModel());
+        return true;
+    }
+
+    private void restoreModel(MeterModel restored) {
+        meterModel.replaceAll(restored.getAllMetersMap());
+        modelChanged();
+        builtSegments.clear();
+        documentIndex.clear();
+        for (IngestionIndex.Entry entry : index.getEntries(IngestionIndex.FileType.SDAT)) {
+            if (!entry.getParsedSdat().isEmpty()) {
+                indexDocument(entry, documentId(entry));
+            }
+        }
+        modelDirty = false;
+    }
+
+    /**
+     * @return the fingerprint of the indexed files, see {@link IngestionIndex#fingerprint()}
+     */
+    public synchronized long fingerprint() {
+        return index.fingerprint();
+    }
+
+    /**
+     * Returns the current model without looking at the upload directories.
+     */
+    public MeterModel getMeterModel() {
+        return meterModel;
+    }
+
+    /**
+     * Synchronises the index with the upload directories and returns the resulting model. If
+     * neither directory changed since the last call, the cached model is returned right away.
+     */
+    public synchronized MeterModel refresh() throws IOException {
+        long eslModified = Files.getLastModifiedTime(Paths.get(ESL_UPLOAD_DIR)).toMillis();
+        long sdatModified = Files.getLastModifiedTime(Paths.get(SDAT_UPLOAD_DIR)).toMillis();
+        if (!modelDirty && eslModified == eslDirModified && sdatModified == sdatDirModified) {
+            logger.info("Upload directories unchanged, serving cached meter model.");
+            return meterModel;
+        }
+
+        List<File> eslFiles = listFiles(ESL_UPLOAD_DIR);
+        List<File> sdatFiles = listFiles(SDAT_UPLOAD_DIR);
+        logger.info("Found {} existing ESL files and {} existing SDAT files.", eslFiles.size(), sdatFiles.size());
+
+        boolean changed = removeMissing(eslFiles, sdatFiles);
+        changed |= ingestFiles(eslFiles, sdatFiles) > 0;
+        if (changed) {
+            index.save();
+            modelDirty = true;
+        }
+        rebuildIfDirty();
+
+        eslDirModified = eslModified;
+        sdatDirModified = sdatModified;
+        return meterModel;
+    }
+
+    /**
+     * Registers a callback that runs after meters of the model were added, changed or removed. It
+     * runs on the ingesting thread while the service is locked and must return quickly.
+     */
+    public void addModelListener(Runnable listener) {
+        modelListeners.add(listener);
+    }
+
+    private void modelChanged() {
+        for (Runnable listener : modelListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                logger.error("Model listener failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #refresh()}, but lists the upload directories even if they look unchanged.
+     */
+    public synchronized MeterModel rescan() throws IOException {
+        eslDirModified = -1;
+        sdatDirModified = -1;
+        return refresh();
+    }
+
+    /**
+     * Marks both upload directories as scanned in their current state. Called by the folder watcher,
+     * which ingests every change it sees, so {@link #refresh()} does not have to list the directories
+     * again.
+     */
+    public synchronized void directoriesSynced() throws IOException {
+        eslDirModified = Files.getLastModifiedTime(Paths.get(ESL_UPLOAD_DIR)).toMillis();
+        sdatDirModified = Files.getLastModifiedTime(Paths.get(SDAT_UPLOAD_DIR)).toMillis();
+    }
+
+    /**
+     * @return true if the file is claimed by an upload job or indexed with its current size and
+     * modification time, so it does not have to be parsed
+     */
+    public boolean isKnown(Path file) {
+        String path = file.toFile().getPath();
+        if (claimedUploads.contains(path)) {
+            return true;
+        }
+        synchronized (this) {
+            IngestionIndex.Entry entry = index.get(path);
+            File f = file.toFile();
+            return entry != null && entry.matches(f.length(), f.lastModified());
+        }
+    }
+
+    /**
+     * Reserves files saved by the upload endpoint for an upload job, see {@link #isKnown(Path)}.
+     */
+    public void claimUploads(List<Path> files) {
+        files.forEach(file -> claimedUploads.add(file.toFile().getPath()));
+    }
+
+    public void releaseUploads(List<Path> files) {
+        files.forEach(file -> claimedUploads.remove(file.toFile().getPath()));
+    }
+
+    /**
+     * Removes deleted files from the index and rebuilds the meters they contributed to.
+     */
+    public synchronized void removeFiles(List<Path> files) {
+        int removed = 0;
+        for (Path file : files) {
+            String path = file.toFile().getPath();
+            if (index.get(path) != null) {
+                index.remove(path);
+                removed++;
+            }
+        }
+        if (removed == 0) {
+            return;
+        }
+        index.save();
+        modelDirty = true;
+        logger.info("Removed {} deleted files from the ingestion index.", removed);
+        rebuildIfDirty();
+    }
+
+    /* Ergebnis eines Uploads */
+    public static class UploadResult {
+        private final int measurements;
+        private final int readings;
+        private final List<String> duplicates;
+
+        UploadResult(int measurements, int readings, List<String> duplicates) {
+            this.measurements = measurements;
+            this.readings = readings;
+            this.duplicates = duplicates;
+        }
+
+        /**
+         * @return the number of measurements contained in the SDAT files that were added
+         */
+        public int getMeasurements() {
+            return measurements;
+        }
+
+        /**
+         * @return the names of the SDAT files that were skipped because their measurements are already known
+         */
+        public List<String> getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * @return the number of register readings contained in the ESL files that were added
+         */
+        public int getReadings() {
+            return readings;
+        }
+    }
+
+    /**
+     * Adds parsed uploads to the index and publishes them into the live model. SDAT files whose
+     * measurements are already part of the model are deleted again instead of being indexed, so
+     * uploading the same period twice does not add any work or storage.
+     */
+    public UploadResult addUploads(List<IngestionIndex.Entry> entries) {
+        List<IngestionIndex.Entry> accepted = new ArrayList<>();
+        List<String> duplicates = new ArrayList<>();
+        int measurements = 0;
+        int readings = 0;
+        synchronized (this) {
+            for (IngestionIndex.Entry entry : entries) {
+                // A file that is already indexed was rewritten in place, it replaces its old content
+                // in the rebuild instead of being compared with it
+                if (entry.getType() == IngestionIndex.FileType.SDAT && index.get(entry.getPath()) == null
+                        && isDuplicateUpload(entry)) {
+                    duplicates.add(Paths.get(entry.getPath()).getFileName().toString());
+                    continue;
+                }
+                accepted.add(entry);
+                if (entry.getType() == IngestionIndex.FileType.SDAT) {
+                    measurements += entry.getParsedSdat().size();
+                } else {
+                    readings += entry.getEslReadings().size();
+                }
+            }
+
+            if (!accepted.isEmpty() && canAppend(accepted)) {
+                appendToModel(accepted);
+            } else {
+                // ESL entries first, like everywhere else
+                accepted.stream().filter(e -> e.getType() == IngestionIndex.FileType.ESL).forEach(index::put);
+                accepted.stream().filter(e -> e.getType() == IngestionIndex.FileType.SDAT).forEach(index::put);
+                if (!accepted.isEmpty()) {
+                    index.save();
+                    modelDirty = true;
+                }
+                rebuildIfDirty();
+            }
+        }
+        return new UploadResult(measurements, readings, duplicates);
+    }
+
+    private boolean isDuplicateUpload(IngestionIndex.Entry entry) {
+        SDATParser.ParsedSDAT parsed = entry.getParsedSdat();
+        // A dirty model means the document index may not match the files on disk
+        if (parsed.isEmpty() || modelDirty) {
+            return false;
+        }
+        Set<String> covering = documentIndex.findCovering(entry.getPath(), documentId(entry), parsed);
+        if (covering.isEmpty() || !covering.stream().allMatch(path -> Files.isRegularFile(Paths.get(path)))) {
+            return false;
+        }
+        logger.info("Uploaded SDAT file {} only contains measurements of {}, deleting it.", entry.getPath(), covering);
+        try {
+            Files.deleteIfExists(Paths.get(entry.getPath()));
+        } catch (IOException e) {
+            logger.warn("Could not delete duplicate upload {}: {}", entry.getPath(), e.getMessage());
+        }
+        return true;
+    }
+
+    private static List<File> listFiles(String directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(Paths.get(directory))) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private boolean removeMissing(List<File> eslFiles, List<File> sdatFiles) {
+        Set<String> present = new HashSet<>();
+        eslFiles.forEach(f -> present.add(f.getPath()));
+        sdatFiles.forEach(f -> present.add(f.getPath()));
+
+        List<String> missing = new ArrayList<>();
+        for (IngestionIndex.Entry entry : index.getEntries()) {
+            if (!present.contains(entry.getPath())) {
+                missing.add(entry.getPath());
+            }
+        }
+        missing.forEach(index::remove);
+        if (!missing.isEmpty()) {
+            logger.info("Removed {} deleted files from the ingestion index.", missing.size());
+        }
+        return !missing.isEmpty();
+    }
+
+    /**
+     * Parses all files that are not yet in the index or whose content changed. Hashing and parsing
+     * run concurrently on the parse executor, the results are put into the index in input order
+     * (ESL files first) so the outcome does not depend on thread scheduling.
+     *
+     * @return the number of index entries that were added or replaced
+     */
+    private int ingestFiles(List<File> eslFiles, List<File> sdatFiles) throws IOException {
+        List<Future<FileParsingService.ParseResult>> pending = new ArrayList<>();
+        submitChanged(eslFiles, IngestionIndex.FileType.ESL, pending);
+        submitChanged(sdatFiles, IngestionIndex.FileType.SDAT, pending);
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        int parsedEsl = 0;
+        int parsedSdat = 0;
+        try {
+            for (Future<FileParsingService.ParseResult> future : pending) {
+                FileParsingService.ParseResult result = future.get();
+                index.put(result.entry());
+                if (result.parsed() && result.entry().getType() == IngestionIndex.FileType.ESL) {
+                    parsedEsl++;
+                } else if (result.parsed()) {
+                    parsedSdat++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.forEach(f -> f.cancel(true));
+            throw new IOException("Interrupted while parsing files", e);
+        } catch (ExecutionException e) {
+            pending.forEach(f -> f.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Failed to parse file: " + cause.getMessage(), cause);
+        }
+        logger.info("Parsed {} new or changed ESL files and {} SDAT files.", parsedEsl, parsedSdat);
+        return pending.size();
+    }
+
+    private void submitChanged(List<File> files, IngestionIndex.FileType type, List<Future<FileParsingService.ParseResult>> pending) {
+        for (File file : files) {
+            IngestionIndex.Entry cached = index.get(file.getPath());
+            if (cached != null && cached.getType() == type && cached.matches(file.length(), file.lastModified())) {
+                continue;
+            }
+            pending.add(parsing.submitFile(file, type, cached));
+        }
+    }
+
+    /**
+     * New SDAT files can be merged into the live model directly if a full rebuild would apply them
+     * last anyway: no ESL file changes, the model is up to date, every new path sorts after all
+     * indexed SDAT files (uploads are prefixed with a timestamp, so this is the normal case) and no
+     * file has a different resolution than the meter it belongs to.
+     */
+    private boolean canAppend(List<IngestionIndex.Entry> entries) {
+        if (modelDirty) {
+            return false;
+        }
+        List<IngestionIndex.Entry> indexed = index.getEntries(IngestionIndex.FileType.SDAT);
+        String lastPath = indexed.isEmpty() ? null : indexed.get(indexed.size() - 1).getPath();
+        for (IngestionIndex.Entry entry : entries) {
+            if (entry.getType() != IngestionIndex.FileType.SDAT || index.get(entry.getPath()) != null) {
+                return false;
+            }
+            if (lastPath != null && entry.getPath().compareTo(lastPath) <= 0) {
+                return false;
+            }
+            MeterData meter = entry.getParsedSdat().isEmpty() ? null : meterModel.getMeterData(documentId(entry));
+            if (meter != null && meter.getCoverage().getStep() != entry.getParsedSdat().getStep()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendToModel(List<IngestionIndex.Entry> entries) {
+        long start = System.nanoTime();
+        List<IngestionIndex.Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(IngestionIndex.Entry::getPath));
+        sorted.forEach(index::put);
+        index.save();
+
+        updateReadings(index.getEntries(IngestionIndex.FileType.ESL));
+        for (IngestionIndex.Entry entry : sorted) {
+            if (entry.getParsedSdat().isEmpty()) {
+                continue;
+            }
+            String sensorId = documentId(entry);
+            if (!indexDocument(entry, sensorId)) {
+                continue;
+            }
+            ReconciledSegment segment = reconcile(entry, sensorId);
+            boolean newMeter = meterModel.getMeterData(sensorId) == null;
+            meterModel.getOrCreateMeterData(sensorId, entry.getParsedSdat().getStep())
+                    .putAll(segment.getKeys(), segment.getRelatives(), segment.getAbsolutes(), segment.size());
+            // Meters restored from a snapshot have no segment list and are rebuilt on the next rebuild
+            if (newMeter) {
+                builtSegments.put(sensorId, new ArrayList<>(List.of(segment)));
+            } else {
+                builtSegments.computeIfPresent(sensorId, (id, segments) -> {
+                    segments.add(segment);
+                    return segments;
+                });
+            }
+        }
+        modelChanged();
+        metrics.recordMerge("append", System.nanoTime() - start);
+        logger.info("Appended {} uploaded SDAT files to the meter model.", sorted.size());
+    }
+
+    private void rebuildIfDirty() {
+        if (!modelDirty) {
+            return;
+        }
+        long start = System.nanoTime();
+        meterModel.replaceAll(buildMeters(index.getEntries(IngestionIndex.FileType.ESL), index.getEntries(IngestionIndex.FileType.SDAT)));
+        metrics.recordMerge("rebuild", System.nanoTime() - start);
+        modelDirty = false;
+        modelChanged();
+        logger.info("Rebuilt meter model from {} indexed files. Total measurements: {}", index.size(),
+                meterModel.getAllMeterData().stream().mapToInt(MeterData::size).sum());
+    }
+
+    /**
+     * Builds the meters from the cached parse results. Every SDAT file is reconciled with the ESL
+     * readings; files whose result is unchanged come from the reconciliation cache, and a meter is
+     * only built again if at least one of its files changed. Meters are independent of each other
+     * and are built in parallel; each one is filled with a single write, so it is only published once.
+     */
+    private Map<String, MeterData> buildMeters(List<IngestionIndex.Entry> eslEntries, List<IngestionIndex.Entry> sdatEntries) {
+        if (eslEntries.isEmpty()) {
+            logger.warn("No ESL files available for processing.");
+        }
+        updateReadings(eslEntries);
+        reconciliation.retainAll(sdatEntries.stream().map(IngestionIndex.Entry::getPath).collect(Collectors.toSet()));
+
+        documentIndex.clear();
+        Map<String, List<IngestionIndex.Entry>> entriesBySensor = new LinkedHashMap<>();
+        for (IngestionIndex.Entry entry : sdatEntries) {
+            if (entry.getParsedSdat().isEmpty()) {
+                continue;
+            }
+            String sensorId = documentId(entry);
+            if (indexDocument(entry, sensorId)) {
+                entriesBySensor.computeIfAbsent(sensorId, id -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        Map<String, MeterData> meters = new ConcurrentHashMap<>();
+        Map<String, List<ReconciledSegment>> segmentsBySensor = new ConcurrentHashMap<>();
+        entriesBySensor.entrySet().parallelStream().forEach(sensor -> {
+            String sensorId = sensor.getKey();
+            List<ReconciledSegment> segments = new ArrayList<>(sensor.getValue().size());
+            for (IngestionIndex.Entry entry : sensor.getValue()) {
+                segments.add(reconcile(entry, sensorId));
+            }
+            long step = meterStep(sensorId, sensor.getValue());
+            MeterData current = meterModel.getMeterData(sensorId);
+            meters.put(sensorId, current != null && current.getCoverage().getStep() == step
+                    && sameSegments(builtSegments.get(sensorId), segments) ? current : buildMeter(sensorId, step, segments));
+            segmentsBySensor.put(sensorId, segments);
+        });
+        long rebuilt = meters.entrySet().stream().filter(m -> m.getValue() != meterModel.getMeterData(m.getKey())).count();
+        logger.info("Reconciled {} meters, {} of them changed.", meters.size(), rebuilt);
+
+        builtSegments.clear();
+        builtSegments.putAll(segmentsBySensor);
+        return meters;
+    }
+
+    private static boolean sameSegments(List<ReconciledSegment> previous, List<ReconciledSegment> segments) {
+        if (previous == null || previous.size() != segments.size()) {
+            return false;
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            if (previous.get(i) != segments.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The finest resolution of the files of a meter; with mixed resolutions the coarser intervals
+    // only count as covered for their first step
+    private static long meterStep(String sensorId, List<IngestionIndex.Entry> entries) {
+        long step = Long.MAX_VALUE;
+        for (IngestionIndex.Entry entry : entries) {
+            step = Math.min(step, entry.getParsedSdat().getStep());
+        }
+        if (entries.stream().anyMatch(entry -> entry.getParsedSdat().getStep() != entries.get(0).getParsedSdat().getStep())) {
+            logger.warn("SDAT files of {} have different resolutions, using the finest one for the gap index.", sensorId);
+        }
+        return step;
+    }
+
+    // Concatenates the segments of one sensor in path order, so later files overwrite earlier ones
+    private static MeterData buildMeter(String sensorId, long step, List<ReconciledSegment> segments) {
+        int count = 0;
+        for (ReconciledSegment segment : segments) {
+            count += segment.size();
+        }
+
+        long[] keys = new long[count];
+        double[] relatives = new double[count];
+        double[] absolutes = new double[count];
+        int offset = 0;
+        for (ReconciledSegment segment : segments) {
+            int length = segment.size();
+            System.arraycopy(segment.getKeys(), 0, keys, offset, length);
+            System.arraycopy(segment.getRelatives(), 0, relatives, offset, length);
+            System.arraycopy(segment.getAbsolutes(), 0, absolutes, offset, length);
+            offset += length;
+        }
+
+        MeterData meter = new MeterData(sensorId, step);
+        meter.putAll(keys, relatives, absolutes, count);
+        return meter;
+    }
+
+    /**
+     * Adds an SDAT file to the document index unless its measurements are already covered by the
+     * files before it (a copy of an earlier upload, or a period that was uploaded in other files).
+     *
+     * @return false if the file adds nothing to the model and can be skipped
+     */
+    private boolean indexDocument(IngestionIndex.Entry entry, String sensorId) {
+        SDATParser.ParsedSDAT parsed = entry.getParsedSdat();
+        Set<String> covering = documentIndex.findCovering(entry.getPath(), sensorId, parsed);
+        if (!covering.isEmpty()) {
+            logger.info("SDAT file {} only contains measurements of {}, skipping it.", entry.getPath(), covering);
+            return false;
+        }
+        documentIndex.add(entry.getPath(), sensorId, parsed);
+        return true;
+    }
+
+    // Indexes the readings of all ESL files in path order (later files win)
+    private void updateReadings(List<IngestionIndex.Entry> eslEntries) {
+        EslReadingIndex readings = new EslReadingIndex();
+        for (IngestionIndex.Entry entry : eslEntries) {
+            readings.addAll(entry.getEslReadings());
+        }
+        int invalidated = reconciliation.updateReadings(readings);
+        if (invalidated > 0) {
+            logger.info("ESL readings changed, {} SDAT files have to be reconciled again.", invalidated);
+        }
+    }
+
+    static String documentId(IngestionIndex.Entry entry) {
+        String documentId = entry.getParsedSdat().getDocumentId();
+        if (documentId == null || documentId.trim().isEmpty()) {
+            // Derived from the content, so the file keeps its meter across rebuilds, restarts and snapshots
+            documentId = "unknown_sensor_" + entry.getContentHash().substring(0, Math.min(12, entry.getContentHash().length()));
+        }
+        return documentId;
+    }
+
+    private ReconciledSegment reconcile(IngestionIndex.Entry entry, String documentId) {
+        SensorMapping mapping = mappings.find(documentId);
+        if (mapping == null) {
+            logger.warn("No sensor mapping for DocumentID '{}' of SDAT file {}. Using fallback OBIS codes.", documentId,
+                    Paths.get(entry.getPath()).getFileName());
+            mapping = mappings.getFallback();
+        }
+        // Segments are cached together with their registers, a changed mapping reconciles the file again
+        return reconciliation.reconcile(entry.getPath(), entry.getContentHash(), documentId, mapping.getMeter(),
+                mapping.getObis1(), mapping.getObis2(), entry.getParsedSdat().getKeys(), entry.getParsedSdat().getRelatives());
+    }
+
+    // The registers of some sensors may have changed, every file is reconciled with the new mapping
+    private void mappingsReloaded() {
+        synchronized (this) {
+            modelDirty = true;
+        }
+        try {
+            refresh();
+        } catch (IOException e) {
+            logger.error("Failed to rebuild the meter model after reloading the sensor mapping: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ch.bzz.backend.service;
+
+import java.nio.file.Path;
+
+/* Hochgeladene Datei, die bereits gespeichert und gehasht wurde */
+public class SavedUpload {
+    private final Path path;
+    private final IngestionIndex.FileType type;
+    private final String contentHash;
+
+    public SavedUpload(Path path, IngestionIndex.FileType type, String contentHash) {
+        this.path = path;
+        this.type = type;
+        this.contentHash = contentHash;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public IngestionIndex.FileType getType() {
+        return type;
+    }
+
+    /**
+     * @return the SHA-256 hash of the saved content, computed while it was written
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+}
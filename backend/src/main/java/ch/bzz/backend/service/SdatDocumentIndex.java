@@ -0,0 +1,166 @@
+package ch.bzz.backend.service;
+
+import ch.bzz.backend.parser.SDATParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Interval index over the SDAT documents that make up the model: per sensor, the documents are
+ * kept sorted by the start of the period they cover, and all documents are additionally indexed
+ * by a hash of their measurements. It answers whether a document adds anything to the model:
+ * an exact copy is found by its hash, a document whose period is covered by other documents with
+ * the same values is found through the overlapping intervals.
+ */
+public class SdatDocumentIndex {
+
+    /* Ein SDAT-Dokument mit dem Zeitraum, den es abdeckt */
+    private static final class Document {
+        private final String path;
+        private final String sensorId;
+        private final int sequence; // order in which the documents were added, later ones win
+        private final long[] keys;  // shared with the parse result
+        private final double[] relatives;
+        private final boolean sorted;
+        private final long from;
+        private final long to;
+
+        Document(String path, String sensorId, int sequence, SDATParser.ParsedSDAT parsed) {
+            this.path = path;
+            this.sensorId = sensorId;
+            this.sequence = sequence;
+            this.keys = parsed.getKeys();
+            this.relatives = parsed.getRelatives();
+            boolean sorted = true;
+            for (int i = 1; i < keys.length && sorted; i++) {
+                sorted = keys[i] > keys[i - 1];
+            }
+            this.sorted = sorted;
+            this.from = Arrays.stream(keys).min().orElse(0);
+            this.to = Arrays.stream(keys).max().orElse(0);
+        }
+
+        // Index of the measurement at key, or -1 if there is none or the keys are not in time order
+        int indexOf(long key) {
+            if (!sorted || key < from || key > to) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? index : -1;
+        }
+
+        boolean sameValues(long[] otherKeys, double[] otherRelatives) {
+            return Arrays.equals(keys, otherKeys) && Arrays.equals(relatives, otherRelatives);
+        }
+    }
+
+    private final Map<String, TreeMap<Long, List<Document>>> documentsBySensor = new HashMap<>();
+    private final Map<String, Long> longestSpanBySensor = new HashMap<>();
+    private final Map<Integer, List<Document>> documentsByHash = new HashMap<>();
+    private int nextSequence;
+
+    public void add(String path, String sensorId, SDATParser.ParsedSDAT parsed) {
+        if (parsed.isEmpty()) {
+            return;
+        }
+        Document document = new Document(path, sensorId, nextSequence++, parsed);
+        documentsBySensor.computeIfAbsent(sensorId, id -> new TreeMap<>())
+                .computeIfAbsent(document.from, from -> new ArrayList<>()).add(document);
+        longestSpanBySensor.merge(sensorId, document.to - document.from, Math::max);
+        documentsByHash.computeIfAbsent(hash(parsed.getKeys(), parsed.getRelatives()), hash -> new ArrayList<>()).add(document);
+    }
+
+    public void clear() {
+        documentsBySensor.clear();
+        longestSpanBySensor.clear();
+        documentsByHash.clear();
+        nextSequence = 0;
+    }
+
+    /**
+     * Checks whether the measurements of a document for {@code sensorId} are already in the model:
+     * either another document has exactly the same measurements, or every measurement is also the
+     * latest value of an overlapping document. The document at {@code path} itself is left out, so
+     * a file that is read again after it was rewritten in place is never covered by its old content.
+     *
+     * @return the paths of the documents that already contain the measurements, or an empty set if
+     * the document adds or changes at least one value
+     */
+    public Set<String> findCovering(String path, String sensorId, SDATParser.ParsedSDAT parsed) {
+        if (parsed.isEmpty()) {
+            return Set.of();
+        }
+        long[] keys = parsed.getKeys();
+        double[] relatives = parsed.getRelatives();
+        List<Document> overlapping = overlapping(sensorId, keys);
+        if (!overlapping.isEmpty()) {
+            overlapping.removeIf(document -> document.path.equals(path));
+        }
+        if (overlapping.isEmpty()) {
+            return Set.of();
+        }
+        // An exact copy covers everything, unless a later document overwrote part of it
+        for (Document document : documentsByHash.getOrDefault(hash(keys, relatives), List.of())) {
+            if (document.sensorId.equals(sensorId) && document.sameValues(keys, relatives) && overlapping.get(0) == document) {
+                return Set.of(document.path);
+            }
+        }
+
+        Set<String> covering = new LinkedHashSet<>();
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            Document latest = null;
+            int index = -1;
+            for (Document document : overlapping) {
+                index = document.indexOf(key);
+                if (index >= 0) {
+                    latest = document;
+                    break;
+                }
+            }
+            // NaN marks a missing value on both sides, so the bits are compared
+            if (latest == null || Double.doubleToLongBits(latest.relatives[index]) != Double.doubleToLongBits(relatives[i])) {
+                return Set.of();
+            }
+            covering.add(latest.path);
+        }
+        return covering;
+    }
+
+    private static int hash(long[] keys, double[] relatives) {
+        return 31 * Arrays.hashCode(keys) + Arrays.hashCode(relatives);
+    }
+
+    // Documents of the sensor whose period intersects the one of keys, latest first
+    private List<Document> overlapping(String sensorId, long[] keys) {
+        TreeMap<Long, List<Document>> documents = documentsBySensor.get(sensorId);
+        if (documents == null) {
+            return List.of();
+        }
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        for (long key : keys) {
+            from = Math.min(from, key);
+            to = Math.max(to, key);
+        }
+        // No document is longer than the longest span, so earlier starts cannot reach from
+        long earliestStart = from - longestSpanBySensor.get(sensorId);
+        List<Document> result = new ArrayList<>();
+        for (List<Document> starting : documents.subMap(earliestStart, true, to, true).values()) {
+            for (Document document : starting) {
+                if (document.to >= from) {
+                    result.add(document);
+                }
+            }
+        }
+        result.sort(Comparator.comparingInt((Document document) -> document.sequence).reversed());
+        return result;
+    }
+}
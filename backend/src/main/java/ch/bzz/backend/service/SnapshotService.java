@@ -0,0 +1,111 @@
+package ch.bzz.backend.service;
+
+import ch.bzz.backend.metrics.IngestionMetrics;
+import ch.bzz.backend.model.MeterModel;
+import ch.bzz.backend.snapshot.MeterModelSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Persists the live {@link MeterModel} as a {@link MeterModelSnapshot}. At startup the model is
+ * restored from the snapshot if it was written for the files in the ingestion index, before the
+ * upload directories are loaded; afterwards the snapshot is written again whenever the model changed.
+ */
+@Service
+public class SnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotService.class);
+
+    private static final String SNAPSHOT_FILE = IngestionService.UPLOAD_DIR_BASE + "meter-model.snapshot";
+
+    private final IngestionService ingestionService;
+    private final IngestionMetrics metrics;
+    private final Path snapshotFile = Paths.get(SNAPSHOT_FILE);
+    private volatile long writtenVersion = -1; // model version the snapshot on disk was written from
+
+    /**
+     * @param metrics meters the snapshot writes are recorded in, {@code null} records into a local registry
+     */
+    public SnapshotService(IngestionService ingestionService, IngestionMetrics metrics) {
+        this.ingestionService = ingestionService;
+        this.metrics = metrics != null ? metrics : new IngestionMetrics(new SimpleMeterRegistry());
+    }
+
+    /**
+     * Loads the existing uploads once at startup, so query endpoints do not depend on a prior
+     * call to /load-existing. If the snapshot on disk was written for the current set of files, the
+     * model is restored from it instead of being merged again. Runs before the other startup
+     * listeners, e.g. the folder watcher.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void loadOnStartup() {
+        restoreSnapshot();
+        try {
+            ingestionService.refresh();
+        } catch (IOException e) {
+            logger.error("Failed to load existing files on startup: {}", e.getMessage());
+        }
+    }
+
+    private void restoreSnapshot() {
+        if (!Files.isRegularFile(snapshotFile)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            MeterModelSnapshot snapshot = MeterModelSnapshot.read(snapshotFile);
+            if (!ingestionService.restore(snapshot)) {
+                logger.info("Meter model snapshot is outdated, the model will be rebuilt.");
+                return;
+            }
+            MeterModel model = ingestionService.getMeterModel();
+            writtenVersion = model.getVersion();
+            logger.info("Restored meter model with {} meters from snapshot in {} ms.",
+                    model.getAllMeterData().size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            logger.warn("Could not read meter model snapshot {}: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the current model to the snapshot file if it changed since the last snapshot.
+     */
+    @Scheduled(fixedDelayString = "${wattwise.snapshot.interval-ms:60000}")
+    public synchronized void writeSnapshotIfDirty() {
+        MeterModel model = ingestionService.getMeterModel();
+        // Read before the fingerprint: a change in between is written again on the next run
+        long version = model.getVersion();
+        if (version == writtenVersion) {
+            return;
+        }
+        long fingerprint = ingestionService.fingerprint();
+        long start = System.nanoTime();
+        try {
+            MeterModelSnapshot.write(model, fingerprint, snapshotFile);
+            writtenVersion = version;
+            metrics.recordSerialize("snapshot", System.nanoTime() - start);
+            logger.info("Wrote meter model snapshot in {} ms.", (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            logger.error("Failed to write meter model snapshot: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writeSnapshotIfDirty();
+    }
+}
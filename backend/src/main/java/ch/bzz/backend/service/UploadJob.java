@@ -0,0 +1,107 @@
+package ch.bzz.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Status eines asynchron verarbeiteten Uploads */
+public class UploadJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final int totalFiles;
+    private final LocalDateTime createdAt;
+    private final AtomicInteger filesParsed = new AtomicInteger();
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+    private final List<String> duplicates = new CopyOnWriteArrayList<>(); // skipped, already known files
+    private volatile Status status = Status.QUEUED;
+    private volatile int measurementsMerged;
+    private volatile int readingsMerged; // ESL register readings
+    private volatile LocalDateTime finishedAt;
+
+    UploadJob(String id, int totalFiles) {
+        this.id = id;
+        this.totalFiles = totalFiles;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    void start() {
+        status = Status.RUNNING;
+    }
+
+    void fileParsed() {
+        filesParsed.incrementAndGet();
+    }
+
+    void addError(String error) {
+        errors.add(error);
+    }
+
+    void addDuplicate(String fileName) {
+        duplicates.add(fileName);
+    }
+
+    void complete(int measurementsMerged, int readingsMerged) {
+        this.measurementsMerged = measurementsMerged;
+        this.readingsMerged = readingsMerged;
+        finish(Status.COMPLETED);
+    }
+
+    void fail(String error) {
+        errors.add(error);
+        finish(Status.FAILED);
+    }
+
+    private void finish(Status status) {
+        this.finishedAt = LocalDateTime.now();
+        this.status = status;
+    }
+
+    boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    public int getFilesParsed() {
+        return filesParsed.get();
+    }
+
+    public int getMeasurementsMerged() {
+        return measurementsMerged;
+    }
+
+    public int getReadingsMerged() {
+        return readingsMerged;
+    }
+
+    public List<String> getErrors() {
+        return List.copyOf(errors);
+    }
+
+    public List<String> getDuplicates() {
+        return List.copyOf(duplicates);
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+}
@@ -0,0 +1,144 @@
+package ch.bzz.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes uploads in the background. The request only saves the files and gets a job id back,
+ * parsing runs on the executor of the {@link FileParsingService} and the results are published into the
+ * shared meter model. Jobs wait in a bounded queue; when it is full, new uploads are rejected
+ * instead of piling up.
+ */
+@Service
+public class UploadJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadJobService.class);
+
+    private final IngestionService ingestionService;
+    private final FileParsingService parsing;
+    private final ThreadPoolExecutor jobExecutor;
+    private final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+    private final long retentionMinutes;
+
+    /**
+     * @param threads          number of jobs processed at the same time
+     * @param queueCapacity    number of jobs that may wait before uploads are rejected
+     * @param retentionMinutes how long finished jobs can still be queried
+     */
+    public UploadJobService(IngestionService ingestionService, FileParsingService parsing,
+                            @Value("${wattwise.jobs.threads:2}") int threads,
+                            @Value("${wattwise.jobs.queue-capacity:16}") int queueCapacity,
+                            @Value("${wattwise.jobs.retention-minutes:60}") long retentionMinutes) {
+        this.ingestionService = ingestionService;
+        this.parsing = parsing;
+        this.retentionMinutes = retentionMinutes;
+        this.jobExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), Thread.ofPlatform().name("upload-job-", 0).factory());
+    }
+
+    /**
+     * Queues a job for files that were already saved to the upload directories and hashed while
+     * they were written.
+     *
+     * @throws RejectedExecutionException if too many jobs are waiting
+     */
+    public UploadJob submit(List<SavedUpload> uploads) {
+        removeExpiredJobs();
+        UploadJob job = new UploadJob(UUID.randomUUID().toString(), uploads.size());
+        jobs.put(job.getId(), job);
+        List<Path> files = uploads.stream().map(SavedUpload::getPath).toList();
+        ingestionService.claimUploads(files);
+        try {
+            jobExecutor.execute(() -> run(job, uploads, files));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            ingestionService.releaseUploads(files);
+            throw e;
+        }
+        logger.info("Queued upload job {} with {} files.", job.getId(), job.getTotalFiles());
+        return job;
+    }
+
+    /**
+     * @return the job with the given id, or {@code null} if it does not exist (anymore)
+     */
+    public UploadJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    private void run(UploadJob job, List<SavedUpload> uploads, List<Path> files) {
+        job.start();
+        try {
+            List<Future<IngestionIndex.Entry>> pending = new ArrayList<>();
+            for (SavedUpload upload : uploads) {
+                pending.add(parsing.submitUpload(upload));
+            }
+
+            List<IngestionIndex.Entry> entries = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                String fileName = files.get(i).getFileName().toString();
+                try {
+                    IngestionIndex.Entry entry = pending.get(i).get();
+                    entries.add(entry);
+                    if (entry.getType() == IngestionIndex.FileType.SDAT && entry.getParsedSdat().isEmpty()) {
+                        job.addError(fileName + ": Keine gültigen Messdaten gefunden.");
+                    } else if (entry.getType() == IngestionIndex.FileType.ESL && entry.getEslReadings().isEmpty()) {
+                        job.addError(fileName + ": Keine gültigen Zählerstände gefunden.");
+                    }
+                } catch (ExecutionException e) {
+                    logger.error("Upload job {}: failed to process {}: {}", job.getId(), fileName, e.getCause().getMessage());
+                    job.addError(fileName + ": Datei konnte nicht verarbeitet werden.");
+                }
+                job.fileParsed();
+            }
+
+            IngestionService.UploadResult result = ingestionService.addUploads(entries);
+            result.getDuplicates().forEach(job::addDuplicate);
+            int measurements = result.getMeasurements();
+            // An upload of ESL files only re-anchors the absolute values, that is data as well
+            if (measurements == 0 && result.getReadings() == 0 && result.getDuplicates().isEmpty()) {
+                logger.warn("Upload job {}: no meter data was processed from the provided files.", job.getId());
+                job.fail("Es konnten keine gültigen Messdaten aus den bereitgestellten Dateien extrahiert werden.");
+                return;
+            }
+            job.complete(measurements, result.getReadings());
+            logger.info("Upload job {} finished, merged {} measurements and {} readings, skipped {} duplicate files.",
+                    job.getId(), measurements, result.getReadings(), result.getDuplicates().size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Die Verarbeitung wurde abgebrochen.");
+        } catch (Exception e) {
+            logger.error("Upload job {} failed: {}", job.getId(), e.getMessage(), e);
+            job.fail("Ein unerwarteter Fehler ist bei der Dateiverarbeitung aufgetreten.");
+        } finally {
+            ingestionService.releaseUploads(files);
+        }
+    }
+
+    private void removeExpiredJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+}
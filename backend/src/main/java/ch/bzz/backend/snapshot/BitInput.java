@@ -0,0 +1,40 @@
+package ch.bzz.backend.snapshot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads bits written by {@link BitOutput} from a (possibly memory mapped) buffer, starting at a
+ * byte offset. The buffer itself is not modified, so several readers can share it.
+ */
+class BitInput {
+
+    private final ByteBuffer buffer;
+    private final int startByte;
+    private long bitPosition;
+
+    BitInput(ByteBuffer buffer, int startByte) {
+        this.buffer = buffer;
+        this.startByte = startByte;
+    }
+
+    boolean readBit() {
+        return readBits(1) != 0;
+    }
+
+    /**
+     * Reads {@code count} bits (1 to 64) as an unsigned value.
+     */
+    long readBits(int count) {
+        long value = 0;
+        for (int remaining = count; remaining > 0; ) {
+            int current = buffer.get(startByte + (int) (bitPosition >>> 3)) & 0xFF;
+            int availableInByte = 8 - (int) (bitPosition & 7);
+            int take = Math.min(availableInByte, remaining);
+            int bits = (current >>> (availableInByte - take)) & ((1 << take) - 1);
+            value = (value << take) | bits;
+            bitPosition += take;
+            remaining -= take;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,52 @@
+package ch.bzz.backend.snapshot;
+
+import java.util.Arrays;
+
+/**
+ * Growable bit buffer, bits are written most significant first.
+ */
+class BitOutput {
+
+    private byte[] buffer;
+    private long bitPosition;
+
+    BitOutput(int initialBytes) {
+        this.buffer = new byte[Math.max(16, initialBytes)];
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1L : 0L, 1);
+    }
+
+    /**
+     * Writes the lowest {@code count} bits of {@code value} (1 to 64).
+     */
+    void writeBits(long value, int count) {
+        ensureCapacity(bitPosition + count);
+        for (int remaining = count; remaining > 0; ) {
+            int byteIndex = (int) (bitPosition >>> 3);
+            int freeInByte = 8 - (int) (bitPosition & 7);
+            int take = Math.min(freeInByte, remaining);
+            int shift = remaining - take;
+            int bits = (int) ((value >>> shift) & ((1L << take) - 1));
+            buffer[byteIndex] |= (byte) (bits << (freeInByte - take));
+            bitPosition += take;
+            remaining -= take;
+        }
+    }
+
+    private void ensureCapacity(long bits) {
+        long bytes = (bits + 7) >>> 3;
+        if (bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, (int) Math.max(bytes, (long) buffer.length * 2));
+        }
+    }
+
+    int byteLength() {
+        return (int) ((bitPosition + 7) >>> 3);
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+}
@@ -0,0 +1,159 @@
+package ch.bzz.backend.snapshot;
+
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.MeterModel;
+import ch.bzz.backend.model.TimeSeries;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact binary snapshot of a {@link MeterModel}.
+ *
+ * <pre>
+ * int    magic "WWSN"
+ * int    format version
+ * long   fingerprint of the ingested files the model was built from
+ * int    number of meters
+ * per meter:
+ *   short + bytes  sensorId (UTF-8)
+ *   long           interval length (step of the coverage)
+ *   int            number of measurements
+ *   int x 3        byte length of the timestamp, relative and absolute blocks
+ *   bytes x 3      the blocks, encoded with {@link TimeSeriesCodec}
+ * </pre>
+ * <p>
+ * Snapshots are read through a memory mapped buffer, so loading does not copy the file into the heap first.
+ */
+public class MeterModelSnapshot {
+
+    private static final int MAGIC = 0x5757534E; // "WWSN"
+    private static final int VERSION = 3; // 2: absolute values reconciled with all ESL readings, 3: step per meter
+
+    private final MeterModel model;
+    private final long fingerprint;
+
+    private MeterModelSnapshot(MeterModel model, long fingerprint) {
+        this.model = model;
+        this.fingerprint = fingerprint;
+    }
+
+    public MeterModel getModel() {
+        return model;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Writes the model to {@code file}. The file is written next to the target first and then moved
+     * into place, so a snapshot on disk is always complete.
+     */
+    public static void write(MeterModel model, long fingerprint, Path file) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(model.getAllMeterData().size());
+            for (MeterData meter : model.getAllMeterData()) {
+                writeMeter(meter, out);
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeMeter(MeterData meter, DataOutputStream out) throws IOException {
+        TimeSeries series = meter.getSeries();
+        int count = series.size();
+        long[] keys = new long[count];
+        double[] relatives = new double[count];
+        double[] absolutes = new double[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = series.keyAt(i);
+            relatives[i] = series.relativeAt(i);
+            absolutes[i] = series.absoluteAt(i);
+        }
+
+        BitOutput timestampBlock = new BitOutput(count / 8 + 16);
+        TimeSeriesCodec.encodeTimestamps(keys, count, timestampBlock);
+        BitOutput relativeBlock = new BitOutput(count * 2);
+        TimeSeriesCodec.encodeValues(relatives, count, relativeBlock);
+        BitOutput absoluteBlock = new BitOutput(count * 2);
+        TimeSeriesCodec.encodeValues(absolutes, count, absoluteBlock);
+
+        byte[] sensorId = meter.getSensorId().getBytes(StandardCharsets.UTF_8);
+        out.writeShort(sensorId.length);
+        out.write(sensorId);
+        out.writeLong(meter.getCoverage().getStep());
+        out.writeInt(count);
+        out.writeInt(timestampBlock.byteLength());
+        out.writeInt(relativeBlock.byteLength());
+        out.writeInt(absoluteBlock.byteLength());
+        out.write(timestampBlock.buffer(), 0, timestampBlock.byteLength());
+        out.write(relativeBlock.buffer(), 0, relativeBlock.byteLength());
+        out.write(absoluteBlock.buffer(), 0, absoluteBlock.byteLength());
+    }
+
+    /**
+     * Reads a snapshot by memory mapping the file.
+     *
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static MeterModelSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+    }
+
+    static MeterModelSnapshot read(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a meter model snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long fingerprint = buffer.getLong();
+            int meterCount = buffer.getInt();
+
+            MeterModel model = new MeterModel();
+            for (int m = 0; m < meterCount; m++) {
+                byte[] sensorIdBytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(sensorIdBytes);
+                String sensorId = new String(sensorIdBytes, StandardCharsets.UTF_8);
+                long step = buffer.getLong();
+                int count = buffer.getInt();
+                int timestampBytes = buffer.getInt();
+                int relativeBytes = buffer.getInt();
+                int absoluteBytes = buffer.getInt();
+                int offset = buffer.position();
+
+                long[] keys = new long[count];
+                double[] relatives = new double[count];
+                double[] absolutes = new double[count];
+                TimeSeriesCodec.decodeTimestamps(new BitInput(buffer, offset), keys, count);
+                TimeSeriesCodec.decodeValues(new BitInput(buffer, offset + timestampBytes), relatives, count);
+                TimeSeriesCodec.decodeValues(new BitInput(buffer, offset + timestampBytes + relativeBytes), absolutes, count);
+                buffer.position(offset + timestampBytes + relativeBytes + absoluteBytes);
+
+                model.getOrCreateMeterData(sensorId, step).putAll(keys, relatives, absolutes, count);
+            }
+            return new MeterModelSnapshot(model, fingerprint);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt meter model snapshot: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ch.bzz.backend.snapshot;
+
+/**
+ * Compression of time series columns as described in Facebook's Gorilla paper: timestamps are
+ * stored as delta-of-delta, which costs a single bit for every regular 15 minute step, and doubles
+ * are XORed with their predecessor so that repeated or similar values only store the changed bits.
+ */
+class TimeSeriesCodec {
+
+    private TimeSeriesCodec() {
+    }
+
+    static void encodeTimestamps(long[] keys, int count, BitOutput out) {
+        if (count == 0) {
+            return;
+        }
+        out.writeBits(keys[0], 64);
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = keys[i] - keys[i - 1];
+            long zigzag = zigzag(delta - previousDelta);
+            if (zigzag == 0) {
+                out.writeBit(false);
+            } else if (zigzag < (1L << 8)) {
+                out.writeBits(0b10, 2);
+                out.writeBits(zigzag, 8);
+            } else if (zigzag < (1L << 16)) {
+                out.writeBits(0b110, 3);
+                out.writeBits(zigzag, 16);
+            } else if (zigzag < (1L << 32)) {
+                out.writeBits(0b1110, 4);
+                out.writeBits(zigzag, 32);
+            } else {
+                out.writeBits(0b1111, 4);
+                out.writeBits(zigzag, 64);
+            }
+            previousDelta = delta;
+        }
+    }
+
+    static void decodeTimestamps(BitInput in, long[] keys, int count) {
+        if (count == 0) {
+            return;
+        }
+        keys[0] = in.readBits(64);
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long zigzag;
+            if (!in.readBit()) {
+                zigzag = 0;
+            } else if (!in.readBit()) {
+                zigzag = in.readBits(8);
+            } else if (!in.readBit()) {
+                zigzag = in.readBits(16);
+            } else if (!in.readBit()) {
+                zigzag = in.readBits(32);
+            } else {
+                zigzag = in.readBits(64);
+            }
+            long delta = previousDelta + unzigzag(zigzag);
+            keys[i] = keys[i - 1] + delta;
+            previousDelta = delta;
+        }
+    }
+
+    static void encodeValues(double[] values, int count, BitOutput out) {
+        if (count == 0) {
+            return;
+        }
+        long previous = Double.doubleToRawLongBits(values[0]);
+        out.writeBits(previous, 64);
+        int previousLeading = Integer.MAX_VALUE;
+        int previousTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long current = Double.doubleToRawLongBits(values[i]);
+            long xor = current ^ previous;
+            if (xor == 0) {
+                out.writeBit(false);
+            } else {
+                out.writeBit(true);
+                int leading = Long.numberOfLeadingZeros(xor);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading != Integer.MAX_VALUE && leading >= previousLeading && trailing >= previousTrailing) {
+                    // Fits into the window of the previous value, only the window is stored
+                    out.writeBit(false);
+                    out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    out.writeBit(true);
+                    out.writeBits(leading, 6);
+                    out.writeBits(meaningful - 1, 6);
+                    out.writeBits(xor >>> trailing, meaningful);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previous = current;
+        }
+    }
+
+    static void decodeValues(BitInput in, double[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        long previous = in.readBits(64);
+        values[0] = Double.longBitsToDouble(previous);
+        int previousLeading = 0;
+        int previousTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (in.readBit()) {
+                long xor;
+                if (!in.readBit()) {
+                    xor = in.readBits(64 - previousLeading - previousTrailing) << previousTrailing;
+                } else {
+                    previousLeading = (int) in.readBits(6);
+                    int meaningful = (int) in.readBits(6) + 1;
+                    previousTrailing = 64 - previousLeading - meaningful;
+                    xor = in.readBits(meaningful) << previousTrailing;
+                }
+                previous ^= xor;
+            }
+            values[i] = Double.longBitsToDouble(previous);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
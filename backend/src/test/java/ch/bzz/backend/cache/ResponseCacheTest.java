@@ -0,0 +1,109 @@
+package ch.bzz.backend.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    private static ResponseCache.BodyWriter body(String text, AtomicInteger writes) {
+        return out -> {
+            writes.incrementAndGet();
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        };
+    }
+
+    @Test
+    void testEntryIsReusedUntilTheVersionChanges() throws IOException {
+        ResponseCache cache = new ResponseCache(1 << 20, 16, 0, false, null);
+        AtomicInteger writes = new AtomicInteger();
+        ResponseCache.Entry first = cache.get("series|ID742", 1, body("a", writes));
+        assertSame(first, cache.get("series|ID742", 1, body("a", writes)));
+        assertEquals(1, writes.get());
+
+        ResponseCache.Entry second = cache.get("series|ID742", 2, body("b", writes));
+        assertEquals(2, writes.get());
+        assertEquals("b", new String(second.getBody(), StandardCharsets.UTF_8));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntriesAreEvictedByBytes() throws IOException {
+        String text = "x".repeat(1000);
+        // room for two entries including their overhead
+        ResponseCache cache = new ResponseCache(2500, 16, 0, false, null);
+        AtomicInteger writes = new AtomicInteger();
+        cache.get("a", 1, body(text, writes));
+        cache.get("b", 1, body(text, writes));
+        cache.get("a", 1, body(text, writes));
+        cache.get("c", 1, body(text, writes));
+        assertEquals(3, writes.get());
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.getBytes() <= 2500);
+
+        cache.get("a", 1, body(text, writes));
+        assertEquals(3, writes.get());
+        cache.get("b", 1, body(text, writes));
+        assertEquals(4, writes.get());
+    }
+
+    @Test
+    void testLargeBodiesAreStoredCompressed() throws IOException {
+        String text = "{\"timestamp\":\"2024-01-01T00:00:00\",\"relative\":0.25}".repeat(200);
+        ResponseCache cache = new ResponseCache(1 << 20, 16, 0, true, null);
+        ResponseCache.Entry entry = cache.get("load-existing", 7, body(text, new AtomicInteger()));
+        assertTrue(entry.isGzipped());
+        assertTrue(entry.getBody().length < text.length() / 10);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(entry.getBody()))) {
+            assertEquals(text, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testBodyLargerThanTheCacheIsAbandonedAndNotWrittenAgain() throws IOException {
+        ResponseCache cache = new ResponseCache(4096, 16, 0, false, null);
+        AtomicInteger writes = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        ResponseCache.BodyWriter large = out -> {
+            writes.incrementAndGet();
+            byte[] chunk = new byte[1000];
+            for (int i = 0; i < 1000; i++) {
+                out.write(chunk);
+                written.addAndGet(chunk.length);
+            }
+        };
+
+        assertNull(cache.get("load-existing", 1, large));
+        // writing stopped at the limit instead of buffering the whole body
+        assertTrue(written.get() <= 4096, "buffered " + written.get() + " bytes");
+        assertEquals(0, cache.size());
+        assertNull(cache.get("load-existing", 1, large));
+        assertEquals(1, writes.get());
+
+        // the next version is tried again
+        assertNotNull(cache.get("load-existing", 2, body("small", writes)));
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    void testLimitAppliesToTheCompressedBody() throws IOException {
+        String text = "{\"timestamp\":\"2024-01-01T00:00:00\",\"relative\":0.25}".repeat(1000);
+        ResponseCache cache = new ResponseCache(text.length() / 4, 16, 0, true, null);
+        ResponseCache.Entry entry = cache.get("load-existing", 1, body(text, new AtomicInteger()));
+        assertNotNull(entry);
+        assertTrue(entry.isGzipped());
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(entry.getBody()))) {
+            assertEquals(text, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
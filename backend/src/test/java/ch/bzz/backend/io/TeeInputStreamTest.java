@@ -0,0 +1,68 @@
+package ch.bzz.backend.io;
+
+import ch.bzz.backend.parser.ESLParser;
+import ch.bzz.backend.service.IngestionIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class TeeInputStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testParsingThroughTeeWritesIdenticalCopy() throws Exception {
+        URL dir = TeeInputStreamTest.class.getClassLoader().getResource("testdata/esl-files");
+        assertNotNull(dir);
+        File[] files = new File(dir.toURI()).listFiles((d, name) -> name.endsWith(".xml"));
+        assertNotNull(files);
+        assertFalse(files.length == 0);
+
+        for (File file : files) {
+            Path copy = tempDir.resolve(file.getName());
+            MessageDigest digest = IngestionIndex.newDigest();
+            Map<String, Double> values;
+            try (InputStream in = Files.newInputStream(file.toPath());
+                 FileChannel channel = FileChannel.open(copy, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 TeeInputStream tee = new TeeInputStream(in, channel, digest)) {
+                values = ESLParser.parseESLStream(tee, file.getName());
+                tee.drain();
+                assertEquals(file.length(), tee.getCount(), file.getName());
+            }
+
+            assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(copy), file.getName());
+            assertEquals(IngestionIndex.hashFile(file.toPath()), HexFormat.of().formatHex(digest.digest()), file.getName());
+            assertEquals(ESLParser.parseESLFile(file), values, file.getName());
+        }
+    }
+
+    @Test
+    void testLargeFilesAreMapped() throws Exception {
+        byte[] data = new byte[(int) FileInputs.MAPPING_THRESHOLD + 123];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        Path file = tempDir.resolve("large.bin");
+        Files.write(file, data);
+
+        try (InputStream in = FileInputs.open(file)) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+}
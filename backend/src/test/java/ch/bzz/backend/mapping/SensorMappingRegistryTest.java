@@ -0,0 +1,75 @@
+package ch.bzz.backend.mapping;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorMappingRegistryTest {
+
+    private static final String MAPPING = """
+            {
+              "sensors": { "meter_ID735_special": { "direction": "consumption", "meter": "38157930", "registers": ["1-1:1.8.1", "1-1:1.8.2"] } },
+              "patterns": [
+                { "pattern": "ID7[0-9]5", "direction": "feed-in", "registers": ["1-1:2.8.1", "1-1:2.8.2"] },
+                { "pattern": "ID", "direction": "consumption", "registers": ["1-0:1.8.0", "1-0:2.8.0"] }
+              ],
+              "fallback": { "registers": ["1-0:1.8.0", "1-0:2.8.0"] }
+            }""";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testBundledMappingMatchesDocumentIds() {
+        SensorMappingRegistry registry = new SensorMappingRegistry(null);
+        assertEquals("1-1:1.8.1", registry.find("eslevu180263_BR2294_ID742").getObis1());
+        SensorMapping feedIn = registry.find("eslevu180263_BR2294_ID735");
+        assertEquals(SensorMapping.Direction.FEED_IN, feedIn.getDirection());
+        assertEquals("1-1:2.8.2", feedIn.getObis2());
+        assertNull(registry.find("unknown"));
+        assertEquals("1-0:1.8.0", registry.getFallback().getObis1());
+    }
+
+    @Test
+    void testExactIdBeforePatternsInFileOrder() throws IOException {
+        Path file = dir.resolve("mapping.json");
+        Files.writeString(file, MAPPING);
+        SensorMappingRegistry registry = new SensorMappingRegistry(file.toString());
+
+        assertEquals(SensorMapping.Direction.CONSUMPTION, registry.find("meter_ID735_special").getDirection());
+        assertEquals("38157930", registry.find("meter_ID735_special").getMeter());
+        assertNull(registry.find("meter_ID795").getMeter());
+        assertEquals(SensorMapping.Direction.FEED_IN, registry.find("meter_ID795").getDirection());
+        assertEquals("1-0:1.8.0", registry.find("meter_ID100").getObis1());
+        assertNull(registry.find("meter"));
+    }
+
+    @Test
+    void testReloadReplacesMappingsAndKeepsThemIfInvalid() throws IOException {
+        Path file = dir.resolve("mapping.json");
+        Files.writeString(file, MAPPING);
+        SensorMappingRegistry registry = new SensorMappingRegistry(file.toString());
+        AtomicInteger reloads = new AtomicInteger();
+        registry.addReloadListener(reloads::incrementAndGet);
+        assertEquals(SensorMapping.Direction.FEED_IN, registry.find("meter_ID795").getDirection());
+
+        Files.writeString(file, MAPPING.replace("feed-in", "consumption"));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        registry.reloadIfChanged();
+        assertEquals(1, reloads.get());
+        // results of the old mapping are not cached across a reload
+        assertEquals(SensorMapping.Direction.CONSUMPTION, registry.find("meter_ID795").getDirection());
+
+        Files.writeString(file, "{ \"patterns\": [ { \"pattern\": \"(\" } ] }");
+        assertThrows(IOException.class, registry::reload);
+        assertEquals(1, reloads.get());
+        assertEquals(SensorMapping.Direction.CONSUMPTION, registry.find("meter_ID795").getDirection());
+    }
+}
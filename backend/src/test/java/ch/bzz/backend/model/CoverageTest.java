@@ -0,0 +1,67 @@
+package ch.bzz.backend.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoverageTest {
+
+    private static final long STEP = 10;
+
+    @Test
+    void testAppendedKeysFormOneRun() {
+        Coverage coverage = new Coverage(STEP);
+        for (long key = 0; key < 1000; key += STEP) {
+            coverage.add(key);
+        }
+        assertEquals(1, coverage.runCount());
+        assertEquals(1000, coverage.endAt(0));
+        assertTrue(coverage.isCovered(995));
+        assertFalse(coverage.isCovered(1000));
+        assertEquals(List.of(), coverage.gaps(0, 1000));
+    }
+
+    @Test
+    void testOutOfOrderKeysAreMerged() {
+        Coverage coverage = new Coverage(STEP);
+        coverage.add(50);
+        coverage.add(10);
+        coverage.add(30);
+        assertEquals(3, coverage.runCount());
+        assertEquals(List.of(new Coverage.Gap(0, 10), new Coverage.Gap(20, 30), new Coverage.Gap(40, 50)), coverage.gaps(0, 60));
+
+        coverage.add(20);
+        coverage.add(40);
+        coverage.add(40); // already covered
+        assertEquals(1, coverage.runCount());
+        assertEquals(10, coverage.startAt(0));
+        assertEquals(60, coverage.endAt(0));
+        assertEquals(List.of(new Coverage.Gap(60, 100)), coverage.gaps(20, 100));
+    }
+
+    @Test
+    void testFrozenViewDoesNotSeeLaterWrites() {
+        Coverage coverage = new Coverage(STEP);
+        coverage.add(0);
+        coverage.add(100);
+        Coverage view = coverage.freeze();
+
+        coverage.add(110);
+        coverage.add(10);
+        coverage.add(50);
+        assertEquals(2, view.runCount());
+        assertEquals(10, view.endAt(0));
+        assertEquals(110, view.endAt(1));
+        assertEquals(List.of(new Coverage.Gap(10, 100)), view.gaps(0, 110));
+        assertEquals(List.of(new Coverage.Gap(20, 50), new Coverage.Gap(60, 100)), coverage.gaps(0, 120));
+        assertThrows(UnsupportedOperationException.class, () -> view.add(200));
+    }
+
+    @Test
+    void testGapIntervalsAreRoundedUp() {
+        assertEquals(3, new Coverage.Gap(0, 25).intervals(STEP));
+        assertEquals(2, new Coverage.Gap(0, 20).intervals(STEP));
+    }
+}
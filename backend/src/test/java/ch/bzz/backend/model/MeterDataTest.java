@@ -2,7 +2,11 @@ package ch.bzz.backend.model;
 
 import org.junit.jupiter.api.Test;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -25,4 +29,110 @@ class MeterDataTest {
         MeterData meter = new MeterData(sensorId);
         assertEquals(sensorId, meter.getSensorId());
     }
+
+    @Test
+    void testMeasurementsAreSortedAndOverwrittenByTimestamp() {
+        MeterData meter = new MeterData("ID3");
+        LocalDateTime t0 = LocalDateTime.of(2024, 1, 1, 0, 0);
+        meter.addMeasurement(new Measurement(t0.plusMinutes(30), 3.0, 30.0));
+        meter.addMeasurement(new Measurement(t0, 1.0, 10.0));
+        meter.addMeasurement(new Measurement(t0.plusMinutes(15), 2.0, null));
+        meter.addMeasurement(new Measurement(t0, 1.5, 11.0));
+
+        List<Measurement> measurements = new ArrayList<>(meter.getMeasurements());
+        assertEquals(3, measurements.size());
+        assertEquals(new Measurement(t0, 1.5, 11.0), measurements.get(0));
+        assertEquals(new Measurement(t0.plusMinutes(15), 2.0, null), measurements.get(1));
+        assertEquals(t0.plusMinutes(30), measurements.get(2).getTimestamp());
+        assertEquals(3, meter.getMeasurementsMap().size());
+    }
+
+    @Test
+    void testRangeQuery() {
+        MeterData meter = new MeterData("ID4");
+        LocalDateTime t0 = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < 10_000; i++) {
+            meter.addMeasurement(new Measurement(t0.plusMinutes(15L * i), (double) i, null));
+        }
+
+        List<Measurement> range = meter.getMeasurements(t0.plusHours(1), t0.plusHours(2));
+        assertEquals(4, range.size());
+        assertEquals(4.0, range.get(0).getRelative());
+        assertEquals(7.0, range.get(3).getRelative());
+        assertEquals(10_000, meter.getMeasurements(null, null).size());
+        assertTrue(meter.getMeasurements(t0.plusYears(1), null).isEmpty());
+    }
+
+    @Test
+    void testViewsAreNotChangedByLaterWrites() {
+        MeterData meter = new MeterData("ID5");
+        LocalDateTime t0 = LocalDateTime.of(2024, 1, 1, 0, 0);
+        meter.addMeasurement(new Measurement(t0, 1.0, 1.0));
+        meter.addMeasurement(new Measurement(t0.plusMinutes(30), 3.0, 4.0));
+        TimeSeries before = meter.getSeries();
+        long version = meter.getVersion();
+
+        meter.addMeasurement(new Measurement(t0.plusMinutes(15), 2.0, 3.0)); // insert
+        meter.addMeasurement(new Measurement(t0, 5.0, 5.0));                  // overwrite
+        meter.addMeasurement(new Measurement(t0.plusMinutes(45), 4.0, 8.0)); // append
+
+        assertEquals(2, before.size());
+        assertEquals(1.0, before.relativeAt(0));
+        assertEquals(3.0, before.relativeAt(1));
+        assertEquals(4, meter.getSeries().size());
+        assertEquals(5.0, meter.getSeries().relativeAt(0));
+        assertTrue(meter.getVersion() > version);
+        assertThrows(IllegalStateException.class, () -> before.put(0L, 1.0, 1.0));
+    }
+
+    @Test
+    void testConcurrentReadersSeeConsistentState() throws Exception {
+        MeterData meter = new MeterData("ID6");
+        LocalDateTime t0 = LocalDateTime.of(2024, 1, 1, 0, 0);
+        int days = 200;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Runnable reader = () -> {
+            try {
+                while (!done.get()) {
+                    Rollup daily = meter.getRollup(Resolution.DAY);
+                    TimeSeries series = daily.getSeries();
+                    int total = 0;
+                    for (int cell = 0; cell < daily.size(); cell++) {
+                        total += daily.countAt(cell);
+                    }
+                    assertEquals(series.size(), total);
+                    for (int i = 1; i < series.size(); i++) {
+                        assertTrue(series.keyAt(i - 1) < series.keyAt(i));
+                    }
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        };
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            Thread thread = new Thread(reader);
+            thread.start();
+            readers.add(thread);
+        }
+
+        // days in reverse order, so every batch is inserted in front of the published data
+        for (int day = days - 1; day >= 0; day--) {
+            List<Measurement> batch = new ArrayList<>();
+            for (int i = 0; i < 96; i++) {
+                batch.add(new Measurement(t0.plusDays(day).plusMinutes(15L * i), 0.25, null));
+            }
+            meter.addMeasurements(batch);
+        }
+        done.set(true);
+        for (Thread thread : readers) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(days * 96, meter.size());
+        assertEquals(days, meter.getRollup(Resolution.DAY).size());
+    }
 }
@@ -0,0 +1,70 @@
+package ch.bzz.backend.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollupTest {
+
+    @Test
+    void testRollupsMatchRawData() {
+        MeterData meter = new MeterData("ID742");
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        Random random = new Random(42);
+        int points = 60 * 96;
+        // out of order inserts and overwrites of already aggregated intervals
+        for (int n = 0; n < points * 2; n++) {
+            int i = random.nextInt(points);
+            meter.addMeasurement(new Measurement(start.plusMinutes(15L * i), random.nextInt(100) / 10.0, (double) i));
+        }
+
+        for (Resolution resolution : MeterData.ROLLUP_RESOLUTIONS) {
+            Rollup rollup = meter.getRollup(resolution);
+            int totalCount = 0;
+            for (int cell = 0; cell < rollup.size(); cell++) {
+                LocalDateTime bucketStart = TimeSeries.fromKey(rollup.bucketKeyAt(cell));
+                double sum = 0;
+                double max = Double.NEGATIVE_INFINITY;
+                double close = Double.NaN;
+                int count = 0;
+                for (Measurement m : meter.getMeasurements(bucketStart, resolution.nextBucket(bucketStart))) {
+                    sum += m.getRelative();
+                    max = Math.max(max, m.getRelative());
+                    close = m.getAbsolute();
+                    count++;
+                }
+                assertEquals(count, rollup.countAt(cell), resolution + " " + bucketStart);
+                assertEquals(sum, rollup.sumAt(cell), 1e-6, resolution + " " + bucketStart);
+                assertEquals(max, rollup.maxAt(cell), 1e-9);
+                assertEquals(close, rollup.closeAbsoluteAt(cell), 1e-9);
+                totalCount += count;
+            }
+            assertEquals(meter.size(), totalCount, resolution.toString());
+        }
+    }
+
+    @Test
+    void testIncrementalUpdate() {
+        MeterData meter = new MeterData("ID735");
+        LocalDateTime t = LocalDateTime.of(2024, 3, 1, 10, 0);
+        meter.addMeasurement(new Measurement(t, 1.0, 101.0));
+        meter.addMeasurement(new Measurement(t.plusMinutes(15), 2.0, 103.0));
+
+        Rollup daily = meter.getRollup(Resolution.DAY);
+        assertEquals(1, daily.size());
+        assertEquals(3.0, daily.sumAt(0), 1e-9);
+        assertEquals(103.0, daily.closeAbsoluteAt(0), 1e-9);
+
+        meter.addMeasurement(new Measurement(t.plusMinutes(15), 0.5, 101.5));
+        // a rollup is a read-only view, the overwrite is only visible when it is fetched again
+        assertEquals(3.0, daily.sumAt(0), 1e-9);
+        daily = meter.getRollup(Resolution.DAY);
+        assertEquals(1.5, daily.sumAt(0), 1e-9);
+        assertEquals(0.5, daily.minAt(0), 1e-9);
+        assertEquals(2, daily.countAt(0));
+        assertNull(meter.getRollup(Resolution.MINUTES_15));
+    }
+}
@@ -7,6 +7,7 @@ import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -22,4 +23,35 @@ class MeasurementMergerTest {
         assertEquals(1, merged.size());
         assertEquals(1.0, merged.get(0).getAbsolute());
     }
+
+    @Test
+    void testMissingRelativeValuesKeepTheTotal() {
+        double[] relatives = {1.0, Double.NaN, 2.5, Double.NaN};
+        double[] absolutes = new double[relatives.length];
+        MeasurementMerger.accumulate(relatives, absolutes, 0, relatives.length, 100.0);
+        assertEquals(101.0, absolutes[0]);
+        assertEquals(101.0, absolutes[1]);
+        assertEquals(103.5, absolutes[2]);
+        assertEquals(103.5, absolutes[3]);
+    }
+
+    @Test
+    void testParallelAccumulateMatchesSequentialSum() {
+        int count = MeasurementMerger.PARALLEL_THRESHOLD * 3 + 17;
+        Random random = new Random(7);
+        double[] relatives = new double[count];
+        for (int i = 0; i < count; i++) {
+            relatives[i] = i % 1000 == 0 ? Double.NaN : random.nextInt(1000) / 100.0;
+        }
+        double[] absolutes = new double[count];
+        MeasurementMerger.accumulate(relatives, absolutes, 0, count, 5000.0);
+
+        double total = 5000.0;
+        for (int i = 0; i < count; i++) {
+            if (!Double.isNaN(relatives[i])) {
+                total += relatives[i];
+            }
+            assertEquals(total, absolutes[i], 1e-6 * total, "index " + i);
+        }
+    }
 }
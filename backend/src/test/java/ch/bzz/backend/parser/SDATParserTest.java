@@ -0,0 +1,198 @@
+package ch.bzz.backend.parser;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.query.GapsResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SDATParserTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static String sdatXml(int observations, String between) {
+        StringBuilder xml = new StringBuilder("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <rsm:ValidatedMeteredData_14 xmlns:rsm="http://www.strom.ch" xmlns:x="urn:other">
+                <rsm:ValidatedMeteredData_HeaderInformation><rsm:InstanceDocument><rsm:DocumentID>doc_ID742</rsm:DocumentID>
+                </rsm:InstanceDocument></rsm:ValidatedMeteredData_HeaderInformation><rsm:MeteringData>
+                <rsm:Interval><rsm:StartDateTime>2024-01-01T00:00:00Z</rsm:StartDateTime></rsm:Interval>
+                <rsm:Resolution><rsm:Resolution>15</rsm:Resolution></rsm:Resolution>
+                """);
+        for (int i = 1; i <= observations; i++) {
+            if (i == observations / 2) {
+                xml.append(between);
+            }
+            String volume = i % 1000 == 0 ? "n/a" : String.valueOf(i * 0.001);
+            xml.append("<rsm:Observation>\n  <rsm:Position><rsm:Sequence>").append(i)
+                    .append("</rsm:Sequence></rsm:Position><rsm:Volume x:unit=\"kWh\">").append(volume)
+                    .append("</rsm:Volume></rsm:Observation>\n");
+        }
+        return xml.append("</rsm:MeteringData></rsm:ValidatedMeteredData_14>").toString();
+    }
+
+    private static File[] sdatTestFiles() throws URISyntaxException {
+        URL dir = SDATParserTest.class.getClassLoader().getResource("testdata/sdat-files");
+        assertNotNull(dir);
+        File[] files = new File(dir.toURI()).listFiles((d, name) -> name.endsWith(".xml"));
+        assertNotNull(files);
+        return files;
+    }
+
+    private static void assertSameValues(SDATParser.ParsedSDAT dom, SDATParser.ParsedSDAT streamed, String name) {
+        assertEquals(dom.getDocumentId(), streamed.getDocumentId(), name);
+        List<Measurement> expected = dom.getValues();
+        List<Measurement> actual = streamed.getValues();
+        assertEquals(expected.size(), actual.size(), name);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp(), name + " #" + i);
+            assertEquals(expected.get(i).getRelative(), actual.get(i).getRelative(), name + " #" + i);
+            assertEquals(expected.get(i).getAbsolute(), actual.get(i).getAbsolute(), name + " #" + i);
+        }
+    }
+
+    @Test
+    void testStreamingParserMatchesDomParser() throws URISyntaxException {
+        File[] files = sdatTestFiles();
+        assertFalse(files.length == 0);
+
+        for (File file : files) {
+            assertSameValues(SDATParser.parseSDATFileDom(file), SDATParser.parseSDATFile(file), file.getName());
+        }
+    }
+
+    @Test
+    void testBothParsersDropObservationsWithoutValidSequence() throws IOException {
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <rsm:ValidatedMeteredData_14 xmlns:rsm="http://www.strom.ch">
+                <rsm:ValidatedMeteredData_HeaderInformation><rsm:InstanceDocument><rsm:DocumentID>doc_ID742</rsm:DocumentID>
+                </rsm:InstanceDocument></rsm:ValidatedMeteredData_HeaderInformation><rsm:MeteringData>
+                <rsm:Interval><rsm:StartDateTime>2024-01-01T00:00:00Z</rsm:StartDateTime></rsm:Interval>
+                <rsm:Resolution><rsm:Resolution>15</rsm:Resolution></rsm:Resolution>
+                <rsm:Observation><rsm:Position><rsm:Sequence>1</rsm:Sequence></rsm:Position><rsm:Volume>1.0</rsm:Volume></rsm:Observation>
+                <rsm:Observation><rsm:Volume>2.0</rsm:Volume></rsm:Observation>
+                <rsm:Observation><rsm:Position><rsm:Sequence>x</rsm:Sequence></rsm:Position><rsm:Volume>3.0</rsm:Volume></rsm:Observation>
+                <rsm:Observation><rsm:Position><rsm:Sequence>0</rsm:Sequence></rsm:Position><rsm:Volume>4.0</rsm:Volume></rsm:Observation>
+                <rsm:Observation><rsm:Position><rsm:Sequence>-3</rsm:Sequence></rsm:Position><rsm:Volume>5.0</rsm:Volume></rsm:Observation>
+                <rsm:Observation><rsm:Position><rsm:Sequence>3</rsm:Sequence></rsm:Position><rsm:Volume>6.0</rsm:Volume></rsm:Observation>
+                </rsm:MeteringData></rsm:ValidatedMeteredData_14>""";
+        Path file = tempDir.resolve("invalid-sequence.xml");
+        Files.writeString(file, xml, StandardCharsets.UTF_8);
+
+        SDATParser.ParsedSDAT dom = SDATParser.parseSDATFileDom(file.toFile());
+        SDATParser.ParsedSDAT streamed = SDATParser.parseSDATFile(file.toFile());
+
+        assertSameValues(dom, streamed, file.getFileName().toString());
+        assertEquals(2, streamed.size());
+        assertEquals(LocalDateTime.of(2024, 1, 1, 0, 30), streamed.getValues().get(1).getTimestamp());
+        assertEquals(Map.of(ParseIssues.MISSING_SEQUENCE, 1, ParseIssues.INVALID_SEQUENCE, 3), streamed.getIssues().getCounts());
+    }
+
+    @Test
+    void testStreamingParserReadsHeader() throws URISyntaxException {
+        for (File file : sdatTestFiles()) {
+            SDATParser.ParsedSDAT parsed = SDATParser.parseSDATFile(file);
+            assertNotNull(parsed.getDocumentId(), file.getName());
+            assertFalse(parsed.getValues().isEmpty(), file.getName());
+            assertFalse(parsed.getValues().stream().map(Measurement::getTimestamp).anyMatch(Objects::isNull));
+        }
+    }
+
+    @Test
+    void testMalformedValuesAreCountedPerKind() {
+        String xml = """
+                <rsm:ValidatedMeteredData_14 xmlns:rsm="http://www.strom.ch"><rsm:MeteringData>
+                <rsm:Interval><rsm:StartDateTime>2024-01-01T00:00:00Z</rsm:StartDateTime></rsm:Interval>
+                <rsm:Resolution><rsm:Resolution>15</rsm:Resolution></rsm:Resolution>
+                <rsm:Observation><rsm:Position><rsm:Sequence>1</rsm:Sequence></rsm:Position><rsm:Volume>1.5</rsm:Volume></rsm:Observation>
+                <rsm:Observation><rsm:Position><rsm:Sequence>2</rsm:Sequence></rsm:Position><rsm:Volume>n/a</rsm:Volume></rsm:Observation>
+                <rsm:Observation><rsm:Position><rsm:Sequence>3</rsm:Sequence></rsm:Position><rsm:Volume>x</rsm:Volume></rsm:Observation>
+                <rsm:Observation><rsm:Volume>2.0</rsm:Volume></rsm:Observation>
+                </rsm:MeteringData></rsm:ValidatedMeteredData_14>""";
+        SDATParser.ParsedSDAT parsed = SDATParser.parseSDATStream(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "malformed.xml");
+
+        // the observation without a Sequence is left out
+        assertEquals(3, parsed.getValues().size());
+        assertEquals(Map.of(ParseIssues.INVALID_VALUE, 2, ParseIssues.MISSING_SEQUENCE, 1), parsed.getIssues().getCounts());
+        assertEquals(3, parsed.getIssues().total());
+    }
+
+    @Test
+    void testChunkedParserMatchesStreamingParser() throws IOException {
+        Path file = tempDir.resolve("large.xml");
+        Files.writeString(file, sdatXml(5000, "<!-- split --><rsm:Observation/>"), StandardCharsets.UTF_8);
+        SDATParser.ParsedSDAT streamed = SDATParser.parseSDATStream(new ByteArrayInputStream(Files.readAllBytes(file)), "large.xml");
+        SDATParser.ParsedSDAT chunked = SDATParser.parseSDATFileChunked(file.toFile(), 7);
+
+        assertNotNull(chunked);
+        assertEquals("doc_ID742", chunked.getDocumentId());
+        assertEquals(5000, chunked.getValues().size());
+        for (int i = 0; i < streamed.getValues().size(); i++) {
+            assertEquals(streamed.getValues().get(i).getTimestamp(), chunked.getValues().get(i).getTimestamp(), "#" + i);
+            assertEquals(streamed.getValues().get(i).getRelative(), chunked.getValues().get(i).getRelative(), "#" + i);
+        }
+        // the empty observation is reported once, the invalid values of every chunk are counted
+        assertEquals(streamed.getIssues().getCounts(), chunked.getIssues().getCounts());
+        assertEquals(7, chunked.getIssues().total());
+    }
+
+    @Test
+    void testChunkedParserGivesUpOnOtherElementsBetweenObservations() throws IOException {
+        Path file = tempDir.resolve("two-intervals.xml");
+        Files.writeString(file, sdatXml(2000, "<rsm:Interval><rsm:StartDateTime>2024-02-01T00:00:00Z</rsm:StartDateTime></rsm:Interval>"),
+                StandardCharsets.UTF_8);
+        assertNull(SDATParser.parseSDATFileChunked(file.toFile(), 4));
+        assertEquals(2000, SDATParser.parseSDATFile(file.toFile()).getValues().size());
+    }
+
+    @Test
+    void testHourlyFileGivesHourlyIntervals() throws IOException {
+        String xml = """
+                <rsm:ValidatedMeteredData_14 xmlns:rsm="http://www.strom.ch"><rsm:MeteringData>
+                <rsm:Interval><rsm:StartDateTime>2024-01-01T00:00:00Z</rsm:StartDateTime></rsm:Interval>
+                <rsm:Resolution><rsm:Resolution>60</rsm:Resolution></rsm:Resolution>
+                <rsm:Observation><rsm:Position><rsm:Sequence>1</rsm:Sequence></rsm:Position><rsm:Volume>1.0</rsm:Volume></rsm:Observation>
+                <rsm:Observation><rsm:Position><rsm:Sequence>2</rsm:Sequence></rsm:Position><rsm:Volume>2.0</rsm:Volume></rsm:Observation>
+                <rsm:Observation><rsm:Position><rsm:Sequence>3</rsm:Sequence></rsm:Position><rsm:Volume>3.0</rsm:Volume></rsm:Observation>
+                </rsm:MeteringData></rsm:ValidatedMeteredData_14>""";
+        Path file = tempDir.resolve("hourly.xml");
+        Files.writeString(file, xml, StandardCharsets.UTF_8);
+        SDATParser.ParsedSDAT parsed = SDATParser.parseSDATFile(file.toFile());
+
+        assertEquals(60, parsed.getResolutionMinutes());
+        assertEquals(60, SDATParser.parseSDATFileDom(file.toFile()).getResolutionMinutes());
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        assertEquals(start.plusHours(2), parsed.getValues().get(2).getTimestamp());
+
+        // Consecutive hourly values leave no gap, a missing hour is one missing interval
+        MeterData meter = new MeterData("ID742", parsed.getStep());
+        double[] absolutes = new double[parsed.size()];
+        Arrays.fill(absolutes, Double.NaN);
+        meter.putAll(parsed.getKeys(), parsed.getRelatives(), absolutes, parsed.size());
+        GapsResponse gaps = GapsResponse.of(meter, start, start.plusHours(4));
+        assertEquals(1, gaps.getMissingIntervals());
+        assertEquals(start.plusHours(3), gaps.getGaps().get(0).getFrom());
+    }
+}
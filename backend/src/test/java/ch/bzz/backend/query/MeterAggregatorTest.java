@@ -0,0 +1,76 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.mapping.SensorMappingRegistry;
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.Resolution;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeterAggregatorTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private static MeterData meter(String sensorId, double relative, int intervals) {
+        MeterData meter = new MeterData(sensorId);
+        for (int i = 0; i < intervals; i++) {
+            meter.addMeasurement(new Measurement(START.plusMinutes(15L * i), relative, relative * (i + 1)));
+        }
+        return meter;
+    }
+
+    private static MeterAggregator aggregator() {
+        return new MeterAggregator(new ForkJoinPool(2), new SensorMappingRegistry(null));
+    }
+
+    @Test
+    void testNetSubtractsFeedIn() {
+        List<MeterData> meters = List.of(meter("ID735", 0.1, 96), meter("ID742", 0.25, 96));
+        AggregateResponse net = aggregator().aggregate(meters, MeterAggregator.Operation.NET, null, null, Resolution.HOUR);
+        assertEquals(24, net.getPoints().size());
+        assertEquals(START, net.getPoints().get(0).getTimestamp());
+        assertEquals(0.6, net.getPoints().get(0).getValue(), 1e-9);
+        assertEquals(2, net.getPoints().get(0).getMeters());
+    }
+
+    @Test
+    void testSumAndPeakOverManyMeters() {
+        List<MeterData> meters = new ArrayList<>();
+        for (int m = 0; m < 50; m++) {
+            // every meter covers a different part of the day
+            meters.add(meter(String.format("ID%03d", m), m, 4 + m));
+        }
+        MeterAggregator aggregator = aggregator();
+        AggregateResponse sum = aggregator.aggregate(meters, MeterAggregator.Operation.SUM, null, null, Resolution.MINUTES_15);
+        assertEquals(53, sum.getPoints().size());
+        assertEquals(50 * 49 / 2.0, sum.getPoints().get(0).getValue(), 1e-9);
+        assertEquals(49.0, sum.getPoints().get(52).getValue(), 1e-9);
+        assertEquals(START, sum.getPeak().getTimestamp());
+
+        AggregateResponse peak = aggregator.aggregate(meters, MeterAggregator.Operation.PEAK, START.plusHours(1), null, Resolution.RAW);
+        assertEquals(START.plusHours(1), peak.getPoints().get(0).getTimestamp());
+        assertEquals(49.0, peak.getPoints().get(0).getValue(), 1e-9);
+        assertEquals(49, peak.getPoints().get(0).getMeters());
+    }
+
+    @Test
+    void testCachedResultIsReplacedWhenAMeterChanges() {
+        MeterData consumption = meter("ID742", 0.25, 8);
+        List<MeterData> meters = List.of(consumption);
+        MeterAggregator aggregator = aggregator();
+        AggregateResponse first = aggregator.aggregate(meters, MeterAggregator.Operation.SUM, null, null, Resolution.HOUR);
+        assertSame(first, aggregator.aggregate(meters, MeterAggregator.Operation.SUM, null, null, Resolution.HOUR));
+
+        consumption.addMeasurement(new Measurement(START.plusHours(2), 1.0, 3.0));
+        AggregateResponse second = aggregator.aggregate(meters, MeterAggregator.Operation.SUM, null, null, Resolution.HOUR);
+        assertNotSame(first, second);
+        assertEquals(3, second.getPoints().size());
+        assertEquals(1.0, second.getPoints().get(2).getValue(), 1e-9);
+    }
+}
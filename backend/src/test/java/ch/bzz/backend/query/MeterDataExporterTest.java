@@ -0,0 +1,83 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.MeterModel;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeterDataExporterTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Enough measurements per meter to span several chunks of the pipe
+    private static List<MeterData> meters(int count, int measurements) {
+        MeterModel model = new MeterModel();
+        for (int m = 0; m < count; m++) {
+            for (int i = 0; i < measurements; i++) {
+                model.addMeasurement("ID" + m, new Measurement(START.plusMinutes(15L * i), i % 10 == 0 ? null : 0.25, 100.0 + i));
+            }
+        }
+        return model.getAllMeterData().stream().sorted((a, b) -> a.getSensorId().compareTo(b.getSensorId())).toList();
+    }
+
+    private static Map<String, String> unzip(byte[] zip) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                entries.put(entry.getName(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    void testCsvHasOneFilePerMeterInOrder() throws IOException {
+        List<MeterData> meters = meters(5, 5000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MeterDataExporter(MAPPER.getFactory(), 2).writeZip(meters, MeterDataExporter.Format.CSV, null, null, out);
+
+        Map<String, String> files = unzip(out.toByteArray());
+        assertEquals(List.of("ID0.csv", "ID1.csv", "ID2.csv", "ID3.csv", "ID4.csv"), List.copyOf(files.keySet()));
+        String[] lines = files.get("ID3.csv").split("\n");
+        assertEquals(5001, lines.length);
+        assertEquals("timestamp,relative,absolute", lines[0]);
+        assertEquals("2024-01-01T00:00:00,,100.0", lines[1]);
+        assertEquals("2024-01-01T00:15:00,0.25,101.0", lines[2]);
+        assertEquals("2024-02-22T01:45:00,0.25,5099.0", lines[5000]);
+    }
+
+    @Test
+    void testJsonRespectsRange() throws IOException {
+        List<MeterData> meters = meters(2, 96);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MeterDataExporter(MAPPER.getFactory(), 4).writeZip(meters, MeterDataExporter.Format.JSON,
+                START.plusHours(1), START.plusHours(2), out);
+
+        JsonNode meter = MAPPER.readTree(unzip(out.toByteArray()).get("ID1.json"));
+        assertEquals("ID1", meter.get("sensorId").asText());
+        assertEquals(4, meter.get("measurements").size());
+        assertEquals("2024-01-01T01:00:00", meter.get("measurements").get(0).get("timestamp").asText());
+        assertEquals(104.0, meter.get("measurements").get(0).get("absolute").asDouble(), 1e-9);
+    }
+
+    @Test
+    void testFileNamesAreSanitized() {
+        assertEquals("a_b_c.csv", MeterDataExporter.fileName("a/b\\c", MeterDataExporter.Format.CSV));
+    }
+}
@@ -0,0 +1,60 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.MeterModel;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeterDataJsonWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static MeterModel sampleModel() {
+        MeterModel model = new MeterModel();
+        LocalDateTime t = LocalDateTime.of(2024, 1, 1, 0, 0);
+        model.addMeasurement("ID742", new Measurement(t, 1.5, 100.5));
+        model.addMeasurement("ID742", new Measurement(t.plusMinutes(15), 0.25, null));
+        model.addMeasurement("ID735", new Measurement(t, 2.0, 50.0));
+        return model;
+    }
+
+    @Test
+    void testWriteModelMatchesMeterModelShape() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MeterDataJsonWriter.writeModel(sampleModel(), objectMapper.getFactory(), out);
+
+        JsonNode root = objectMapper.readTree(out.toByteArray());
+        JsonNode meters = root.get("allMeterData");
+        assertEquals(2, meters.size());
+        JsonNode id742 = meters.get(0).get("sensorId").asText().equals("ID742") ? meters.get(0) : meters.get(1);
+        JsonNode measurements = id742.get("measurements");
+        assertEquals(2, measurements.size());
+        assertEquals("2024-01-01T00:00:00", measurements.get(0).get("timestamp").asText());
+        assertEquals(1.5, measurements.get(0).get("relative").asDouble());
+        assertEquals(100.5, measurements.get(0).get("absolute").asDouble());
+        assertEquals("2024-01-01T00:15:00", measurements.get(1).get("timestamp").asText());
+        assertTrue(measurements.get(1).get("absolute").isNull());
+    }
+
+    @Test
+    void testWriteNdjsonWritesOneMeterPerLine() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MeterDataJsonWriter.writeNdjson(sampleModel(), objectMapper.getFactory(), out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        for (String line : lines) {
+            JsonNode meter = objectMapper.readTree(line);
+            assertNotNull(meter.get("sensorId"));
+            assertTrue(meter.get("measurements").isArray());
+        }
+    }
+}
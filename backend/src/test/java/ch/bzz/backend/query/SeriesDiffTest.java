@@ -0,0 +1,54 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeriesDiffTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private static long key(int interval) {
+        return TimeSeries.toKey(START.plusMinutes(15L * interval));
+    }
+
+    private static TimeSeries series(int intervals) {
+        TimeSeries series = new TimeSeries();
+        for (int i = 0; i < intervals; i++) {
+            series.put(key(i), i, Double.NaN);
+        }
+        return series;
+    }
+
+    @Test
+    void testNewSeriesIsCompletelyChanged() {
+        SeriesDiff diff = SeriesDiff.between(null, series(3).freeze());
+        assertArrayEquals(new int[]{0, 1, 2}, diff.getChanged());
+        assertEquals(0, diff.getRemoved().length);
+    }
+
+    @Test
+    void testAppendedAndChangedIntervals() {
+        TimeSeries previous = series(4).freeze();
+        TimeSeries current = series(6);
+        current.put(key(1), 1.5, Double.NaN);
+        SeriesDiff diff = SeriesDiff.between(previous, current.freeze());
+        // unchanged missing absolute values are not reported
+        assertArrayEquals(new int[]{1, 4, 5}, diff.getChanged());
+        assertEquals(3, diff.size());
+    }
+
+    @Test
+    void testRemovedIntervals() {
+        TimeSeries current = new TimeSeries();
+        current.put(key(1), 1, Double.NaN);
+        SeriesDiff diff = SeriesDiff.between(series(3).freeze(), current.freeze());
+        assertEquals(0, diff.getChanged().length);
+        assertArrayEquals(new long[]{key(0), key(2)}, diff.getRemoved());
+        assertFalse(diff.isEmpty());
+        assertTrue(SeriesDiff.between(current, current).isEmpty());
+    }
+}
@@ -0,0 +1,107 @@
+package ch.bzz.backend.query;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.Resolution;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeriesDownsamplerTest {
+
+    private static MeterData meterWithDays(int days) {
+        MeterData meter = new MeterData("ID742");
+        LocalDateTime t = LocalDateTime.of(2024, 1, 1, 0, 0);
+        double total = 0;
+        for (int i = 0; i < days * 96; i++) {
+            total += 0.25;
+            meter.addMeasurement(new Measurement(t, 0.25, total));
+            t = t.plusMinutes(15);
+        }
+        return meter;
+    }
+
+    @Test
+    void testHourlyBuckets() {
+        MeterData meter = meterWithDays(1);
+        List<SeriesPoint> points = SeriesDownsampler.downsample(meter, null, null, Resolution.HOUR);
+        assertEquals(24, points.size());
+        SeriesPoint first = points.get(0);
+        assertEquals(LocalDateTime.of(2024, 1, 1, 0, 0), first.getTimestamp());
+        assertEquals(1.0, first.getRelative(), 1e-9);
+        assertEquals(1.0, first.getAbsolute(), 1e-9);
+        assertEquals(0.25, first.getMin(), 1e-9);
+        assertEquals(0.25, first.getAvg(), 1e-9);
+        assertEquals(4, first.getCount());
+    }
+
+    @Test
+    void testRangeAndMonthBuckets() {
+        MeterData meter = meterWithDays(60);
+        LocalDateTime from = LocalDateTime.of(2024, 1, 15, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2024, 2, 10, 0, 0);
+        List<SeriesPoint> points = SeriesDownsampler.downsample(meter, from, to, Resolution.MONTH);
+        assertEquals(2, points.size());
+        assertEquals(LocalDateTime.of(2024, 1, 1, 0, 0), points.get(0).getTimestamp());
+        assertEquals(17 * 96, points.get(0).getCount());
+        assertEquals(9 * 96, points.get(1).getCount());
+        assertEquals(9 * 96 * 0.25, points.get(1).getRelative(), 1e-9);
+    }
+
+    @Test
+    void testRollupAndRawPathsAgree() {
+        MeterData meter = meterWithDays(40);
+        LocalDateTime from = LocalDateTime.of(2024, 1, 3, 7, 30);
+        LocalDateTime to = LocalDateTime.of(2024, 2, 5, 13, 15);
+        // 15 minute buckets are never pre-aggregated, summing them up per day must give the same result
+        List<SeriesPoint> days = SeriesDownsampler.downsample(meter, from, to, Resolution.DAY);
+        List<SeriesPoint> raw = SeriesDownsampler.downsample(meter, from, to, Resolution.MINUTES_15);
+        assertEquals(34, days.size());
+        assertEquals(raw.stream().mapToDouble(SeriesPoint::getRelative).sum(),
+                days.stream().mapToDouble(SeriesPoint::getRelative).sum(), 1e-6);
+        assertEquals(raw.get(raw.size() - 1).getAbsolute(), days.get(days.size() - 1).getAbsolute());
+        assertEquals(from.toLocalDate().atStartOfDay(), days.get(0).getTimestamp());
+        assertEquals(4 * 16 + 2, days.get(0).getCount());
+        assertEquals(96, days.get(1).getCount());
+    }
+
+    @Test
+    void testWeekBucketsStartOnMonday() {
+        assertEquals(LocalDateTime.of(2024, 1, 8, 0, 0), Resolution.WEEK.bucketStart(LocalDateTime.of(2024, 1, 14, 23, 45)));
+        assertEquals(LocalDateTime.of(2024, 1, 14, 23, 45), Resolution.MINUTES_15.bucketStart(LocalDateTime.of(2024, 1, 14, 23, 59)));
+    }
+
+    @Test
+    void testInterpolatedBucketsFillGaps() {
+        MeterData meter = new MeterData("ID742");
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        // measurements until 01:00 and again from 04:00, the register rises by 1 per 15 minutes
+        for (int i = 0; i < 32; i++) {
+            if (i < 4 || i >= 16) {
+                meter.addMeasurement(new Measurement(start.plusMinutes(15L * i), 1.0, i + 1.0));
+            }
+        }
+        List<SeriesPoint> points = SeriesDownsampler.downsample(meter, null, null, Resolution.HOUR);
+        assertEquals(5, points.size());
+
+        List<SeriesPoint> filled = SeriesDownsampler.interpolateGaps(meter, points, null, null, Resolution.HOUR);
+        assertEquals(8, filled.size());
+        SeriesPoint estimated = filled.get(2);
+        assertTrue(estimated.isInterpolated());
+        assertEquals(LocalDateTime.of(2024, 1, 1, 2, 0), estimated.getTimestamp());
+        assertEquals(4.0, estimated.getRelative(), 1e-9);
+        assertEquals(12.0, estimated.getAbsolute(), 1e-9);
+        assertFalse(filled.get(4).isInterpolated());
+    }
+
+    @Test
+    void testAutoResolution() {
+        assertEquals(Resolution.MINUTES_15, Resolution.auto(Duration.ofDays(1), 500));
+        assertEquals(Resolution.DAY, Resolution.auto(Duration.ofDays(365), 500));
+        assertEquals(Resolution.WEEK, Resolution.auto(Duration.ofDays(3 * 365), 500));
+    }
+}
@@ -0,0 +1,169 @@
+package ch.bzz.backend.reconciliation;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.RegisterReading;
+import ch.bzz.backend.parser.ESLParser;
+import ch.bzz.backend.parser.SDATParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReconciliationEngineTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    // 4 intervals of 15 minutes per hour, 1.0 each
+    private static List<Measurement> hours(int hours) {
+        List<Measurement> values = new ArrayList<>();
+        for (int i = 0; i < hours * 4; i++) {
+            values.add(new Measurement(START.plusMinutes(15L * i), 1.0, null));
+        }
+        return values;
+    }
+
+    private static ReconciledSegment reconcile(ReconciliationEngine engine, String path, List<Measurement> values) {
+        SDATParser.ParsedSDAT parsed = new SDATParser.ParsedSDAT("ID742", values);
+        return engine.reconcile(path, "h", "ID742", null, "A", "B", parsed.getKeys(), parsed.getRelatives());
+    }
+
+    private static ReconciledSegment reconcile(ReconciliationEngine engine, String path, String meter, List<Measurement> values) {
+        SDATParser.ParsedSDAT parsed = new SDATParser.ParsedSDAT("ID742", values);
+        return engine.reconcile(path, "h", "ID742", meter, "A", "B", parsed.getKeys(), parsed.getRelatives());
+    }
+
+    private static EslReadingIndex readings(RegisterReading... readings) {
+        EslReadingIndex index = new EslReadingIndex();
+        index.addAll(List.of(readings));
+        return index;
+    }
+
+    @Test
+    void testSegmentPassesThroughEveryReading() {
+        ReconciliationEngine engine = new ReconciliationEngine();
+        // 4.0 were measured in the first hour, the readings say 6.0
+        engine.updateReadings(readings(
+                new RegisterReading("A", START, 100.0), new RegisterReading("B", START, 0.0),
+                new RegisterReading("A", START.plusHours(1), 106.0), new RegisterReading("B", START.plusHours(1), 0.0)));
+
+        ReconciledSegment segment = reconcile(engine, "a.xml", hours(2));
+        double[] absolutes = segment.getAbsolutes();
+        assertEquals(100.0 + 1.5, absolutes[0], 1e-9);
+        assertEquals(103.0, absolutes[1], 1e-9);
+        assertEquals(106.0, absolutes[3], 1e-9); // the register at 01:00 equals the reading
+        assertEquals(107.0, absolutes[4], 1e-9); // after the last reading the values are integrated again
+        assertEquals(110.0, absolutes[7], 1e-9);
+    }
+
+    @Test
+    void testSegmentWithoutReadingsIsBoundedByBothNeighbours() {
+        ReconciliationEngine engine = new ReconciliationEngine();
+        engine.updateReadings(readings(
+                new RegisterReading("A", START.minusHours(2), 50.0),
+                new RegisterReading("A", START.plusHours(4), 80.0)));
+
+        ReconciledSegment segment = reconcile(engine, "a.xml", hours(2));
+        // 30.0 were used in the 6 hours between the readings, 8.0 of them were measured: the other
+        // 22.0 are spread over the 6 hours, the segment ends 4 hours after the first reading
+        double drift = 22.0 / (6 * 4);
+        assertEquals(50.0 + 1.0 + 9 * drift, segment.getAbsolutes()[0], 1e-9);
+        assertEquals(50.0 + 8.0 + 16 * drift, segment.getAbsolutes()[7], 1e-9);
+        assertTrue(segment.getAbsolutes()[7] < 80.0);
+    }
+
+    @Test
+    void testSegmentWithReadingOnOneSideIsIntegratedFromIt() {
+        ReconciliationEngine engine = new ReconciliationEngine();
+        engine.updateReadings(readings(new RegisterReading("A", START.plusHours(3), 200.0)));
+        ReconciledSegment segment = reconcile(engine, "a.xml", hours(2));
+        assertEquals(200.0 - 7.0, segment.getAbsolutes()[0], 1e-9);
+        assertEquals(200.0, segment.getAbsolutes()[7], 1e-9);
+
+        engine.updateReadings(readings(new RegisterReading("A", START.minusDays(10), 50.0)));
+        segment = reconcile(engine, "a.xml", hours(2));
+        assertEquals(51.0, segment.getAbsolutes()[0], 1e-9);
+        assertEquals(58.0, segment.getAbsolutes()[7], 1e-9);
+    }
+
+    @Test
+    void testOnlyAffectedSegmentsAreComputedAgain() {
+        ReconciliationEngine engine = new ReconciliationEngine();
+        RegisterReading january = new RegisterReading("A", START, 100.0);
+        engine.updateReadings(readings(january));
+        ReconciledSegment first = reconcile(engine, "a.xml", hours(1));
+        List<Measurement> later = new ArrayList<>();
+        for (Measurement m : hours(1)) {
+            later.add(new Measurement(m.getTimestamp().plusMonths(2), m.getRelative(), null));
+        }
+        ReconciledSegment second = reconcile(engine, "b.xml", later);
+
+        // a reading between both segments only changes the later one
+        assertEquals(1, engine.updateReadings(readings(january, new RegisterReading("A", START.plusMonths(1), 500.0))));
+        assertSame(first, reconcile(engine, "a.xml", hours(1)));
+        ReconciledSegment recomputed = reconcile(engine, "b.xml", later);
+        assertNotSame(second, recomputed);
+        assertEquals(501.0, recomputed.getAbsolutes()[0], 1e-9);
+    }
+
+    @Test
+    void testParserKeepsPeriodEndInUtc() {
+        String xml = """
+                <ESLBillingData><Meter factoryNo="1">
+                <TimePeriod end="2022-08-01T00:00:00">
+                <ValueRow obis="1-1:1.8.1" value="24734.3" status="V"/>
+                </TimePeriod>
+                <TimePeriod end="2022-02-01T00:00:00">
+                <ValueRow obis="1-1:1.8.1" value="24000.0" status="V"/>
+                </TimePeriod>
+                </Meter></ESLBillingData>""";
+        List<RegisterReading> readings = ESLParser.parseESLReadings(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "test.xml");
+        assertEquals(List.of(
+                new RegisterReading("1", "1-1:1.8.1", LocalDateTime.of(2022, 7, 31, 22, 0), 24734.3),
+                new RegisterReading("1", "1-1:1.8.1", LocalDateTime.of(2022, 1, 31, 23, 0), 24000.0)), readings);
+    }
+
+    @Test
+    void testReadingsOfDifferentMetersAreKeptApart() {
+        ReconciliationEngine engine = new ReconciliationEngine();
+        engine.updateReadings(readings(
+                new RegisterReading("1001", "A", START, 100.0),
+                new RegisterReading("1002", "A", START, 900.0)));
+
+        assertEquals(101.0, reconcile(engine, "a.xml", "1001", hours(1)).getAbsolutes()[0], 1e-9);
+        assertEquals(901.0, reconcile(engine, "b.xml", "1002", hours(1)).getAbsolutes()[0], 1e-9);
+        // without a meter in the mapping it is unclear which counter belongs to the sensor
+        assertEquals(1.0, reconcile(engine, "c.xml", null, hours(1)).getAbsolutes()[0], 1e-9);
+    }
+
+    @Test
+    void testSingleMeterIsUsedWithoutMappedMeter() {
+        ReconciliationEngine engine = new ReconciliationEngine();
+        engine.updateReadings(readings(
+                new RegisterReading("1001", "A", START, 100.0),
+                new RegisterReading("1002", "X", START, 900.0)));
+
+        assertEquals(101.0, reconcile(engine, "a.xml", null, hours(1)).getAbsolutes()[0], 1e-9);
+    }
+
+    @Test
+    void testParserReadsMeterOfEveryReading() {
+        String xml = """
+                <ESLBillingData>
+                <Meter factoryNo="1001"><TimePeriod end="2022-08-01T00:00:00">
+                <ValueRow obis="1-1:1.8.1" value="10.0" status="V"/>
+                </TimePeriod></Meter>
+                <Meter factoryNo="1002"><TimePeriod end="2022-08-01T00:00:00">
+                <ValueRow obis="1-1:1.8.1" value="20.0" status="V"/>
+                </TimePeriod></Meter>
+                </ESLBillingData>""";
+        List<RegisterReading> readings = ESLParser.parseESLReadings(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "test.xml");
+        assertEquals(List.of("1001", "1002"), readings.stream().map(RegisterReading::getMeter).toList());
+    }
+}
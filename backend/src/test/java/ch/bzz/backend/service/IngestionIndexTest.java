@@ -0,0 +1,193 @@
+package ch.bzz.backend.service;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.RegisterReading;
+import ch.bzz.backend.parser.SDATParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestionIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSaveAndLoadRoundTrip() {
+        Path indexFile = tempDir.resolve("index.bin");
+        IngestionIndex index = new IngestionIndex(indexFile);
+        index.put(new IngestionIndex.Entry("esl/a.xml", IngestionIndex.FileType.ESL, 10, 20, "hash-a",
+                List.of(new RegisterReading("38157930", "1-1:1.8.1", LocalDateTime.of(2023, 12, 31, 23, 0), 100.5),
+                        new RegisterReading("1-1:1.8.2", null, 7.0)), null));
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        SDATParser.ParsedSDAT parsed = new SDATParser.ParsedSDAT("doc_ID742", List.of(
+                new Measurement(start, 1.0, null),
+                new Measurement(start.plusMinutes(15), 2.5, null)));
+        index.put(new IngestionIndex.Entry("sdat/b.xml", IngestionIndex.FileType.SDAT, 30, 40, "hash-b", null, parsed));
+        index.save();
+
+        IngestionIndex loaded = new IngestionIndex(indexFile);
+        loaded.load();
+        assertEquals(2, loaded.size());
+
+        IngestionIndex.Entry esl = loaded.get("esl/a.xml");
+        assertEquals(List.of(new RegisterReading("38157930", "1-1:1.8.1", LocalDateTime.of(2023, 12, 31, 23, 0), 100.5),
+                new RegisterReading("1-1:1.8.2", null, 7.0)), esl.getEslReadings());
+        assertTrue(esl.matches(10, 20));
+
+        IngestionIndex.Entry sdat = loaded.get("sdat/b.xml");
+        assertEquals("hash-b", sdat.getContentHash());
+        assertEquals("doc_ID742", sdat.getParsedSdat().getDocumentId());
+        assertEquals(2, sdat.getParsedSdat().getValues().size());
+        assertEquals(start.plusMinutes(15), sdat.getParsedSdat().getValues().get(1).getTimestamp());
+        assertEquals(2.5, sdat.getParsedSdat().getValues().get(1).getRelative());
+    }
+
+    private static IngestionIndex.Entry sdatEntry(String path, String hash, int values) {
+        List<Measurement> measurements = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < values; i++) {
+            measurements.add(new Measurement(start.plusMinutes(15L * i), i * 0.25, null));
+        }
+        return new IngestionIndex.Entry(path, IngestionIndex.FileType.SDAT, values, 1, hash, null,
+                new SDATParser.ParsedSDAT("doc_ID742", measurements));
+    }
+
+    private Set<String> cachedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir.resolve("index.bin.parsed"))) {
+            return files.map(file -> file.getFileName().toString()).collect(Collectors.toSet());
+        }
+    }
+
+    @Test
+    void testSaveOnlyAppendsMetadata() throws IOException {
+        Path indexFile = tempDir.resolve("index.bin");
+        IngestionIndex index = new IngestionIndex(indexFile);
+        index.put(sdatEntry("sdat/a.xml", "hash-a", 35040));
+        index.save();
+        byte[] before = Files.readAllBytes(indexFile);
+
+        index.put(sdatEntry("sdat/b.xml", "hash-b", 35040));
+        index.save();
+        byte[] after = Files.readAllBytes(indexFile);
+
+        // the first record is left as it is and the values are not part of the index file
+        assertArrayEquals(before, Arrays.copyOf(after, before.length));
+        assertTrue(after.length - before.length < 100, "appended " + (after.length - before.length) + " bytes");
+        assertEquals(Set.of("hash-a.sdat", "hash-b.sdat"), cachedFiles());
+
+        IngestionIndex loaded = new IngestionIndex(indexFile);
+        loaded.load();
+        assertEquals(2, loaded.size());
+        assertEquals(35040, loaded.get("sdat/b.xml").getParsedSdat().size());
+    }
+
+    @Test
+    void testRemovedAndReplacedEntriesReleaseTheirCacheFiles() throws IOException {
+        Path indexFile = tempDir.resolve("index.bin");
+        IngestionIndex index = new IngestionIndex(indexFile);
+        index.put(sdatEntry("sdat/a.xml", "hash-a", 4));
+        index.put(sdatEntry("sdat/b.xml", "hash-b", 4));
+        index.put(sdatEntry("sdat/copy-of-b.xml", "hash-b", 4));
+        index.save();
+
+        index.remove("sdat/a.xml");
+        index.remove("sdat/b.xml");
+        index.put(sdatEntry("sdat/copy-of-b.xml", "hash-c", 4));
+        index.save();
+        assertEquals(Set.of("hash-c.sdat"), cachedFiles());
+
+        IngestionIndex loaded = new IngestionIndex(indexFile);
+        loaded.load();
+        assertEquals(1, loaded.size());
+        assertEquals("hash-c", loaded.get("sdat/copy-of-b.xml").getContentHash());
+    }
+
+    @Test
+    void testLogIsCompacted() throws IOException {
+        Path indexFile = tempDir.resolve("index.bin");
+        IngestionIndex index = new IngestionIndex(indexFile);
+        for (int i = 0; i < 500; i++) {
+            index.put(sdatEntry("sdat/a.xml", "hash-" + i, 4));
+            index.save();
+        }
+        assertTrue(Files.size(indexFile) < 100 * 60, "index file has " + Files.size(indexFile) + " bytes");
+        assertEquals(Set.of("hash-499.sdat"), cachedFiles());
+
+        IngestionIndex loaded = new IngestionIndex(indexFile);
+        loaded.load();
+        assertEquals("hash-499", loaded.get("sdat/a.xml").getContentHash());
+    }
+
+    @Test
+    void testEntryWithoutCachedResultIsDropped() throws IOException {
+        Path indexFile = tempDir.resolve("index.bin");
+        IngestionIndex index = new IngestionIndex(indexFile);
+        index.put(sdatEntry("sdat/a.xml", "hash-a", 4));
+        index.put(sdatEntry("sdat/b.xml", "hash-b", 4));
+        index.save();
+        Files.delete(tempDir.resolve("index.bin.parsed").resolve("hash-a.sdat"));
+
+        IngestionIndex loaded = new IngestionIndex(indexFile);
+        loaded.load();
+        assertNull(loaded.get("sdat/a.xml"));
+        assertNotNull(loaded.get("sdat/b.xml"));
+    }
+
+    @Test
+    void testIncompleteRecordAtTheEndIsIgnored() throws IOException {
+        Path indexFile = tempDir.resolve("index.bin");
+        IngestionIndex index = new IngestionIndex(indexFile);
+        index.put(sdatEntry("sdat/a.xml", "hash-a", 4));
+        index.save();
+        index.put(sdatEntry("sdat/b.xml", "hash-b", 4));
+        index.save();
+        byte[] content = Files.readAllBytes(indexFile);
+        Files.write(indexFile, Arrays.copyOf(content, content.length - 5));
+
+        IngestionIndex loaded = new IngestionIndex(indexFile);
+        loaded.load();
+        assertEquals(1, loaded.size());
+        loaded.put(sdatEntry("sdat/c.xml", "hash-c", 4));
+        loaded.save();
+
+        IngestionIndex reloaded = new IngestionIndex(indexFile);
+        reloaded.load();
+        assertEquals(Set.of("sdat/a.xml", "sdat/c.xml"),
+                reloaded.getEntries().stream().map(IngestionIndex.Entry::getPath).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void testLoadIgnoresMissingIndex() {
+        IngestionIndex index = new IngestionIndex(tempDir.resolve("missing.bin"));
+        index.load();
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testCopyAndHashMatchesHashOfTheWrittenFile() throws IOException {
+        byte[] content = new byte[200_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        Path target = tempDir.resolve("upload.xml");
+
+        String hash = IngestionIndex.copyAndHash(new ByteArrayInputStream(content), target);
+
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(IngestionIndex.hashFile(target), hash);
+    }
+}
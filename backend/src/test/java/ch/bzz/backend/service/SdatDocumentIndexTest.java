@@ -0,0 +1,69 @@
+package ch.bzz.backend.service;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.parser.SDATParser;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SdatDocumentIndexTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private static SDATParser.ParsedSDAT values(int fromInterval, int toInterval, double relative) {
+        List<Measurement> values = new ArrayList<>();
+        for (int i = fromInterval; i < toInterval; i++) {
+            values.add(new Measurement(START.plusMinutes(15L * i), relative, null));
+        }
+        return new SDATParser.ParsedSDAT("ID742", values);
+    }
+
+    @Test
+    void testExactCopyIsFound() {
+        SdatDocumentIndex index = new SdatDocumentIndex();
+        index.add("a.xml", "ID742", values(0, 96, 1.0));
+
+        assertEquals(Set.of("a.xml"), index.findCovering("upload.xml", "ID742", values(0, 96, 1.0)));
+        assertTrue(index.findCovering("upload.xml", "ID735", values(0, 96, 1.0)).isEmpty());
+    }
+
+    @Test
+    void testPeriodCoveredByOverlappingDocuments() {
+        SdatDocumentIndex index = new SdatDocumentIndex();
+        index.add("day1.xml", "ID742", values(0, 96, 1.0));
+        index.add("day2.xml", "ID742", values(96, 192, 1.0));
+
+        // the second half of day 1 and the first half of day 2
+        assertEquals(Set.of("day1.xml", "day2.xml"), index.findCovering("upload.xml", "ID742", values(48, 144, 1.0)));
+        // extends into day 3
+        assertTrue(index.findCovering("upload.xml", "ID742", values(144, 240, 1.0)).isEmpty());
+    }
+
+    @Test
+    void testLatestDocumentDecides() {
+        SdatDocumentIndex index = new SdatDocumentIndex();
+        index.add("a.xml", "ID742", values(0, 96, 1.0));
+        index.add("correction.xml", "ID742", values(0, 4, 2.0));
+
+        // the old values of the first hour were overwritten by the correction
+        assertTrue(index.findCovering("upload.xml", "ID742", values(0, 96, 1.0)).isEmpty());
+        assertEquals(Set.of("a.xml"), index.findCovering("upload.xml", "ID742", values(4, 96, 1.0)));
+        assertEquals(Set.of("correction.xml"), index.findCovering("upload.xml", "ID742", values(0, 4, 2.0)));
+    }
+
+    @Test
+    void testRewrittenFileIsNotCoveredByItself() {
+        SdatDocumentIndex index = new SdatDocumentIndex();
+        index.add("a.xml", "ID742", values(0, 96, 1.0));
+
+        // a.xml was touched or copied over itself, its old content must not make it a duplicate
+        assertTrue(index.findCovering("a.xml", "ID742", values(0, 96, 1.0)).isEmpty());
+        assertTrue(index.findCovering("a.xml", "ID742", values(0, 48, 1.0)).isEmpty());
+        assertEquals(Set.of("a.xml"), index.findCovering("copy-of-a.xml", "ID742", values(0, 96, 1.0)));
+    }
+}
@@ -0,0 +1,67 @@
+package ch.bzz.backend.snapshot;
+
+import ch.bzz.backend.model.Measurement;
+import ch.bzz.backend.model.MeterData;
+import ch.bzz.backend.model.MeterModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeterModelSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRoundTrip() throws IOException {
+        MeterModel model = new MeterModel();
+        Random random = new Random(7);
+        LocalDateTime t = LocalDateTime.of(2023, 1, 1, 0, 0);
+        double total = 12_345.6;
+        for (int i = 0; i < 20_000; i++) {
+            // a few gaps and irregular steps
+            t = t.plusMinutes(i % 1000 == 999 ? 60 : 15);
+            double relative = random.nextInt(400) / 1000.0;
+            total += relative;
+            model.addMeasurement("ID742", new Measurement(t, relative, total));
+            model.addMeasurement("ID735", new Measurement(t, i % 96 < 40 ? 0.0 : relative, i % 5 == 0 ? null : total));
+        }
+        model.addMeasurement("ID1", new Measurement(LocalDateTime.of(2024, 2, 29, 12, 0, 0, 123), null, null));
+        model.addMeasurement("empty", new Measurement(t, 1.0, 1.0));
+        model.getOrCreateMeterData("hourly", Duration.ofHours(1).toNanos()).addMeasurement(new Measurement(t, 1.0, 2.0));
+
+        Path file = tempDir.resolve("model.snapshot");
+        MeterModelSnapshot.write(model, 42L, file);
+        MeterModelSnapshot snapshot = MeterModelSnapshot.read(file);
+
+        assertEquals(42L, snapshot.getFingerprint());
+        assertEquals(model.getAllMeterData().size(), snapshot.getModel().getAllMeterData().size());
+        for (MeterData expected : model.getAllMeterData()) {
+            MeterData actual = snapshot.getModel().getMeterData(expected.getSensorId());
+            assertNotNull(actual, expected.getSensorId());
+            List<Measurement> expectedValues = new ArrayList<>(expected.getMeasurements());
+            List<Measurement> actualValues = new ArrayList<>(actual.getMeasurements());
+            assertEquals(expectedValues, actualValues, expected.getSensorId());
+            assertEquals(expected.getCoverage().getStep(), actual.getCoverage().getStep(), expected.getSensorId());
+        }
+        // must stay well below the 24 bytes per point kept in memory
+        assertTrue(Files.size(file) < 40_000L * 16, "snapshot size " + Files.size(file));
+    }
+
+    @Test
+    void testRejectsOtherFiles() throws IOException {
+        Path file = tempDir.resolve("garbage.snapshot");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> MeterModelSnapshot.read(file));
+    }
+}
@@ -1,8 +1,9 @@
-import {AfterViewInit, Component, OnInit} from '@angular/core';
+import {AfterViewInit, Component, OnDestroy, OnInit} from '@angular/core';
 import {CommonModule} from '@angular/common';
 import {HttpClient, HttpClientModule} from '@angular/common/http';
 import {Chart, registerables} from 'chart.js';
 import {FormsModule} from '@angular/forms';
+import {switchMap, takeWhile, timer} from 'rxjs';
 
 Chart.register(...registerables);
 
@@ -18,6 +19,28 @@ type MeterModelResponse = {
   message?: string;
 };
 
+type MeterDeltaEvent = {
+  sensorId: string;
+  version: number;
+  measurements: {
+    timestamp: string;
+    relative: number;
+    absolute: number;
+  }[];
+  removed: string[];
+};
+
+type UploadJobResponse = {
+  id: string;
+  status: 'QUEUED' | 'RUNNING' | 'COMPLETED' | 'FAILED';
+  totalFiles: number;
+  filesParsed: number;
+  measurementsMerged: number;
+  readingsMerged: number;
+  errors: string[];
+  duplicates: string[];
+};
+
 @Component({
   selector: 'app-root',
   standalone: true,
@@ -25,7 +48,7 @@ type MeterModelResponse = {
   templateUrl: './app.component.html',
   styleUrl: './app.component.css'
 })
-export class AppComponent implements OnInit, AfterViewInit {
+export class AppComponent implements OnInit, AfterViewInit, OnDestroy {
   /** UI state */
   sidebarOpen = false;
   activeTab = 'verbrauch';
@@ -35,6 +58,9 @@ export class AppComponent implements OnInit, AfterViewInit {
   customEndDateString: string = '';   // Holds INSEE-MM-DD string from input
   displayedDateRange: string = '';    // For displaying "dd/mm/yyyy - dd/mm/yyyy"
 
+  /** Progress of the running upload, shown below the button */
+  uploadStatus = '';
+
   /** Chart data */
   allDataPoints: { timestamp: string; id: string; verbrauch: number; zaehlerstand: number }[] = [];
 
@@ -45,6 +71,14 @@ export class AppComponent implements OnInit, AfterViewInit {
   // API URLs as constants
   private readonly uploadApiUrl = 'http://localhost:8080/api/files/upload';
   private readonly loadExistingApiUrl = 'http://localhost:8080/api/files/load-existing';
+  private readonly jobsApiUrl = 'http://localhost:8080/api/jobs';
+  private readonly eventsApiUrl = 'http://localhost:8080/api/events?resolution=raw';
+  private readonly jobPollIntervalMs = 500;
+
+  /** Live updates from the backend; while the model is loading, deltas are queued */
+  private eventSource: EventSource | null = null;
+  private loadingModel = false;
+  private pendingDeltas: MeterDeltaEvent[] = [];
 
 
   constructor(private http: HttpClient) {
@@ -53,11 +87,20 @@ export class AppComponent implements OnInit, AfterViewInit {
   // Angular Lifecycle Hooks
   ngOnInit(): void {
     console.log('ngOnInit: Attempting to load existing files...');
-    this.loadExistingFiles();
+    if (typeof EventSource !== 'undefined') {
+      this.connectEvents(); // loads the files once the event stream is ready
+    } else {
+      this.loadExistingFiles();
+    }
     // Initialize custom date strings to a reasonable default
     this.setInitialCustomDateRange();
   }
 
+  ngOnDestroy(): void {
+    this.eventSource?.close();
+    this.eventSource = null;
+  }
+
   ngAfterViewInit(): void {
     console.log('ngAfterViewInit: Checking if charts need to be drawn.');
     if (this.allDataPoints.length > 0) {
@@ -146,14 +189,20 @@ export class AppComponent implements OnInit, AfterViewInit {
 
   loadExistingFiles(): void {
     console.log('loadExistingFiles: Sending GET request to backend...');
+    this.loadingModel = true;
+    this.pendingDeltas = [];
     this.http.get<MeterModelResponse>(this.loadExistingApiUrl)
       .subscribe({
         next: (resp) => {
           console.log('loadExistingFiles: Backend Response:', resp);
+          this.loadingModel = false;
           if (resp && resp.allMeterData && resp.allMeterData.length > 0) {
             this.flattenBackendResponse(resp); // Populates allDataPoints
             this.setInitialCustomDateRange(); // Update custom range to match loaded data
             this.drawCharts(this.getFilteredDataPoints()); // Draw with filtered data
+            // Changes that arrived while loading; already contained ones are simply written again
+            this.pendingDeltas.forEach(delta => this.applyDelta(delta));
+            this.pendingDeltas = [];
           } else {
             console.log('loadExistingFiles: Keine bestehenden gültigen Messdaten auf dem Server gefunden.');
             this.allDataPoints = [];
@@ -163,6 +212,8 @@ export class AppComponent implements OnInit, AfterViewInit {
         },
         error: (err) => {
           console.error('loadExistingFiles: Fehler beim Laden bestehender Dateien:', err);
+          this.loadingModel = false;
+          this.pendingDeltas = [];
           const backendErrorMessage = err.error?.message || 'Unbekannter Fehler.';
           alert(`Fehler beim Laden bestehender Dateien: ${backendErrorMessage}`);
           this.allDataPoints = [];
@@ -194,15 +245,49 @@ export class AppComponent implements OnInit, AfterViewInit {
     Array.from(eslInput.files).forEach(f => formData.append('eslFiles', f, f.name));
 
     console.log('processFiles: Sending POST request to backend...');
-    this.http.post<MeterModelResponse>(this.uploadApiUrl, formData)
+    this.uploadStatus = 'Dateien werden hochgeladen …';
+    this.http.post<UploadJobResponse>(this.uploadApiUrl, formData)
       .subscribe({
-        next: (resp) => {
-          console.log('processFiles: Backend Response for new upload:', resp);
-          if (resp && resp.allMeterData && resp.allMeterData.length > 0) {
-            this.loadExistingFiles(); // This will re-fetch all data and then redraw charts
-          } else {
-            const serverMessage = resp?.message || 'Verarbeitung erfolgreich, aber keine gültigen Messdaten gefunden.';
-            console.warn('processFiles: Backend returned no valid meter data for new upload:', serverMessage);
+        next: (job) => {
+          console.log('processFiles: Upload accepted, job:', job);
+          this.pollUploadJob(job.id);
+        },
+        error: (err) => {
+          console.error('processFiles: Upload/Parsing Fehler:', err);
+          this.uploadStatus = '';
+          const backendErrorMessage = err.error?.message || 'Upload oder Verarbeitung fehlgeschlagen (siehe Konsole).';
+          alert(backendErrorMessage);
+        }
+      });
+  }
+
+  /** Polls the upload job until it is finished, then reloads the data */
+  private pollUploadJob(jobId: string): void {
+    timer(0, this.jobPollIntervalMs)
+      .pipe(
+        switchMap(() => this.http.get<UploadJobResponse>(`${this.jobsApiUrl}/${jobId}`)),
+        takeWhile(job => job.status === 'QUEUED' || job.status === 'RUNNING', true)
+      )
+      .subscribe({
+        next: (job) => {
+          this.uploadStatus = `${job.filesParsed} von ${job.totalFiles} Dateien verarbeitet`;
+          if (job.status === 'COMPLETED') {
+            console.log('pollUploadJob: Job completed:', job);
+            this.uploadStatus = '';
+            const messages = [...job.errors];
+            if (job.duplicates.length > 0) {
+              messages.push(`Bereits vorhanden, übersprungen: ${job.duplicates.join(', ')}`);
+            }
+            if (messages.length > 0) {
+              alert(messages.join('\n'));
+            }
+            if (this.eventSource?.readyState !== EventSource.OPEN) {
+              this.loadExistingFiles(); // No live updates, re-fetch all data and redraw charts
+            }
+          } else if (job.status === 'FAILED') {
+            const serverMessage = job.errors.join('\n') || 'Verarbeitung erfolgreich, aber keine gültigen Messdaten gefunden.';
+            console.warn('pollUploadJob: Job failed:', serverMessage);
+            this.uploadStatus = '';
             alert(serverMessage);
             this.allDataPoints = [];
             this.destroyCharts();
@@ -210,16 +295,87 @@ export class AppComponent implements OnInit, AfterViewInit {
           }
         },
         error: (err) => {
-          console.error('processFiles: Upload/Parsing Fehler:', err);
-          const backendErrorMessage = err.error?.message || 'Upload oder Verarbeitung fehlgeschlagen (siehe Konsole).';
+          console.error('pollUploadJob: Fehler beim Abfragen des Upload-Status:', err);
+          this.uploadStatus = '';
+          const backendErrorMessage = err.error?.message || 'Status des Uploads konnte nicht abgefragt werden.';
           alert(backendErrorMessage);
-          this.allDataPoints = [];
-          this.destroyCharts();
-          this.setInitialCustomDateRange(); // Reset custom range if error
         }
       });
   }
 
+  /* ========== LIVE UPDATES ============================================== */
+
+  /**
+   * Subscribes to the measurement events of the backend. The model is loaded once the stream is
+   * ready, so no change between loading and subscribing is lost; the browser reconnects on its own.
+   */
+  private connectEvents(): void {
+    this.eventSource = new EventSource(this.eventsApiUrl);
+    let loaded = false;
+    this.eventSource.addEventListener('ready', () => {
+      // A reconnect without missed events needs no reload
+      if (!loaded) {
+        loaded = true;
+        this.loadExistingFiles();
+      }
+    });
+    this.eventSource.addEventListener('reset', () => {
+      console.log('connectEvents: Backend requested a reload.');
+      loaded = true;
+      this.loadExistingFiles();
+    });
+    this.eventSource.addEventListener('measurements', (event) => {
+      const delta = JSON.parse((event as MessageEvent).data) as MeterDeltaEvent;
+      if (this.loadingModel) {
+        this.pendingDeltas.push(delta);
+      } else {
+        this.applyDelta(delta);
+      }
+    });
+    this.eventSource.addEventListener('meter-removed', () => this.loadExistingFiles());
+    this.eventSource.onerror = () => console.warn('connectEvents: Verbindung für Live-Updates unterbrochen.');
+  }
+
+  /** Merges the changes of one meter into allDataPoints and updates the charts */
+  private applyDelta(delta: MeterDeltaEvent): void {
+    const time = (dp: { timestamp: string }) => new Date(dp.timestamp).getTime();
+    const changed = new Set<number>();
+    delta.measurements.forEach(m => changed.add(time(m)));
+    delta.removed.forEach(timestamp => changed.add(new Date(timestamp).getTime()));
+
+    const before = this.allDataPoints.length;
+    const lastTime = before > 0 ? time(this.allDataPoints[before - 1]) : -Infinity;
+    this.allDataPoints = this.allDataPoints.filter(dp => dp.id !== delta.sensorId || !changed.has(time(dp)));
+    const replacedAny = this.allDataPoints.length !== before;
+
+    const added = delta.measurements
+      .map(m => ({timestamp: m.timestamp, id: delta.sensorId, verbrauch: m.relative, zaehlerstand: m.absolute}))
+      .sort((a, b) => time(a) - time(b));
+    const appendedOnly = !replacedAny && (added.length === 0 || time(added[0]) >= lastTime);
+    this.allDataPoints.push(...added);
+    if (!appendedOnly) {
+      this.allDataPoints.sort((a, b) => time(a) - time(b));
+    }
+
+    const filtered = this.getFilteredDataPoints();
+    const drawn = this.verbrauchChartInstance?.data.labels?.length;
+    if (appendedOnly && drawn !== undefined && this.zaehlerstandChartInstance
+      && filtered.length === drawn + added.length) {
+      // New intervals at the end of the visible range: extend the charts instead of rebuilding them
+      const labels = added.map(d => new Date(d.timestamp).toLocaleString('de-CH', {
+        year: 'numeric', month: '2-digit', day: '2-digit', hour: '2-digit', minute: '2-digit'
+      }));
+      this.verbrauchChartInstance!.data.labels!.push(...labels);
+      this.verbrauchChartInstance!.data.datasets[0].data.push(...added.map(d => d.verbrauch));
+      this.zaehlerstandChartInstance.data.labels!.push(...labels);
+      this.zaehlerstandChartInstance.data.datasets[0].data.push(...added.map(d => d.zaehlerstand));
+      this.verbrauchChartInstance!.update('none');
+      this.zaehlerstandChartInstance.update('none');
+    } else {
+      this.drawCharts(filtered);
+    }
+  }
+
   /** Convert backend JSON into flat array for charts & export */
   private flattenBackendResponse(resp: MeterModelResponse): void {
     const tempFlattenedData: typeof this.allDataPoints = [];